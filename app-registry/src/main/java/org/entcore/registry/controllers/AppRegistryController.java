@@ -48,6 +48,7 @@ import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
 import static fr.wseduc.webutils.request.RequestUtils.bodyToJson;
+import static org.entcore.common.appregistry.AppRegistryEvents.APP_REGISTRY_INVALIDATIONS_ADDRESS;
 import static org.entcore.common.appregistry.AppRegistryEvents.APP_REGISTRY_PUBLISH_ADDRESS;
 import static org.entcore.common.appregistry.AppRegistryEvents.PROFILE_GROUP_ACTIONS_UPDATED;
 import static org.entcore.common.bus.BusResponseHandler.busArrayHandler;
@@ -477,6 +478,7 @@ public class AppRegistryController extends BaseController {
 			message.putArray("groups", new JsonArray().add(groupId));
 		}
 		eb.publish(APP_REGISTRY_PUBLISH_ADDRESS, message);
+		eb.publish(APP_REGISTRY_INVALIDATIONS_ADDRESS, message);
 	}
 
 }
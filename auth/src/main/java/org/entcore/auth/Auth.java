@@ -25,6 +25,7 @@ import org.entcore.auth.controllers.ConfigurationController;
 import org.entcore.auth.controllers.OpenIdConnectController;
 import org.entcore.auth.controllers.SamlController;
 import org.entcore.auth.security.AuthResourcesProvider;
+import org.entcore.auth.security.CredentialHasher;
 import org.entcore.auth.security.SamlValidator;
 import org.entcore.auth.services.impl.*;
 import org.entcore.auth.users.DefaultUserAuthAccount;
@@ -54,6 +55,7 @@ public class Auth extends BaseServer {
 		addFilter(new UserAuthFilter(new DefaultOAuthResourceProvider(eb)));
 		super.start();
 		setDefaultResourceFilter(new AuthResourcesProvider(new Neo(vertx, eb, container.logger())));
+		CredentialHasher.getInstance().init(vertx, config);
 
 		final UserAuthAccount userAuthAccount = new DefaultUserAuthAccount(vertx, container);
 		final EventStore eventStore = EventStoreFactory.getFactory().getEventStore(Auth.class.getSimpleName());
@@ -71,7 +71,6 @@ import jp.eisbahn.oauth2.server.fetcher.clientcredential.ClientCredentialFetcher
 import jp.eisbahn.oauth2.server.granttype.GrantHandlerProvider;
 import jp.eisbahn.oauth2.server.granttype.impl.DefaultGrantHandlerProvider;
 import jp.eisbahn.oauth2.server.models.AuthInfo;
-import jp.eisbahn.oauth2.server.models.Request;
 
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.VoidHandler;
@@ -212,12 +211,17 @@ public class AuthController extends BaseController {
 
 			@Override
 			protected void handle() {
-				Request req = new HttpServerRequestAdapter(request);
+				final HttpServerRequestAdapter req = new HttpServerRequestAdapter(request);
 				token.handleRequest(req, new Handler<Response>() {
 
 					@Override
 					public void handle(Response response) {
-						renderJson(request, new JsonObject(response.getBody()), response.getCode());
+						if (req.isBusy()) {
+							renderJson(request, new JsonObject().putString("error", "temporarily_unavailable")
+									.putString("error_description", "auth.busy"), 503);
+						} else {
+							renderJson(request, new JsonObject(response.getBody()), response.getCode());
+						}
 					}
 				});
 			}
@@ -313,7 +317,8 @@ public class AuthController extends BaseController {
 					callBack.append(container.config()
 							.getObject("authenticationServer").getString("loginCallback"));
 				}
-				DataHandler data = oauthDataFactory.create(new HttpServerRequestAdapter(request));
+				final HttpServerRequestAdapter req = new HttpServerRequestAdapter(request);
+				DataHandler data = oauthDataFactory.create(req);
 				final String login = request.formAttributes().get("email");
 				final String password = request.formAttributes().get("password");
 				data.getUserId(login, password, new Handler<String>() {
@@ -321,7 +326,11 @@ public class AuthController extends BaseController {
 					@Override
 					public void handle(final String userId) {
 						final String c = callBack.toString();
-						if (userId != null && !userId.trim().isEmpty()) {
+						if (req.isBusy()) {
+							trace.info("Connexion refusée pour l'utilisateur " + login + " : serveur occupé");
+							request.response().setStatusCode(503);
+							loginResult(request, "auth.busy", c);
+						} else if (userId != null && !userId.trim().isEmpty()) {
 							trace.info("Connexion de l'utilisateur " + login);
 							userAuthAccount.storeDomain(userId, Renders.getHost(request), Renders.getScheme(request),
 									new org.vertx.java.core.Handler<Boolean>() {
@@ -25,6 +25,7 @@ import fr.wseduc.webutils.Either;
 import fr.wseduc.webutils.http.oauth.OpenIdConnectClient;
 import fr.wseduc.webutils.request.CookieHelper;
 import fr.wseduc.webutils.security.HmacSha1;
+import org.entcore.auth.security.CredentialHasher;
 import org.entcore.auth.services.OpenIdConnectServiceProvider;
 import org.entcore.auth.services.OpenIdServiceProviderFactory;
 import org.entcore.common.user.UserInfos;
@@ -140,6 +141,8 @@ public class OpenIdConnectController extends AbstractFederateController {
 						public void handle(Either<String, JsonElement> event) {
 							if (event.isRight()) {
 								authenticate(event.right().getValue().asObject(), "_", p.getString("id_token_hint"), request);
+							} else if (CredentialHasher.SATURATED.equals(event.left().getValue())) {
+								renderJson(request, new JsonObject().putString("error", "auth.busy"), 503);
 							} else {
 								forbidden(request, "invalid.sub.mapping");
 							}
@@ -30,11 +30,24 @@ import jp.eisbahn.oauth2.server.models.Request;
 public class HttpServerRequestAdapter implements Request {
 
 	private final HttpServerRequest request;
+	private boolean busy = false;
 
 	public HttpServerRequestAdapter(HttpServerRequest request) {
 		this.request = request;
 	}
 
+	/**
+	 * Marks the request as rejected because the credentials hashing pool is saturated,
+	 * so that endpoints can answer a busy error instead of an authentication failure.
+	 */
+	public void setBusy() {
+		this.busy = true;
+	}
+
+	public boolean isBusy() {
+		return busy;
+	}
+
 	@Override
 	public String getParameter(String name) {
 		return request.formAttributes().get(name);
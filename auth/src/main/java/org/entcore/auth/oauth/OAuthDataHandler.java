@@ -24,6 +24,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 import fr.wseduc.mongodb.MongoDb;
+import fr.wseduc.webutils.Either;
 import fr.wseduc.webutils.security.Md5;
 import fr.wseduc.webutils.security.Sha256;
 import jp.eisbahn.oauth2.server.async.Handler;
@@ -32,6 +33,7 @@ import jp.eisbahn.oauth2.server.models.AccessToken;
 import jp.eisbahn.oauth2.server.models.AuthInfo;
 import jp.eisbahn.oauth2.server.models.Request;
 
+import org.entcore.auth.security.CredentialHasher;
 import org.entcore.auth.services.OpenIdConnectService;
 import org.entcore.common.neo4j.Neo4j;
 import org.vertx.java.core.AsyncResult;
@@ -42,7 +44,6 @@ import org.vertx.java.core.json.JsonObject;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import fr.wseduc.webutils.security.BCrypt;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.core.logging.impl.LoggerFactory;
 
@@ -116,7 +117,7 @@ public class OAuthDataHandler extends DataHandler {
 					JsonArray result = res.body().getArray("result");
 					if ("ok".equals(res.body().getString("status")) &&
 							result != null && result.size() == 1) {
-						JsonObject r = result.get(0);
+						final JsonObject r = result.get(0);
 						String dbPassword;
 						if (r != null && (dbPassword = r.getString("password")) != null && !r.getBoolean("blockedProfile", false)) {
 							boolean success = false;
@@ -130,7 +131,25 @@ public class OAuthDataHandler extends DataHandler {
 										hash = Sha256.hash(password);
 										break;
 									default: // BCrypt
-										success = BCrypt.checkpw(password, dbPassword);
+										CredentialHasher.getInstance().checkpw(password, dbPassword,
+												new org.vertx.java.core.Handler<Either<String, Boolean>>() {
+											@Override
+											public void handle(Either<String, Boolean> event) {
+												if (event.isRight() && event.right().getValue()) {
+													handler.handle(r.getString("userId"));
+												} else {
+													if (event.isLeft()) {
+														log.warn("Password check failed : " + event.left().getValue());
+														if (CredentialHasher.SATURATED.equals(event.left().getValue()) &&
+																getRequest() instanceof HttpServerRequestAdapter) {
+															((HttpServerRequestAdapter) getRequest()).setBusy();
+														}
+													}
+													handler.handle(null);
+												}
+											}
+										});
+										return;
 								}
 								if (!success && hash != null) {
 									success = !dbPassword.trim().isEmpty() && dbPassword.equalsIgnoreCase(hash);
@@ -160,12 +179,25 @@ public class OAuthDataHandler extends DataHandler {
 	}
 
 	private void upgradeOldPassword(final String username, String password) {
+		CredentialHasher.getInstance().hashpw(password, new org.vertx.java.core.Handler<Either<String, String>>() {
+			@Override
+			public void handle(Either<String, String> event) {
+				if (event.isRight()) {
+					storeUpgradedPassword(username, event.right().getValue());
+				} else {
+					log.warn("Error upgrading old password for user " + username + " : " + event.left().getValue());
+				}
+			}
+		});
+	}
+
+	private void storeUpgradedPassword(final String username, String hash) {
 		String query =
 				"MATCH (u:User {login: {login}}) SET u.password = {password} " +
 				"RETURN u.id as id, HEAD(u.profiles) as profile ";
 		JsonObject params = new JsonObject()
 				.putString("login", username)
-				.putString("password", BCrypt.hashpw(password, BCrypt.gensalt()));
+				.putString("password", hash);
 		neo.execute(query, params, new org.vertx.java.core.Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> event) {
@@ -0,0 +1,183 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.auth.security;
+
+import fr.wseduc.webutils.Either;
+import fr.wseduc.webutils.security.BCrypt;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs BCrypt hashes and checks on a bounded pool instead of the event loop.
+ * When the pool queue is full, the request is rejected right away with
+ * {@link #SATURATED} rather than queued behind other logins.
+ */
+public class CredentialHasher {
+
+	public static final String SATURATED = "credentials.hashing.saturated";
+	public static final String METRICS_ADDRESS = "wse.auth.credentials.metrics";
+	private static final Logger log = LoggerFactory.getLogger(CredentialHasher.class);
+
+	private Vertx vertx;
+	private ThreadPoolExecutor executor;
+	private final Outcome match = new Outcome();
+	private final Outcome mismatch = new Outcome();
+	private final Outcome hashed = new Outcome();
+	private final Outcome failed = new Outcome();
+	private final AtomicLong rejected = new AtomicLong();
+
+	private static class Outcome {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalTime = new AtomicLong();
+
+		private void record(long start) {
+			count.incrementAndGet();
+			totalTime.addAndGet(System.currentTimeMillis() - start);
+		}
+
+		private JsonObject toJson() {
+			final long c = count.get();
+			return new JsonObject()
+					.putNumber("count", c)
+					.putNumber("averageTime", c > 0 ? totalTime.get() / c : 0);
+		}
+	}
+
+	private CredentialHasher() {}
+
+	private static class CredentialHasherHolder {
+		private static final CredentialHasher instance = new CredentialHasher();
+	}
+
+	public static CredentialHasher getInstance() {
+		return CredentialHasherHolder.instance;
+	}
+
+	public void init(Vertx vertx, JsonObject config) {
+		if (executor != null) {
+			return;
+		}
+		this.vertx = vertx;
+		final int poolSize = config.getInteger("credentials-hashing-pool-size",
+				Runtime.getRuntime().availableProcessors());
+		final int queueSize = config.getInteger("credentials-hashing-queue-size", 200);
+		final AtomicInteger threadNumber = new AtomicInteger();
+		executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "credentials-hashing-" + threadNumber.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		vertx.eventBus().registerLocalHandler(METRICS_ADDRESS, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				message.reply(getMetrics());
+			}
+		});
+	}
+
+	public void checkpw(final String password, final String hash, final Handler<Either<String, Boolean>> handler) {
+		final long start = System.currentTimeMillis();
+		submit(new Callable<Either<String, Boolean>>() {
+			@Override
+			public Either<String, Boolean> call() {
+				boolean res = BCrypt.checkpw(password, hash);
+				(res ? match : mismatch).record(start);
+				return new Either.Right<>(res);
+			}
+		}, start, handler);
+	}
+
+	public void hashpw(final String password, final Handler<Either<String, String>> handler) {
+		final long start = System.currentTimeMillis();
+		submit(new Callable<Either<String, String>>() {
+			@Override
+			public Either<String, String> call() {
+				String res = BCrypt.hashpw(password, BCrypt.gensalt());
+				hashed.record(start);
+				return new Either.Right<>(res);
+			}
+		}, start, handler);
+	}
+
+	private <T> void submit(final Callable<Either<String, T>> task, final long start,
+			final Handler<Either<String, T>> handler) {
+		if (executor == null) {
+			handler.handle(call(task, start));
+			return;
+		}
+		final Context context = vertx.currentContext();
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					final Either<String, T> result = call(task, start);
+					if (context != null) {
+						context.runOnContext(new Handler<Void>() {
+							@Override
+							public void handle(Void v) {
+								handler.handle(result);
+							}
+						});
+					} else {
+						handler.handle(result);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			handler.handle(new Either.Left<String, T>(SATURATED));
+		}
+	}
+
+	private <T> Either<String, T> call(Callable<Either<String, T>> task, long start) {
+		try {
+			return task.call();
+		} catch (Exception e) {
+			failed.record(start);
+			log.error("Error hashing credentials", e);
+			return new Either.Left<>(e.getMessage());
+		}
+	}
+
+	public JsonObject getMetrics() {
+		return new JsonObject()
+				.putObject("match", match.toJson())
+				.putObject("mismatch", mismatch.toJson())
+				.putObject("hashed", hashed.toJson())
+				.putObject("failed", failed.toJson())
+				.putNumber("rejected", rejected.get())
+				.putNumber("queued", executor != null ? executor.getQueue().size() : 0)
+				.putNumber("active", executor != null ? executor.getActiveCount() : 0);
+	}
+
+}
@@ -20,9 +20,9 @@
 package org.entcore.auth.services.impl;
 
 import fr.wseduc.webutils.Either;
-import fr.wseduc.webutils.security.BCrypt;
 import fr.wseduc.webutils.security.Md5;
 import fr.wseduc.webutils.security.Sha256;
+import org.entcore.auth.security.CredentialHasher;
 import org.entcore.auth.services.OpenIdConnectServiceProvider;
 import org.entcore.common.neo4j.Neo4j;
 import org.vertx.java.core.Handler;
@@ -118,27 +118,25 @@ public class FranceConnectServiceProvider implements OpenIdConnectServiceProvide
 									success = res.getString("password").equals(Sha256.hash(password));
 									break;
 								default: // BCrypt
-									success = BCrypt.checkpw(password, res.getString("password"));
+									CredentialHasher.getInstance().checkpw(password, res.getString("password"),
+											new Handler<Either<String, Boolean>>() {
+										@Override
+										public void handle(Either<String, Boolean> check) {
+											if (check.isRight() && check.right().getValue()) {
+												setMapping(params, payload, handler);
+											} else if (check.isLeft() && CredentialHasher.SATURATED.equals(check.left().getValue())) {
+												handler.handle(new Either.Left<String, JsonElement>(CredentialHasher.SATURATED));
+											}
+										}
+									});
+									return;
 							}
 						} catch (NoSuchAlgorithmException e) {
 							handler.handle(new Either.Left<String, JsonElement>(e.getMessage()));
 						}
 					}
 					if (success) {
-						params.putBoolean("setFederated", setFederated);
-						neo4j.execute(QUERY_SET_MAPPING_FC, params.putString("sub", payload.getString("sub")),
-								validUniqueResultHandler(new Handler<Either<String, JsonObject>>() {
-							@Override
-							public void handle(final Either<String, JsonObject> event) {
-								if (event.isRight() && event.right().getValue().getBoolean("blockedProfile", false)) {
-									handler.handle(new Either.Left<String, JsonElement>("blocked.profile"));
-								} else if (event.isRight()) {
-									handler.handle(new Either.Right<String, JsonElement>(event.right().getValue()));
-								} else {
-									handler.handle(new Either.Left<String, JsonElement>("invalid.openid.payload"));
-								}
-							}
-						}));
+						setMapping(params, payload, handler);
 					}
 				} else {
 					handler.handle(new Either.Left<String, JsonElement>(event.left().getValue()));
@@ -147,6 +145,23 @@ public class FranceConnectServiceProvider implements OpenIdConnectServiceProvide
 		}));
 	}
 
+	private void setMapping(JsonObject params, JsonObject payload, final Handler<Either<String, JsonElement>> handler) {
+		params.putBoolean("setFederated", setFederated);
+		neo4j.execute(QUERY_SET_MAPPING_FC, params.putString("sub", payload.getString("sub")),
+				validUniqueResultHandler(new Handler<Either<String, JsonObject>>() {
+			@Override
+			public void handle(final Either<String, JsonObject> event) {
+				if (event.isRight() && event.right().getValue().getBoolean("blockedProfile", false)) {
+					handler.handle(new Either.Left<String, JsonElement>("blocked.profile"));
+				} else if (event.isRight()) {
+					handler.handle(new Either.Right<String, JsonElement>(event.right().getValue()));
+				} else {
+					handler.handle(new Either.Left<String, JsonElement>("invalid.openid.payload"));
+				}
+			}
+		}));
+	}
+
 	public void setSetFederated(boolean setFederated) {
 		this.setFederated = setFederated;
 	}
@@ -27,6 +27,7 @@ import fr.wseduc.webutils.Either;
 
 import fr.wseduc.webutils.I18n;
 import fr.wseduc.webutils.email.EmailSender;
+import org.entcore.auth.security.CredentialHasher;
 import org.entcore.common.email.EmailFactory;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
@@ -43,7 +44,6 @@ import org.entcore.common.validation.StringValidation;
 
 import fr.wseduc.webutils.Server;
 import fr.wseduc.webutils.http.Renders;
-import fr.wseduc.webutils.security.BCrypt;
 
 public class DefaultUserAuthAccount implements UserAuthAccount {
 
@@ -75,7 +75,21 @@ public class DefaultUserAuthAccount implements UserAuthAccount {
 	}
 
 	@Override
-	public void activateAccount(final String login, String activationCode, final String password,
+	public void activateAccount(final String login, final String activationCode, final String password,
+			final String email, final String phone, final HttpServerRequest request, final Handler<Either<String, String>> handler) {
+		CredentialHasher.getInstance().hashpw(password, new Handler<Either<String, String>>() {
+			@Override
+			public void handle(Either<String, String> event) {
+				if (event.isRight()) {
+					activateAccount(login, activationCode, password, event.right().getValue(), email, phone, request, handler);
+				} else {
+					handler.handle(new Either.Left<String, String>(event.left().getValue()));
+				}
+			}
+		});
+	}
+
+	private void activateAccount(final String login, String activationCode, final String password, String hash,
 			String email, String phone, final HttpServerRequest request, final Handler<Either<String, String>> handler) {
 		String query =
 				"MATCH (n:User) " +
@@ -89,7 +103,7 @@ public class DefaultUserAuthAccount implements UserAuthAccount {
 		Map<String, Object> params = new HashMap<>();
 		params.put("login", login);
 		params.put("activationCode", activationCode);
-		params.put("password", BCrypt.hashpw(password, BCrypt.gensalt()));
+		params.put("password", hash);
 		params.put("email", email);
 		params.put("phone", phone);
 		neo.send(query, params, new Handler<Message<JsonObject>>(){
@@ -122,11 +136,19 @@ public class DefaultUserAuthAccount implements UserAuthAccount {
 						@Override
 						public void handle(Message<JsonObject> event) {
 							if ("ok".equals(event.body().getString("status")) &&
-									event.body().getObject("result").getObject("0") != null &&
-									BCrypt.checkpw(password, event.body().getObject("result").getObject("0")
-											.getString("password", ""))) {
-								handler.handle(new Either.Right<String, String>(
-										event.body().getObject("result").getObject("0").getString("id")));
+									event.body().getObject("result").getObject("0") != null) {
+								final JsonObject u = event.body().getObject("result").getObject("0");
+								CredentialHasher.getInstance().checkpw(password, u.getString("password", ""),
+										new Handler<Either<String, Boolean>>() {
+									@Override
+									public void handle(Either<String, Boolean> check) {
+										if (check.isRight() && check.right().getValue()) {
+											handler.handle(new Either.Right<String, String>(u.getString("id")));
+										} else {
+											handler.handle(new Either.Left<String, String>("invalid.activation"));
+										}
+									}
+								});
 							} else {
 								handler.handle(new Either.Left<String, String>("invalid.activation"));
 							}
@@ -456,8 +478,21 @@ public class DefaultUserAuthAccount implements UserAuthAccount {
 		});
 	};
 
-	private void updatePassword(final Handler<Boolean> handler, String query, String password, Map<String, Object> params) {
-		final String pw = BCrypt.hashpw(password, BCrypt.gensalt());
+	private void updatePassword(final Handler<Boolean> handler, final String query, String password,
+			final Map<String, Object> params) {
+		CredentialHasher.getInstance().hashpw(password, new Handler<Either<String, String>>() {
+			@Override
+			public void handle(Either<String, String> event) {
+				if (event.isRight()) {
+					storePassword(handler, query, event.right().getValue(), params);
+				} else {
+					handler.handle(false);
+				}
+			}
+		});
+	}
+
+	private void storePassword(final Handler<Boolean> handler, String query, final String pw, Map<String, Object> params) {
 		params.put("password", pw);
 		neo.send(query, params, new Handler<Message<JsonObject>>(){
 
@@ -27,7 +27,8 @@ public class MongoConstants {
 	//COLLECTION NAMES
 	public static enum COLLECTIONS{
 		events,
-		stats
+		stats,
+		watermarks
 	}
 
 	//TRACE COLLECTION FIELD NAMES
@@ -55,4 +56,7 @@ public class MongoConstants {
 	//STATS COLLECTION FIELD NAMES
 	public static final String STATS_FIELD_DATE 		= "date";
 	public static final String STATS_FIELD_GROUPBY 		= "groupedBy";
+
+	//WATERMARKS COLLECTION FIELD NAMES
+	public static final String WATERMARK_FIELD_PROCESSED	= "processedUpTo";
 }
@@ -21,16 +21,20 @@ package org.entcore.common.aggregation.indicators.mongo;
 
 import static org.entcore.common.aggregation.MongoConstants.STATS_FIELD_DATE;
 import static org.entcore.common.aggregation.MongoConstants.STATS_FIELD_GROUPBY;
+import static org.entcore.common.aggregation.MongoConstants.TRACE_FIELD_DATE;
 import static org.entcore.common.aggregation.MongoConstants.TRACE_FIELD_TYPE;
+import static org.entcore.common.aggregation.MongoConstants.WATERMARK_FIELD_PROCESSED;
 
 import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.entcore.common.aggregation.MongoConstants.COLLECTIONS;
 import org.entcore.common.aggregation.filters.IndicatorFilter;
 import org.entcore.common.aggregation.filters.dbbuilders.MongoDBBuilder;
+import org.entcore.common.aggregation.filters.mongo.DateFilter;
 import org.entcore.common.aggregation.filters.mongo.IndicatorFilterMongoImpl;
 import org.entcore.common.aggregation.groups.IndicatorGroup;
 import org.entcore.common.aggregation.indicators.Indicator;
@@ -47,12 +51,22 @@ import fr.wseduc.mongodb.MongoUpdateBuilder;
 
 public class IndicatorMongoImpl extends Indicator{
 
+	//Maximum number of statements sent in a single bulk update command
+	private static final int MAX_BULK_SIZE = 1000;
+
 	//MongoDB instance
 	protected final MongoDb mongo;
 
 	//Output key
 	private String writtenIndicatorKey;
 
+	//True when a subclass overrides writeAction, results are then written one by one through it
+	private final boolean customWriteAction = overrides(getClass(), "writeAction", MongoDBBuilder.class, int.class, Handler.class);
+
+	//Incremental mode
+	private boolean incremental = false;
+	private long incrementalLag = 60 * 1000l;
+
 	//Logger
 	private Logger log = LoggerFactory.getLogger(IndicatorMongoImpl.class);
 
@@ -96,38 +110,83 @@ public class IndicatorMongoImpl extends Indicator{
 		return this.writtenIndicatorKey;
 	}
 
+	/**
+	 * Enables the incremental mode.<br>
+	 * In this mode the indicator keeps a watermark of the last processed trace date
+	 * and each run only aggregates the traces recorded since the previous successful run,
+	 * the partial counts being added ($inc) to the stats documents of the write date.<br>
+	 * Only plain additive counts are supported : the indicator must not have a DateFilter
+	 * (the watermark window replaces it) nor customize its pipeline, $group stage or write action.
+	 * @param incremental : True to enable the incremental mode.
+	 * @throws IllegalStateException if the indicator doesn't support the incremental mode.
+	 */
+	public void setIncremental(boolean incremental){
+		if(incremental && !isIncrementalSupported()){
+			throw new IllegalStateException("Indicator " + writtenIndicatorKey + " doesn't support the incremental mode.");
+		}
+		this.incremental = incremental;
+	}
+
+	public boolean isIncremental(){
+		return this.incremental;
+	}
+
+	/**
+	 * Sets the delay (in milliseconds) between the current time and the upper bound of an incremental run,
+	 * which leaves time to buffered traces to be written. Defaults to one minute.
+	 * @param lag : Delay in milliseconds.
+	 */
+	public void setIncrementalLag(long lag){
+		this.incrementalLag = lag;
+	}
+
+	//Additive counts only : a customized pipeline or write may not be summed over windows
+	private boolean isIncrementalSupported(){
+		for(IndicatorFilter filter : filters){
+			if(filter instanceof DateFilter){
+				return false;
+			}
+		}
+		return !customWriteAction &&
+				!overrides(getClass(), "customizeGroupBy", JsonObject.class) &&
+				!overrides(getClass(), "customizePipeline", JsonArray.class);
+	}
+
 	//Write aggregated data to the database, using data from a Mongo count
 	private void writeStats(JsonArray results, final IndicatorGroup group, final Handler<JsonObject> callBack){
 
 		//If no documents found, write nothing
 		if(results.size() == 0){
-			callBack.handle(new JsonObject());
+			callBack.handle(new JsonObject().putString("status", "ok"));
 			return;
 		}
 
 		//Document date
 		Date writeDate = this.writeDate;
 
-		final MongoDBBuilder criteriaQuery = new MongoDBBuilder();
-
-		//Synchronization handler
+		//Synchronization handler, used when writing through a custom write action
 		final AtomicInteger countDown = new AtomicInteger(results.size());
+		final AtomicBoolean failed = new AtomicBoolean(false);
 		Handler<Message<JsonObject>> synchroHandler = new Handler<Message<JsonObject>>() {
 			public void handle(Message<JsonObject> message) {
 				if (!"ok".equals(message.body().getString("status"))){
 					String groupstr = group == null ? "Global" : group.toString();
 					log.error("[Aggregation][Error]{"+writtenIndicatorKey+"} ("+ groupstr +") writeStats : "+message.body().toString());
-					log.info(criteriaQuery.toString());
+					failed.set(true);
 				}
 
 				if(countDown.decrementAndGet() == 0){
-					callBack.handle(new JsonObject());
+					callBack.handle(new JsonObject().putString("status", failed.get() ? "error" : "ok"));
 				}
 			}
 		};
-		//For each aggregated result
+
+		//Otherwise one upsert statement per aggregated result, sent by bulks
+		final LinkedList<JsonArray> bulks = new LinkedList<>();
+		JsonArray statements = null;
 		for(Object obj: results){
 			JsonObject result = (JsonObject) obj;
+			final MongoDBBuilder criteriaQuery = new MongoDBBuilder();
 
 			if(group == null){
 				//When not using groups, set groupedBy specifically to not exists
@@ -148,15 +207,53 @@ public class IndicatorMongoImpl extends Indicator{
 				}
 			}
 
-			//Perform write action
-			writeAction(criteriaQuery, result.getInteger("count"), synchroHandler);
+			if(customWriteAction){
+				//Perform write action
+				writeAction(criteriaQuery, result.getInteger("count"), synchroHandler);
+				continue;
+			}
+			if(statements == null || statements.size() >= MAX_BULK_SIZE){
+				statements = new JsonArray();
+				bulks.add(statements);
+			}
+			statements.addObject(updateStatement(criteriaQuery, result.getInteger("count")));
+		}
+		if(bulks.isEmpty()){
+			return;
 		}
+
+		//Send the bulks one after another
+		final Handler<Message<JsonObject>> bulkHandler = new Handler<Message<JsonObject>>() {
+			public void handle(Message<JsonObject> message) {
+				JsonObject result = message.body().getObject("result");
+				if (!"ok".equals(message.body().getString("status")) || result == null ||
+						result.getInteger("ok", 0) != 1 || result.getArray("writeErrors") != null){
+					String groupstr = group == null ? "Global" : group.toString();
+					log.error("[Aggregation][Error]{"+writtenIndicatorKey+"} ("+ groupstr +") writeStats : "+message.body().toString());
+					bulks.clear();
+					callBack.handle(new JsonObject().putString("status", "error"));
+				} else if(bulks.isEmpty()){
+					callBack.handle(new JsonObject().putString("status", "ok"));
+				} else {
+					mongo.command(bulkUpdate(bulks.poll()).toString(), this);
+				}
+			}
+		};
+		mongo.command(bulkUpdate(bulks.poll()).toString(), bulkHandler);
+	}
+
+	private JsonObject bulkUpdate(JsonArray statements){
+		return new JsonObject()
+			.putString("update", COLLECTIONS.stats.name())
+			.putArray("updates", statements)
+			.putBoolean("ordered", false);
 	}
 
 	/**
 	 * <em><b>You may override this method in order to perform a custom write action.</b></em><br>
 	 * Default write action performed on each aggregated result,
-	 * increments the MongoDB collection entry with the results count.
+	 * increments the MongoDB collection entry with the results count.<br>
+	 * When this method is not overridden, the increments of a group are sent together in bulk update commands instead.
 	 *
 	 * @param criteriaQuery : Already built query, containing the write date, the aggregated values and the group label.
 	 * @param resultsCount : Aggregation count.
@@ -171,6 +268,27 @@ public class IndicatorMongoImpl extends Indicator{
 				handler);
 	}
 
+	//Bulk update statement equivalent to the default write action
+	private JsonObject updateStatement(MongoDBBuilder criteriaQuery, int resultsCount){
+		return new JsonObject()
+			.putObject("q", MongoQueryBuilder.build(criteriaQuery))
+			.putObject("u", new MongoUpdateBuilder().inc(writtenIndicatorKey, resultsCount).build())
+			.putBoolean("upsert", true)
+			.putBoolean("multi", true);
+	}
+
+	private static boolean overrides(Class<?> c, String method, Class<?>... parameterTypes){
+		for(; c != null && c != IndicatorMongoImpl.class; c = c.getSuperclass()){
+			try {
+				c.getDeclaredMethod(method, parameterTypes);
+				return true;
+			} catch (NoSuchMethodException e) {
+				//Not declared at this level
+			}
+		}
+		return false;
+	}
+
 	//Unwind clauses of the aggregation pipeline - useful for flattening arrays
 	private void addUnwindPipeline(JsonArray pipeline, IndicatorGroup group){
 		if(group == null)
@@ -202,7 +320,8 @@ public class IndicatorMongoImpl extends Indicator{
 	protected void customizePipeline(JsonArray pipeline){}
 
 	//Builds and executes an entire aggregation pipeline query for a given group, and recurse for each child.
-	private void executeAggregationQuery(final IndicatorGroup group, final Handler<JsonObject> finalHandler){
+	private void executeAggregationQuery(final IndicatorGroup group, final Long from, final Long to,
+			final Handler<JsonObject> finalHandler){
 		//Filter by trace type + custom filters
 		final MongoDBBuilder filteringQuery = (MongoDBBuilder) new MongoDBBuilder().put(TRACE_FIELD_TYPE).is(indicatorKey);
 		for(IndicatorFilter filter : filters){
@@ -217,6 +336,17 @@ public class IndicatorMongoImpl extends Indicator{
 			.putArray("pipeline", pipeline);
 
 		pipeline.addObject(new JsonObject().putObject("$match", MongoQueryBuilder.build(filteringQuery)));
+		//Incremental window
+		if(from != null || to != null){
+			JsonObject window = new JsonObject();
+			if(from != null){
+				window.putNumber("$gte", from);
+			}
+			if(to != null){
+				window.putNumber("$lt", to);
+			}
+			pipeline.addObject(new JsonObject().putObject("$match", new JsonObject().putObject(TRACE_FIELD_DATE, window)));
+		}
 		addUnwindPipeline(pipeline, group);
 		JsonObject groupBy = new JsonObject().putObject("$group", new JsonObject()
 			.putObject("_id", getGroupByObject(new JsonObject(), group))
@@ -237,7 +367,7 @@ public class IndicatorMongoImpl extends Indicator{
 					String groupstr = group == null ? "Global" : group.toString();
 					log.error("[Aggregation][Error]{"+writtenIndicatorKey+"} ("+ groupstr +") executeAggregationQuery : "+message.body().toString());
 					log.info(aggregation.toString());
-					finalHandler.handle(new JsonObject());
+					finalHandler.handle(new JsonObject().putString("status", "error"));
 				}
 			}
 		});
@@ -245,7 +375,7 @@ public class IndicatorMongoImpl extends Indicator{
 		//Recurse
 		if(group != null)
 			for(IndicatorGroup child : group.getChildren()){
-				executeAggregationQuery(child, finalHandler);
+				executeAggregationQuery(child, from, to, finalHandler);
 			}
 	}
 
@@ -257,38 +387,92 @@ public class IndicatorMongoImpl extends Indicator{
 	 *  <li>Write to the database this aggregated number.</li>
 	 *  <li>For each IndicatorGroup, repeat the process recursively.</li>
 	 * </ul>
+	 * In incremental mode, only the traces recorded since the last successful run are taken into account.
 	 * @param callBack : Handler called when processing is over.
 	 */
 	public void aggregate(final Handler<JsonObject> callBack){
-		final Date start = new Date();
-
-		//Filtering by trace type + custom filters.
-		MongoDBBuilder filteringQuery = (MongoDBBuilder) new MongoDBBuilder().put(TRACE_FIELD_TYPE).is(indicatorKey);
-		for(IndicatorFilter filter : filters){
-			filter.filter(filteringQuery);
+		if(!incremental){
+			aggregate(null, null, callBack);
+			return;
 		}
+		//Filters may have been added after the mode was enabled
+		if(!isIncrementalSupported()){
+			log.error("[Aggregation][Error]{"+writtenIndicatorKey+"} incremental mode not supported by this indicator");
+			callBack.handle(new JsonObject().putString("status", "error"));
+			return;
+		}
+
+		final long to = System.currentTimeMillis() - incrementalLag;
+		final JsonObject watermarkId = new JsonObject().putString("_id", indicatorKey + "/" + writtenIndicatorKey);
+		mongo.findOne(COLLECTIONS.watermarks.name(), watermarkId, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				if (!"ok".equals(message.body().getString("status"))){
+					log.error("[Aggregation][Error]{"+writtenIndicatorKey+"} watermark : "+message.body().toString());
+					callBack.handle(new JsonObject().putString("status", "error"));
+					return;
+				}
+				JsonObject watermark = message.body().getObject("result");
+				final Long from = watermark != null ? watermark.getLong(WATERMARK_FIELD_PROCESSED) : null;
+				if(from != null && from >= to){
+					callBack.handle(new JsonObject().putString("status", "ok"));
+					return;
+				}
+				aggregate(from, to, new Handler<JsonObject>() {
+					@Override
+					public void handle(final JsonObject result) {
+						//The watermark only moves forward once every write of the window succeeded
+						if(!"ok".equals(result.getString("status"))){
+							callBack.handle(result);
+							return;
+						}
+						mongo.update(COLLECTIONS.watermarks.name(), watermarkId,
+								new MongoUpdateBuilder().set(WATERMARK_FIELD_PROCESSED, to).build(), true, false,
+								new Handler<Message<JsonObject>>() {
+							@Override
+							public void handle(Message<JsonObject> message) {
+								if (!"ok".equals(message.body().getString("status"))){
+									log.error("[Aggregation][Error]{"+writtenIndicatorKey+"} watermark : "+message.body().toString());
+									result.putString("status", "error");
+								}
+								callBack.handle(result);
+							}
+						});
+					}
+				});
+			}
+		});
+	}
+
+	//Aggregates the traces of the [from, to[ window (unbounded when null).
+	private void aggregate(Long from, Long to, final Handler<JsonObject> callBack){
+		final Date start = new Date();
 
 		final AtomicInteger totalCalls = new AtomicInteger(1);
 		for(IndicatorGroup group: groups){
 			totalCalls.addAndGet(group.getTotalChildren());
 		}
 
+		final AtomicBoolean failed = new AtomicBoolean(false);
 		final Handler<JsonObject> finalHandler = new Handler<JsonObject>(){
 			public void handle(JsonObject event) {
+				if(!"ok".equals(event.getString("status"))){
+					failed.set(true);
+				}
 				if(totalCalls.decrementAndGet() == 0){
 					final Date end = new Date();
 					log.info("[Aggregation]{"+writtenIndicatorKey+"} Took ["+(end.getTime() - start.getTime())+"] ms");
-					callBack.handle(new JsonObject().putString("status", "ok"));
+					callBack.handle(new JsonObject().putString("status", failed.get() ? "error" : "ok"));
 				}
 			}
 		};
 
 		//Count the total number of traces
-		executeAggregationQuery(null, finalHandler);
+		executeAggregationQuery(null, from, to, finalHandler);
 
 		//Process for each registered group
 		for(IndicatorGroup group : groups){
-			executeAggregationQuery(group, finalHandler);
+			executeAggregationQuery(group, from, to, finalHandler);
 		}
 
 	}
@@ -22,6 +22,9 @@ package org.entcore.common.aggregation.processing;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.entcore.common.aggregation.indicators.Indicator;
 import org.vertx.java.core.Handler;
@@ -33,6 +36,8 @@ import org.vertx.java.core.json.JsonObject;
 public abstract class AggregationProcessing {
 
 	protected Collection<Indicator> indicators = new ArrayList<Indicator>();
+	//Maximum number of indicators aggregated at the same time
+	protected int concurrency = 1;
 
 	/**
 	 * Creates a new AggregationProcessing instance.<br>
@@ -65,6 +70,62 @@ public abstract class AggregationProcessing {
 		return this;
 	}
 
+	/**
+	 * Sets the maximum number of indicators aggregated at the same time by <code>aggregateIndicators</code>.
+	 * @param concurrency : Maximum number of concurrent aggregations (at least 1).
+	 * @return : This AggregationProcessing object.
+	 */
+	public AggregationProcessing setConcurrency(int concurrency){
+		this.concurrency = Math.max(1, concurrency);
+		return this;
+	}
+
+	/**
+	 * Aggregates every indicator, with at most <code>concurrency</code> indicators running at the same time.<br>
+	 * Indicators must be independent from each other.
+	 * @param callBack : Handler called when every indicator is processed, with an error status if one of them failed.
+	 */
+	protected void aggregateIndicators(final Handler<JsonObject> callBack){
+		if(indicators.isEmpty()){
+			callBack.handle(new JsonObject().putString("status", "ok"));
+			return;
+		}
+		final Iterator<Indicator> it = new ArrayList<>(indicators).iterator();
+		final AtomicInteger remaining = new AtomicInteger(indicators.size());
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		final Handler<JsonObject> next = new Handler<JsonObject>() {
+			@Override
+			public void handle(JsonObject result) {
+				if(result != null && !"ok".equals(result.getString("status"))){
+					failed.set(true);
+				}
+				if(remaining.decrementAndGet() == 0){
+					callBack.handle(new JsonObject().putString("status", failed.get() ? "error" : "ok"));
+					return;
+				}
+				Indicator indicator = null;
+				synchronized (it) {
+					if(it.hasNext()){
+						indicator = it.next();
+					}
+				}
+				if(indicator != null){
+					indicator.aggregate(this);
+				}
+			}
+		};
+		for(int i = 0; i < concurrency; i++){
+			Indicator indicator;
+			synchronized (it) {
+				if(!it.hasNext()){
+					break;
+				}
+				indicator = it.next();
+			}
+			indicator.aggregate(next);
+		}
+	}
+
 	/**
 	 * Process the indicators as you see fit.
 	 * @param callBack : Handler called when processing is over.
@@ -0,0 +1,64 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.aggregation.processing;
+
+import java.util.Collection;
+import java.util.Date;
+
+import org.entcore.common.aggregation.indicators.Indicator;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Processing of independent indicators, aggregated in parallel with at most <code>concurrency</code> of them running at the same time.<br>
+ * Incremental indicators can be mixed with full ones.
+ */
+public class IndependentIndicatorsProcessing extends AggregationProcessing {
+
+	public IndependentIndicatorsProcessing(){}
+
+	public IndependentIndicatorsProcessing(Collection<Indicator> indicatorsList, int concurrency){
+		super(indicatorsList);
+		setConcurrency(concurrency);
+	}
+
+	/**
+	 * Aggregates every indicator.
+	 * @param callBack : Handler called when processing is over, with an error status if an indicator failed.
+	 */
+	@Override
+	public void process(Handler<JsonObject> callBack){
+		aggregateIndicators(callBack);
+	}
+
+	/**
+	 * Aggregates every indicator, the results being written at the marker date.
+	 * @param marker : Write date of the indicators.
+	 * @param callBack : Handler called when processing is over, with an error status if an indicator failed.
+	 */
+	@Override
+	public void process(Date marker, Handler<JsonObject> callBack){
+		for(Indicator indicator : indicators){
+			indicator.setWriteDate(marker);
+		}
+		aggregateIndicators(callBack);
+	}
+
+}
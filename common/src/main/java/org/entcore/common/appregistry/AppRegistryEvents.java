@@ -24,6 +24,13 @@ public final class AppRegistryEvents {
 
 	public static final String APP_REGISTRY_PUBLISH_ADDRESS = "app.registry.events";
 
+	/**
+	 * Every app registry event is also published on this address so that caches can
+	 * register cluster handlers without taking point to point sends away from
+	 * the app registry events consumers.
+	 */
+	public static final String APP_REGISTRY_INVALIDATIONS_ADDRESS = "app.registry.invalidations";
+
 	public static final String PROFILE_GROUP_ACTIONS_UPDATED = "PROFILE_GROUP_ACTIONS_UPDATED";
 
 	public static final String USER_GROUP_UPDATED = "USER_GROUP_UPDATED";
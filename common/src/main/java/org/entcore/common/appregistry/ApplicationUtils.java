@@ -25,6 +25,7 @@ import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
+import static org.entcore.common.appregistry.AppRegistryEvents.APP_REGISTRY_INVALIDATIONS_ADDRESS;
 import static org.entcore.common.appregistry.AppRegistryEvents.APP_REGISTRY_PUBLISH_ADDRESS;
 import static org.entcore.common.appregistry.AppRegistryEvents.IMPORT_SUCCEEDED;
 import static org.entcore.common.appregistry.AppRegistryEvents.USER_GROUP_UPDATED;
@@ -73,17 +74,15 @@ public final class ApplicationUtils {
 
 
 	public static void publishModifiedUserGroup(EventBus eb, JsonArray a) {
-		eb.publish(APP_REGISTRY_PUBLISH_ADDRESS,
-				new JsonObject().putString("type", USER_GROUP_UPDATED)
-						.putArray("users", a)
-		);
+		final JsonObject event = new JsonObject().putString("type", USER_GROUP_UPDATED).putArray("users", a);
+		eb.publish(APP_REGISTRY_PUBLISH_ADDRESS, event);
+		eb.publish(APP_REGISTRY_INVALIDATIONS_ADDRESS, event);
 	}
 
 	public static void sendModifiedUserGroup(EventBus eb, JsonArray a, Handler<Message<JsonObject>> res) {
-		eb.send(APP_REGISTRY_PUBLISH_ADDRESS,
-				new JsonObject().putString("type", USER_GROUP_UPDATED)
-						.putArray("users", a), res
-		);
+		final JsonObject event = new JsonObject().putString("type", USER_GROUP_UPDATED).putArray("users", a);
+		eb.publish(APP_REGISTRY_INVALIDATIONS_ADDRESS, event);
+		eb.send(APP_REGISTRY_PUBLISH_ADDRESS, event, res);
 	}
 
 	public static void setDefaultClassRoles(EventBus eb, String classId, Handler<Message<JsonObject>> handler) {
@@ -93,9 +92,9 @@ public final class ApplicationUtils {
 	}
 
 	public static void afterImport(EventBus eb) {
-		eb.publish(APP_REGISTRY_PUBLISH_ADDRESS,
-				new JsonObject().putString("type", IMPORT_SUCCEEDED)
-		);
+		final JsonObject event = new JsonObject().putString("type", IMPORT_SUCCEEDED);
+		eb.publish(APP_REGISTRY_PUBLISH_ADDRESS, event);
+		eb.publish(APP_REGISTRY_INVALIDATIONS_ADDRESS, event);
 	}
 
 }
@@ -29,6 +29,7 @@ public abstract class EventStoreFactory {
 
 	protected Vertx vertx;
 	protected Container container;
+	private int instances = 0;
 
 	private static class EventStoreFactoryHolder {
 
@@ -58,4 +59,27 @@ public abstract class EventStoreFactory {
 		this.container = container;
 	}
 
+	/**
+	 * Registers a verticle instance of the module, called when it starts.
+	 */
+	public synchronized void open() {
+		instances++;
+	}
+
+	/**
+	 * Called when a verticle instance of the module stops. The factory is shared by
+	 * the instances of the module : its resources are released with the last one.
+	 */
+	public synchronized void close() {
+		if (instances > 0 && --instances == 0) {
+			release();
+		}
+	}
+
+	/**
+	 * Releases the factory resources.
+	 */
+	protected void release() {
+	}
+
 }
@@ -69,6 +69,11 @@ public abstract class GenericEventStore implements EventStore {
 
 	@Override
 	public void createAndStoreEvent(final String eventType, final String login) {
+		final UserInfos cached = UserDescriptorCache.getInstance().get(login);
+		if (cached != null) {
+			execute(cached, eventType, null, null);
+			return;
+		}
 		String query =
 				"MATCH (n:User {login : {login}}) " +
 				"OPTIONAL MATCH n-[:IN]->(gp:ProfileGroup) " +
@@ -83,8 +88,9 @@ public abstract class GenericEventStore implements EventStore {
 			public void handle(Message<JsonObject> event) {
 				JsonArray res = event.body().getArray("result");
 				if ("ok".equals(event.body().getString("status")) && res.size() == 1) {
-					execute(UserUtils.sessionToUserInfos(
-							res.<JsonObject>get(0)), eventType, null, null);
+					final UserInfos user = UserUtils.sessionToUserInfos(res.<JsonObject>get(0));
+					UserDescriptorCache.getInstance().put(login, user);
+					execute(user, eventType, null, null);
 				} else {
 					logger.error("Error : user " + login + " not found.");
 				}
@@ -138,6 +144,7 @@ public abstract class GenericEventStore implements EventStore {
 
 	public void setEventBus(EventBus eventBus) {
 		this.eventBus = eventBus;
+		UserDescriptorCache.getInstance().init(eventBus);
 	}
 
 	public void setModule(String module) {
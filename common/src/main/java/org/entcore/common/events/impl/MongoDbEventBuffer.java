@@ -0,0 +1,185 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.events.impl;
+
+import fr.wseduc.mongodb.MongoDb;
+import fr.wseduc.webutils.Either;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.util.ArrayDeque;
+
+/**
+ * Coalesces events and writes them with bulk inserts, when a batch is full or
+ * on a timer. Pending events are bounded : when mongo doesn't keep up, new events
+ * are dropped (and also logged with the "drop-log" overflow policy). Pending events
+ * are written when the buffer is closed.
+ */
+public class MongoDbEventBuffer {
+
+	private static final Logger log = LoggerFactory.getLogger(MongoDbEventBuffer.class);
+	private final MongoDb mongoDb = MongoDb.getInstance();
+	private final String collection;
+	private final int batchSize;
+	private final int maxPending;
+	private final boolean logOverflow;
+	private final ArrayDeque<JsonObject> pending;
+	private final Vertx vertx;
+	private final long timerId;
+	private boolean flushing = false;
+	private boolean closed = false;
+	private long enqueued = 0;
+	private long flushed = 0;
+	private long failed = 0;
+	private long dropped = 0;
+
+	public MongoDbEventBuffer(Vertx vertx, String collection, JsonObject config, String metricsAddress) {
+		this.vertx = vertx;
+		this.collection = collection;
+		this.batchSize = Math.max(1, config.getInteger("events-buffer-batch-size", 100));
+		this.maxPending = config.getInteger("events-buffer-max-pending", 10000);
+		this.logOverflow = "drop-log".equals(config.getString("events-buffer-overflow", "drop"));
+		this.pending = new ArrayDeque<>(batchSize);
+		this.timerId = vertx.setPeriodic(config.getLong("events-buffer-flush-interval", 1000l), new Handler<Long>() {
+			@Override
+			public void handle(Long timerId) {
+				flush();
+			}
+		});
+		if (metricsAddress != null) {
+			vertx.eventBus().registerLocalHandler(metricsAddress, new Handler<Message<JsonObject>>() {
+				@Override
+				public void handle(Message<JsonObject> message) {
+					message.reply(getMetrics());
+				}
+			});
+		}
+	}
+
+	public void add(JsonObject event, Handler<Either<String, Void>> handler) {
+		final boolean full;
+		final boolean batchReady;
+		synchronized (this) {
+			full = closed || pending.size() >= maxPending;
+			if (full) {
+				dropped++;
+			} else {
+				pending.add(event);
+				enqueued++;
+			}
+			batchReady = !flushing && pending.size() >= batchSize;
+		}
+		if (full) {
+			if (logOverflow) {
+				log.warn("Events buffer full, event dropped : " + event.encode());
+			}
+			handler.handle(new Either.Left<String, Void>("events.buffer.full"));
+			return;
+		}
+		if (batchReady) {
+			flush();
+		}
+		handler.handle(new Either.Right<String, Void>(null));
+	}
+
+	private void flush() {
+		final JsonArray batch = new JsonArray();
+		synchronized (this) {
+			if (flushing || pending.isEmpty()) {
+				return;
+			}
+			flushing = true;
+			while (batch.size() < batchSize && !pending.isEmpty()) {
+				batch.addObject(pending.poll());
+			}
+		}
+		mongoDb.insert(collection, batch, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> res) {
+				final boolean batchReady;
+				synchronized (MongoDbEventBuffer.this) {
+					if ("ok".equals(res.body().getString("status"))) {
+						flushed += batch.size();
+					} else {
+						failed += batch.size();
+					}
+					flushing = false;
+					batchReady = pending.size() >= batchSize;
+				}
+				if (!"ok".equals(res.body().getString("status"))) {
+					log.error("Error : " + res.body().getString("message") + ", Events : " + batch.encode());
+				}
+				if (batchReady) {
+					flush();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops the flush timer and writes every pending event, ignoring the running flush.
+	 */
+	public void close() {
+		final JsonArray remaining = new JsonArray();
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			while (!pending.isEmpty()) {
+				remaining.addObject(pending.poll());
+			}
+		}
+		vertx.cancelTimer(timerId);
+		if (remaining.size() == 0) {
+			return;
+		}
+		mongoDb.insert(collection, remaining, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> res) {
+				synchronized (MongoDbEventBuffer.this) {
+					if ("ok".equals(res.body().getString("status"))) {
+						flushed += remaining.size();
+					} else {
+						failed += remaining.size();
+					}
+				}
+				if (!"ok".equals(res.body().getString("status"))) {
+					log.error("Error : " + res.body().getString("message") + ", Events : " + remaining.encode());
+				}
+			}
+		});
+	}
+
+	public synchronized JsonObject getMetrics() {
+		return new JsonObject()
+				.putNumber("enqueued", enqueued)
+				.putNumber("flushed", flushed)
+				.putNumber("failed", failed)
+				.putNumber("dropped", dropped)
+				.putNumber("pending", pending.size());
+	}
+
+}
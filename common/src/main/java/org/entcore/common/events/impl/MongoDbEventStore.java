@@ -28,10 +28,15 @@ import org.vertx.java.core.json.JsonObject;
 public class MongoDbEventStore extends GenericEventStore {
 
 	private final MongoDb mongoDb = MongoDb.getInstance();
-	private static final String COLLECTION = "events";
+	static final String COLLECTION = "events";
+	private MongoDbEventBuffer buffer;
 
 	@Override
 	protected void storeEvent(final JsonObject event, final Handler<Either<String, Void>> handler) {
+		if (buffer != null) {
+			buffer.add(event, handler);
+			return;
+		}
 		mongoDb.insert(COLLECTION, event, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> res) {
@@ -45,4 +50,8 @@ public class MongoDbEventStore extends GenericEventStore {
 		});
 	}
 
+	public void setBuffer(MongoDbEventBuffer buffer) {
+		this.buffer = buffer;
+	}
+
 }
@@ -23,14 +23,38 @@ import fr.wseduc.webutils.Server;
 import org.entcore.common.events.EventStore;
 import org.entcore.common.events.EventStoreFactory;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class MongoDbEventStoreFactory extends EventStoreFactory {
 
+	private final Map<String, MongoDbEventBuffer> buffers = new HashMap<>();
+
 	@Override
 	public EventStore getEventStore(String module) {
 		MongoDbEventStore eventStore =  new MongoDbEventStore();
 		eventStore.setEventBus(Server.getEventBus(vertx));
 		eventStore.setModule(module);
+		eventStore.setBuffer(getBuffer(module));
 		return eventStore;
 	}
 
+	private synchronized MongoDbEventBuffer getBuffer(String module) {
+		MongoDbEventBuffer buffer = buffers.get(module);
+		if (buffer == null && container != null && container.config().getBoolean("events-buffer", false)) {
+			buffer = new MongoDbEventBuffer(vertx, MongoDbEventStore.COLLECTION, container.config(),
+					"event.store.buffer." + module);
+			buffers.put(module, buffer);
+		}
+		return buffer;
+	}
+
+	@Override
+	protected synchronized void release() {
+		for (MongoDbEventBuffer buffer : buffers.values()) {
+			buffer.close();
+		}
+		buffers.clear();
+	}
+
 }
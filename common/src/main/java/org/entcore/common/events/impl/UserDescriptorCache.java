@@ -0,0 +1,159 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.events.impl;
+
+import org.entcore.common.user.UserInfos;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.entcore.common.appregistry.AppRegistryEvents.APP_REGISTRY_INVALIDATIONS_ADDRESS;
+import static org.entcore.common.appregistry.AppRegistryEvents.IMPORT_SUCCEEDED;
+import static org.entcore.common.appregistry.AppRegistryEvents.USER_GROUP_UPDATED;
+
+/**
+ * Node local cache of the user descriptors used by login based events, by login.
+ * Entries expire after a TTL and are dropped on user.repository notifications and imports.
+ * The TTL and the maximum size are read from the "user-descriptor-cache-ttl" and
+ * "user-descriptor-cache-size" module config keys.
+ */
+public class UserDescriptorCache {
+
+	private static final long DEFAULT_TTL = 10 * 60 * 1000l;
+	private static final int DEFAULT_MAX_SIZE = 10000;
+
+	private long ttl = DEFAULT_TTL;
+	private int maxSize = DEFAULT_MAX_SIZE;
+	private final Map<String, CachedUser> users = new LinkedHashMap<String, CachedUser>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+			return size() > maxSize;
+		}
+	};
+	private boolean initialized = false;
+
+	private static final class CachedUser {
+		private final UserInfos user;
+		private final long expires;
+
+		private CachedUser(UserInfos user, long expires) {
+			this.user = user;
+			this.expires = expires;
+		}
+	}
+
+	private UserDescriptorCache() {}
+
+	private static class UserDescriptorCacheHolder {
+		private static final UserDescriptorCache instance = new UserDescriptorCache();
+	}
+
+	public static UserDescriptorCache getInstance() {
+		return UserDescriptorCacheHolder.instance;
+	}
+
+	public void init(EventBus eb) {
+		init(eb, null);
+	}
+
+	public synchronized void init(EventBus eb, JsonObject config) {
+		if (initialized || eb == null) {
+			return;
+		}
+		if (config != null) {
+			ttl = config.getLong("user-descriptor-cache-ttl", DEFAULT_TTL);
+			maxSize = Math.max(1, config.getInteger("user-descriptor-cache-size", DEFAULT_MAX_SIZE));
+		}
+		eb.registerLocalHandler("user.repository", new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				switch (message.body().getString("action", "")) {
+					case "delete-users" :
+						invalidateUsers(message.body().getArray("old-users"), "id");
+						break;
+					case "delete-groups" :
+						clear();
+						break;
+				}
+			}
+		});
+		eb.registerHandler(APP_REGISTRY_INVALIDATIONS_ADDRESS, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				final String type = message.body().getString("type");
+				if (USER_GROUP_UPDATED.equals(type)) {
+					invalidateUsers(message.body().getArray("users"), null);
+				} else if (IMPORT_SUCCEEDED.equals(type)) {
+					clear();
+				}
+			}
+		});
+		initialized = true;
+	}
+
+	public synchronized UserInfos get(String login) {
+		final CachedUser cu = users.get(login);
+		if (cu == null) {
+			return null;
+		}
+		if (cu.expires < System.currentTimeMillis()) {
+			users.remove(login);
+			return null;
+		}
+		return cu.user;
+	}
+
+	public synchronized void put(String login, UserInfos user) {
+		if (login != null && user != null) {
+			users.put(login, new CachedUser(user, System.currentTimeMillis() + ttl));
+		}
+	}
+
+	public synchronized void clear() {
+		users.clear();
+	}
+
+	private synchronized void invalidateUsers(JsonArray ids, String field) {
+		if (ids == null || ids.size() == 0) {
+			clear();
+			return;
+		}
+		for (Object o : ids) {
+			final String id = (o instanceof JsonObject && field != null) ? ((JsonObject) o).getString(field) :
+					(o instanceof String ? (String) o : null);
+			if (id == null) {
+				continue;
+			}
+			Iterator<CachedUser> it = users.values().iterator();
+			while (it.hasNext()) {
+				if (id.equals(it.next().user.getUserId())) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+}
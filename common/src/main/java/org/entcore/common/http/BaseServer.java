@@ -30,6 +30,7 @@ import fr.wseduc.webutils.validation.JsonSchemaValidator;
 import org.entcore.common.controller.ConfController;
 import org.entcore.common.controller.RightsController;
 import org.entcore.common.events.EventStoreFactory;
+import org.entcore.common.events.impl.UserDescriptorCache;
 import org.entcore.common.http.filter.ActionFilter;
 import org.entcore.common.http.filter.HttpActionFilter;
 import org.entcore.common.http.filter.ResourceProviderFilter;
@@ -41,6 +42,7 @@ import org.entcore.common.sql.DB;
 import org.entcore.common.sql.Sql;
 import org.entcore.common.user.RepositoryEvents;
 import org.entcore.common.user.RepositoryHandler;
+import org.entcore.common.user.SessionCache;
 import org.entcore.common.user.UserUtils;
 import org.entcore.common.utils.Config;
 import org.entcore.common.utils.Zip;
@@ -82,10 +84,13 @@ public abstract class BaseServer extends Server {
 
 		Config.getInstance().setConfig(config);
 		initModulesHelpers(node);
+		SessionCache.getInstance().init(vertx, config);
+		UserDescriptorCache.getInstance().init(getEventBus(vertx), config);
 
 		EventStoreFactory eventStoreFactory = EventStoreFactory.getFactory();
 		eventStoreFactory.setContainer(container);
 		eventStoreFactory.setVertx(vertx);
+		eventStoreFactory.open();
 
 		if (config.getString("integration-mode","BUS").equals("HTTP")) {
 			addFilter(new HttpActionFilter(securedUriBinding, config, vertx, resourceProvider));
@@ -102,6 +107,12 @@ public abstract class BaseServer extends Server {
 		SecurityHandler.setVertx(vertx);
 	}
 
+	@Override
+	public void stop() {
+		EventStoreFactory.getFactory().close();
+		super.stop();
+	}
+
 	@Override
 	protected void i18nMessages(HttpServerRequest request) {
 		String sessionId = CookieHelper.getInstance().getSigned("oneSessionId", request);
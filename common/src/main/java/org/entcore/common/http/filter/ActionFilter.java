@@ -22,7 +22,6 @@ package org.entcore.common.http.filter;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.regex.Matcher;
 
 import fr.wseduc.webutils.security.SecureHttpServerRequest;
 import org.entcore.common.http.response.DefaultPages;
@@ -32,7 +31,6 @@ import fr.wseduc.webutils.request.filter.Filter;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.http.HttpServerRequest;
-import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
 import fr.wseduc.webutils.http.Binding;
@@ -40,13 +38,13 @@ import fr.wseduc.webutils.security.ActionType;
 
 public class ActionFilter implements Filter {
 
-	private final Set<Binding> bindings;
+	private final RouteIndex routes;
 	private final EventBus eb;
 	private final ResourcesProvider provider;
 	private final boolean oauthEnabled;
 
 	public ActionFilter(Set<Binding> bindings, EventBus eb, ResourcesProvider provider, boolean oauthEnabled) {
-		this.bindings = bindings;
+		this.routes = new RouteIndex(bindings);
 		this.eb = eb;
 		this.provider = provider;
 		this.oauthEnabled = oauthEnabled;
@@ -67,7 +65,7 @@ public class ActionFilter implements Filter {
 				b.addAll(bs);
 			}
 		}
-		this.bindings = b;
+		this.routes = new RouteIndex(b);
 		this.eb = eb;
 		this.provider = provider;
 		this.oauthEnabled = oauthEnabled;
@@ -121,7 +119,7 @@ public class ActionFilter implements Filter {
 
 	private void authorizeResourceAction(HttpServerRequest request, JsonObject session,
 										 Binding binding, Handler<Boolean> handler) {
-		UserInfos user = UserUtils.sessionToUserInfos(session);
+		UserInfos user = UserUtils.sessionToUserInfos(request, session);
 		if (user != null && provider != null) {
 			provider.authorize(request, binding, user, handler);
 		} else {
@@ -131,16 +129,10 @@ public class ActionFilter implements Filter {
 
 	private void authorizeWorkflowAction(JsonObject session, Binding binding,
 										 Handler<Boolean> handler) {
-		JsonArray actions = session.getArray("authorizedActions");
-		if (binding != null && binding.getServiceMethod() != null
-				&& actions != null && actions.size() > 0) {
-			for (Object a: actions) {
-				JsonObject action = (JsonObject) a;
-				if (binding.getServiceMethod().equals(action.getString("name"))) {
-					handler.handle(true);
-					return;
-				}
-			}
+		if (binding != null && binding.getServiceMethod() != null &&
+				UserUtils.authorizedActionNames(session).contains(binding.getServiceMethod())) {
+			handler.handle(true);
+			return;
 		}
 		if (session.getObject("functions", new JsonObject()).containsField("SUPER_ADMIN")) {
 			handler.handle(true);
@@ -150,16 +142,7 @@ public class ActionFilter implements Filter {
 	}
 
 	private Binding requestBinding(HttpServerRequest request) {
-		for (Binding binding: bindings) {
-			if (!request.method().equals(binding.getMethod().name())) {
-				continue;
-			}
-			Matcher m = binding.getUriPattern().matcher(request.path());
-			if (m.matches()) {
-				return binding;
-			}
-		}
-		return null;
+		return routes.find(request.method(), request.path());
 	}
 
 	private void clientIsAuthorizedByScope(SecureHttpServerRequest request, Handler<Boolean> handler) {
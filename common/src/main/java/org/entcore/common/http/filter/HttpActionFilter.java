@@ -32,11 +32,9 @@ import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.http.HttpClient;
 import org.vertx.java.core.http.HttpClientResponse;
 import org.vertx.java.core.http.HttpServerRequest;
-import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
 import java.util.Set;
-import java.util.regex.Matcher;
 
 
 /**
@@ -46,13 +44,13 @@ import java.util.regex.Matcher;
 
 public class HttpActionFilter implements Filter {
 
-	private final Set<Binding> bindings;
+	private final RouteIndex routes;
 	private final ResourcesProvider provider;
 	private final HttpClient httpClient;
 
 	public HttpActionFilter(Set<Binding> bindings, JsonObject conf, Vertx vertx,
 			ResourcesProvider provider) {
-		this.bindings = bindings;
+		this.routes = new RouteIndex(bindings);
 		this.provider = provider;
 		this.httpClient = vertx.createHttpClient()
 				.setHost("localhost")
@@ -115,7 +113,7 @@ public class HttpActionFilter implements Filter {
 	private void authorizeResourceAction(HttpServerRequest request, JsonObject session,
 										 Binding binding, Handler<Boolean> handler) {
 		if (session != null && provider != null) {
-			UserInfos user = UserUtils.sessionToUserInfos(session);
+			UserInfos user = UserUtils.sessionToUserInfos(request, session);
 			provider.authorize(request, binding, user, handler);
 		} else {
 			handler.handle(false);
@@ -124,16 +122,10 @@ public class HttpActionFilter implements Filter {
 
 	private void authorizeWorkflowAction(JsonObject session, Binding binding,
 										 Handler<Boolean> handler) {
-		JsonArray actions = session.getArray("authorizedActions");
-		if (binding != null && binding.getServiceMethod() != null
-				&& actions != null && actions.size() > 0) {
-			for (Object a: actions) {
-				JsonObject action = (JsonObject) a;
-				if (binding.getServiceMethod().equals(action.getString("name"))) {
-					handler.handle(true);
-					return;
-				}
-			}
+		if (binding != null && binding.getServiceMethod() != null &&
+				UserUtils.authorizedActionNames(session).contains(binding.getServiceMethod())) {
+			handler.handle(true);
+			return;
 		}
 		if (session.getObject("functions", new JsonObject()).containsField("SUPER_ADMIN")) {
 			handler.handle(true);
@@ -143,16 +135,7 @@ public class HttpActionFilter implements Filter {
 	}
 
 	private Binding requestBinding(HttpServerRequest request) {
-		for (Binding binding: bindings) {
-			if (!request.method().equals(binding.getMethod().name())) {
-				continue;
-			}
-			Matcher m = binding.getUriPattern().matcher(request.path());
-			if (m.matches()) {
-				return binding;
-			}
-		}
-		return null;
+		return routes.find(request.method(), request.path());
 	}
 
 }
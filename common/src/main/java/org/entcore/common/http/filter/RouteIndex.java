@@ -0,0 +1,149 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.http.filter;
+
+import fr.wseduc.webutils.http.Binding;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Bindings compiled by http method into a trie of path segments. Literal segments and
+ * single segment parameters are resolved by the trie, other patterns are kept in a list
+ * and matched with their regex. A trie candidate is still checked against its pattern.
+ */
+public class RouteIndex {
+
+	private static final Pattern PARAMETER = Pattern.compile("\\(\\?<[A-Za-z][A-Za-z0-9_]*>\\[\\^\\\\?/\\]\\+\\)");
+	private static final String PARAMETER_MARK = "\u0000";
+	private static final String REGEX_CHARS = "\\[](){}?*+|^$.";
+
+	private final Map<String, Node> roots = new HashMap<>();
+	private final Map<String, List<Binding>> regexBindings = new HashMap<>();
+
+	private static final class Node {
+		private final Map<String, Node> literals = new HashMap<>();
+		private Node parameter;
+		private Binding binding;
+	}
+
+	public RouteIndex(Collection<Binding> bindings) {
+		if (bindings == null) {
+			return;
+		}
+		for (Binding binding : bindings) {
+			final String method = binding.getMethod().name();
+			final String[] segments = segments(binding.getUriPattern().pattern());
+			if (segments == null) {
+				List<Binding> l = regexBindings.get(method);
+				if (l == null) {
+					l = new ArrayList<>();
+					regexBindings.put(method, l);
+				}
+				l.add(binding);
+				continue;
+			}
+			Node node = roots.get(method);
+			if (node == null) {
+				node = new Node();
+				roots.put(method, node);
+			}
+			for (String segment : segments) {
+				Node child;
+				if (PARAMETER_MARK.equals(segment)) {
+					child = node.parameter;
+					if (child == null) {
+						child = node.parameter = new Node();
+					}
+				} else {
+					child = node.literals.get(segment);
+					if (child == null) {
+						child = new Node();
+						node.literals.put(segment, child);
+					}
+				}
+				node = child;
+			}
+			if (node.binding == null) {
+				node.binding = binding;
+			}
+		}
+	}
+
+	private static String[] segments(String pattern) {
+		final String p = PARAMETER.matcher(pattern).replaceAll(PARAMETER_MARK);
+		for (int i = 0; i < p.length(); i++) {
+			if (REGEX_CHARS.indexOf(p.charAt(i)) >= 0) {
+				return null;
+			}
+		}
+		final String[] segments = p.split("/", -1);
+		for (String s : segments) {
+			if (s.contains(PARAMETER_MARK) && s.length() > 1) {
+				return null;
+			}
+		}
+		return segments;
+	}
+
+	public Binding find(String method, String path) {
+		final Node root = roots.get(method);
+		if (root != null) {
+			final Binding b = find(root, path.split("/", -1), 0, path);
+			if (b != null) {
+				return b;
+			}
+		}
+		final List<Binding> l = regexBindings.get(method);
+		if (l != null) {
+			for (Binding binding : l) {
+				if (binding.getUriPattern().matcher(path).matches()) {
+					return binding;
+				}
+			}
+		}
+		return null;
+	}
+
+	private Binding find(Node node, String[] segments, int idx, String path) {
+		if (idx == segments.length) {
+			if (node.binding != null && node.binding.getUriPattern().matcher(path).matches()) {
+				return node.binding;
+			}
+			return null;
+		}
+		final Node literal = node.literals.get(segments[idx]);
+		if (literal != null) {
+			final Binding b = find(literal, segments, idx + 1, path);
+			if (b != null) {
+				return b;
+			}
+		}
+		if (node.parameter != null && !segments[idx].isEmpty()) {
+			return find(node.parameter, segments, idx + 1, path);
+		}
+		return null;
+	}
+
+}
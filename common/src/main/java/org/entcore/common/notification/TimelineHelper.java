@@ -115,6 +115,44 @@ public class TimelineHelper {
 		});
 	}
 
+	/**
+	 * Notifies the members of groups or structures, resolved when they read their timeline.
+	 * Requires the fan-out-on-read timeline store. Immediate mails are not sent.
+	 */
+	public void notifyTimelineGroups(final String notificationName, UserInfos sender,
+			final List<String> groupIds, String resource, String subResource, final JsonObject params){
+		final JsonObject notification = notificationsLoader.getNotification(notificationName);
+
+		final JsonObject event = new JsonObject()
+				.putString("action", "add")
+				.putString("type", notification.getString("type"))
+				.putString("event-type", notification.getString("event-type"))
+				.putArray("groups", new JsonArray(groupIds.toArray()));
+		if (resource != null) {
+			event.putString("resource", resource);
+		}
+		if (sender != null) {
+			event.putString("sender", sender.getUserId());
+		}
+		if (subResource != null && !subResource.trim().isEmpty()) {
+			event.putString("sub-resource", subResource);
+		}
+		Long date = params.getLong("timeline-publish-date");
+		if (date != null) {
+			event.putObject("date", new JsonObject().putNumber("$date", date));
+			params.removeField("timeline-publish-date");
+		}
+		event.putObject("params", params);
+		eb.send(TIMELINE_ADDRESS, event, new Handler<Message<JsonObject>>() {
+			public void handle(Message<JsonObject> event) {
+				if ("error".equals(event.body().getString("status", "error"))) {
+					log.error("Unable to send timeline " + notificationName + " notification to groups : " +
+							event.body().getString("message"));
+				}
+			}
+		});
+	}
+
 	/**
 	 * @deprecated
 	 * Notification system was refactored in version 1.16.1
@@ -24,9 +24,11 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.entcore.common.email.EmailFactory;
@@ -57,6 +59,7 @@ public class TimelineMailer {
 
 	private static final String TIMELINE_ADDRESS = "wse.timeline";
 	private static final String USERBOOK_ADDRESS = "userbook.preferences";
+	private static final String CHECKPOINTS_COLLECTION = "timeline.mailer";
 	private final EventBus eb;
 	private final Vertx vertx;
 	private final EmailSender emailSender;
@@ -65,6 +68,7 @@ public class TimelineMailer {
 	private static final Logger log = LoggerFactory.getLogger(TimelineMailer.class);
 
 	private final int USERS_LIMIT;
+	private final int parallelism;
 
 	public TimelineMailer(Vertx vertx, EventBus eb, Container container){
 		this(vertx, eb, container, 10);
@@ -73,6 +77,7 @@ public class TimelineMailer {
 		this.vertx = vertx;
 		this.eb = eb;
 		this.USERS_LIMIT = usersLimit;
+		this.parallelism = container.config().getInteger("mails-parallelism", 8);
 		EmailFactory emailFactory = new EmailFactory(this.vertx, container, container.config());
 		emailSender = emailFactory.getSender();
 	}
@@ -191,57 +196,35 @@ public class TimelineMailer {
 	}
 
 	/**
-	 * Retrieves users having an email address, paginated.
+	 * Retrieves users having an email address, paginated by id (keyset pagination).
 	 *
-	 * @param page : Page number
+	 * @param lastId : Id of the last user of the previous page, empty for the first page
 	 * @param handler : Handles the users
 	 */
-	private void getImpactedUsers(int page, final Handler<Either<String, JsonArray>> handler){
+	private void getImpactedUsers(String lastId, final Handler<Either<String, JsonArray>> handler){
 		String query =
 			"MATCH (u:User), u-[:IN]->(g:Group)-[:AUTHORIZED]-(r:Role)-[:AUTHORIZE]->(act:WorkflowAction) " +
-			"WHERE u.activationCode IS NULL AND u.email IS NOT NULL AND length(u.email) > 0 " +
-			"AND act.name = \"org.entcore.timeline.controllers.TimelineController|mixinConfig\"" +
+			"WHERE u.id > {lastId} AND u.activationCode IS NULL AND u.email IS NOT NULL AND length(u.email) > 0 " +
+			"AND act.name = \"org.entcore.timeline.controllers.TimelineController|mixinConfig\" " +
 			"RETURN DISTINCT u.email as mail, u.id as id " +
-			"SKIP {skip} LIMIT {limit}";
+			"ORDER BY id " +
+			"LIMIT {limit}";
 		JsonObject params = new JsonObject()
-			.putNumber("skip", page * USERS_LIMIT)
+			.putString("lastId", lastId)
 			.putNumber("limit", USERS_LIMIT);
 		neo4j.execute(query, params, Neo4jResult.validResultHandler(handler));
 	}
 
 	/**
-	 * Retrieves all timeline notifications from mongodb for a single user, from a specific date in the past.
+	 * Retrieves the notifications of a page of users from a specific date in the past, with a single aggregation.
 	 *
-	 * @param userId : Userid
+	 * @param userIds : Ids of the users
 	 * @param from : The starting date
-	 * @param handler : Handles the notifications
-	 */
-	private void getUserNotifications(String userId, Date from, final Handler<JsonArray> handler){
-		JsonObject matcher = MongoQueryBuilder.build(
-				QueryBuilder
-					.start("recipients").elemMatch(QueryBuilder.start("userId").is(userId).get())
-					.and("date").greaterThanEquals(from));
-
-		mongo.find("timeline", matcher, new Handler<Message<JsonObject>>() {
-			public void handle(Message<JsonObject> event) {
-				if("error".equals(event.body().getString("status", "error"))){
-					handler.handle(new JsonArray());
-				} else {
-					handler.handle(event.body().getArray("results"));
-				}
-			}
-		});
-	}
-
-	/**
-	 * Retrieves an aggregated list of notifications from mongodb for a single user.
-	 *
-	 *  Notifications are grouped by type & event-type.
-	 * @param userId : Userid
-	 * @param from : Starting date in the past
-	 * @param handler: Handles the notifications
+	 * @param grouped : Counts notifications by type & event-type instead of returning them
+	 * @param handler : Handles the notifications, by user id
 	 */
-	private void getAggregatedUserNotifications(String userId, Date from, final Handler<JsonArray> handler){
+	private void getUsersNotifications(JsonArray userIds, Date from, boolean grouped,
+			final Handler<Map<String, List<JsonObject>>> handler){
 		final JsonObject aggregation = new JsonObject();
 		JsonArray pipeline = new JsonArray();
 		aggregation
@@ -249,29 +232,54 @@ public class TimelineMailer {
 			.putBoolean("allowDiskUse", true)
 			.putArray("pipeline", pipeline);
 
+		final List<Object> ids = userIds.toList();
 		JsonObject matcher = MongoQueryBuilder.build(
 			QueryBuilder
-				.start("recipients").elemMatch(QueryBuilder.start("userId").is(userId).get())
+				.start("recipients.userId").in(ids)
 				.and("date").greaterThanEquals(from));
-		JsonObject grouper = new JsonObject("{ \"_id\" : { \"type\": \"$type\", \"event-type\": \"$event-type\"}, \"count\": { \"$sum\": 1 } }");
-		JsonObject transformer = new JsonObject("{ \"type\": \"$_id.type\", \"event-type\": \"$_id.event-type\", \"count\": 1, \"_id\": 0 }");
+		JsonObject projection = new JsonObject()
+			.putNumber("type", 1)
+			.putNumber("event-type", 1)
+			.putNumber("recipients.userId", 1);
+		if (!grouped) {
+			projection.putNumber("params", 1).putNumber("date", 1);
+		}
 
 		pipeline.addObject(new JsonObject().putObject("$match", matcher));
-		pipeline.add(new JsonObject().putObject("$group", grouper));
-		pipeline.add(new JsonObject().putObject("$project", transformer));
+		pipeline.addObject(new JsonObject().putObject("$project", projection));
+		pipeline.addObject(new JsonObject().putString("$unwind", "$recipients"));
+		pipeline.addObject(new JsonObject().putObject("$match", new JsonObject().putObject("recipients.userId",
+				new JsonObject().putArray("$in", userIds))));
+		if (grouped) {
+			JsonObject grouper = new JsonObject("{ \"_id\" : { \"userId\": \"$recipients.userId\", \"type\": \"$type\", \"event-type\": \"$event-type\"}, \"count\": { \"$sum\": 1 } }");
+			JsonObject transformer = new JsonObject("{ \"recipients\": { \"userId\": \"$_id.userId\" }, \"type\": \"$_id.type\", \"event-type\": \"$_id.event-type\", \"count\": 1, \"_id\": 0 }");
+			pipeline.addObject(new JsonObject().putObject("$group", grouper));
+			pipeline.addObject(new JsonObject().putObject("$project", transformer));
+		}
 
 		mongo.command(aggregation.toString(), new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> event) {
+				final Map<String, List<JsonObject>> notifications = new HashMap<>();
 				if("error".equals(event.body().getString("status", "error"))){
-					handler.handle(new JsonArray());
-				} else {
-					handler.handle(
-						event.body().getObject("result", new JsonObject())
-							.getArray("result", new JsonArray()));
+					log.error("Error while retrieving users notifications : " + event.body().getString("message"));
+					handler.handle(null);
+					return;
+				}
+				for(Object o : event.body().getObject("result", new JsonObject()).getArray("result", new JsonArray())){
+					if(!(o instanceof JsonObject)) continue;
+					final JsonObject notification = (JsonObject) o;
+					final String userId = notification.getObject("recipients", new JsonObject()).getString("userId");
+					notification.removeField("recipients");
+					List<JsonObject> userNotifications = notifications.get(userId);
+					if(userNotifications == null){
+						userNotifications = new ArrayList<>();
+						notifications.put(userId, userNotifications);
+					}
+					userNotifications.add(notification);
 				}
+				handler.handle(notifications);
 			}
-
 		});
 	}
 
@@ -416,184 +424,377 @@ public class TimelineMailer {
 	}
 
 	/**
-	 * Send daily notification emails for all users.
-	 *
-	 * @param dayDelta : When to aggregate, delta from now.
-	 * @param handler : Handles the results, emails sent / users KO
+	 * Digest mails of one frequency, processed page of users by page of users.
+	 * The notifications of a whole page are retrieved with a single aggregation, the next page is
+	 * loaded while the current one is sent, with a bounded number of mails in flight, and the id of the
+	 * last processed user is checkpointed so that an interrupted run resumes where it stopped,
+	 * whatever the users activated or deleted in the meantime.
 	 */
-	public void sendDailyMails(int dayDelta, final Handler<Either<String, JsonObject>> handler){
-
-		final HttpServerRequest request = new JsonHttpServerRequest(new JsonObject());
-		final AtomicInteger userPagination = new AtomicInteger(0);
-		final Calendar dayDate = Calendar.getInstance();
-		dayDate.add(Calendar.DAY_OF_MONTH, dayDelta);
-		dayDate.set(Calendar.HOUR_OF_DAY, 0);
-		dayDate.set(Calendar.MINUTE, 0);
-		dayDate.set(Calendar.SECOND, 0);
-		dayDate.set(Calendar.MILLISECOND, 0);
-
-		final JsonObject results = new JsonObject()
+	private abstract class DigestMails {
+
+		private final String name;
+		private final Date from;
+		private final String template;
+		private final String subjectKey;
+		private final Handler<Either<String, JsonObject>> handler;
+		private final HttpServerRequest request = new JsonHttpServerRequest(new JsonObject());
+		private final JsonObject notificationsDefaults = new JsonObject();
+		private final Map<String, String> subjects = new HashMap<>();
+		private JsonObject results = new JsonObject()
 			.putNumber("mails.sent", 0)
 			.putNumber("users.ko", 0);
-		final JsonObject notificationsDefaults = new JsonObject();
+		private Either<String, Page> prefetched;
+		private boolean prefetching = false;
+		private boolean sending = false;
+
+		private DigestMails(String name, Date from, String template, String subjectKey,
+				Handler<Either<String, JsonObject>> handler) {
+			this.name = name;
+			this.from = from;
+			this.template = template;
+			this.subjectKey = subjectKey;
+			this.handler = handler;
+		}
+
+		/**
+		 * Returns the template parameters of the mail of a user, or null when there is nothing to send.
+		 */
+		protected abstract JsonObject templateParameters(JsonObject userPrefs, String language, List<JsonObject> notifications);
+
+		protected abstract boolean grouped();
+
+		private class Page {
+			private final String lastId;
+			private final int size;
+			private final JsonArray preferences;
+			private final Map<String, List<JsonObject>> notifications;
+
+			private Page(String lastId, int size, JsonArray preferences, Map<String, List<JsonObject>> notifications) {
+				this.lastId = lastId;
+				this.size = size;
+				this.preferences = preferences;
+				this.notifications = notifications;
+			}
+		}
 
-		final Handler<Boolean> userContinuationHandler = new Handler<Boolean>() {
+		private String checkpointId() {
+			return name + "-" + from.getTime();
+		}
 
-			private final Handler<Boolean> continuation = this;
-			private final Handler<JsonArray> usersHandler = new Handler<JsonArray>() {
-				public void handle(final JsonArray users) {
-					final int nbUsers = users.size();
-					if(nbUsers == 0){
-						continuation.handle(false);
+		public void start() {
+			getNotificationsDefaults(new Handler<JsonArray>() {
+				public void handle(final JsonArray notifications) {
+					if(notifications == null){
+						fail("Error while retrieving notifications defaults.");
 						return;
 					}
-					final AtomicInteger usersCountdown = new AtomicInteger(nbUsers);
-
-					final VoidHandler usersEndHandler = new VoidHandler() {
-						protected void handle() {
-							if(usersCountdown.decrementAndGet() <= 0){
-								continuation.handle(nbUsers == USERS_LIMIT);
+					for(Object notifObj: notifications){
+						final JsonObject notif = (JsonObject) notifObj;
+						notificationsDefaults.putObject(notif.getString("key", ""), notif);
+					}
+					mongo.findOne(CHECKPOINTS_COLLECTION, new JsonObject().putString("_id", checkpointId()),
+							new Handler<Message<JsonObject>>() {
+						public void handle(Message<JsonObject> event) {
+							final JsonObject checkpoint = event.body().getObject("result");
+							String lastId = "";
+							if ("ok".equals(event.body().getString("status")) && checkpoint != null) {
+								results = checkpoint.getObject("results", results);
+								if (checkpoint.getBoolean("done", false)) {
+									log.info("[Timeline " + name + " emails] Already sent : " + results);
+									handler.handle(new Either.Right<String, JsonObject>(results));
+									return;
+								}
+								lastId = checkpoint.getString("lastId", "");
+								log.info("[Timeline " + name + " emails] Resuming after user " + lastId);
 							}
+							loadPage(lastId, new Handler<Either<String, Page>>() {
+								public void handle(Either<String, Page> event) {
+									if (event.isLeft()) {
+										fail(event.left().getValue());
+									} else {
+										process(event.right().getValue());
+									}
+								}
+							});
 						}
-					};
-
+					});
+				}
+			});
+		}
+
+		private void loadPage(final String after, final Handler<Either<String, Page>> pageHandler) {
+			getImpactedUsers(after, new Handler<Either<String,JsonArray>>() {
+				public void handle(Either<String, JsonArray> event) {
+					if(event.isLeft()){
+						pageHandler.handle(new Either.Left<String, Page>("Error while retrieving impacted users : " +
+								event.left().getValue()));
+						return;
+					}
+					final JsonArray users = event.right().getValue();
+					if(users.size() == 0){
+						pageHandler.handle(new Either.Right<String, Page>(new Page(after, 0, new JsonArray(),
+								new HashMap<String, List<JsonObject>>())));
+						return;
+					}
 					final JsonArray userIds = new JsonArray();
 					for(Object userObj : users)
 						userIds.add(((JsonObject) userObj).getString("id", ""));
+					final String lastId = ((JsonObject) users.get(users.size() - 1)).getString("id", "");
 					getUsersPreferences(userIds, new Handler<JsonArray>(){
-						public void handle(JsonArray preferences) {
-							for(Object userObj : preferences){
-								final JsonObject userPrefs = (JsonObject) userObj;
-								final String userDomain = userPrefs.getString("lastDomain", I18n.DEFAULT_DOMAIN);
-								final String userScheme = userPrefs.getString("lastScheme", "http");
-								String mutableUserLanguage = "fr";
-								try {
-									mutableUserLanguage = new JsonObject(userPrefs.getString("language", "{}")).getString("default-domain", "fr");
-								} catch(Exception e) {
-									log.error("UserId [" + userPrefs.getString("userId", "") + "] - Bad language preferences format");
-								}
-								final String userLanguage = mutableUserLanguage;
-
-								getUserNotifications(userPrefs.getString("userId", ""), dayDate.getTime(), new Handler<JsonArray>(){
-									public void handle(JsonArray notifications) {
-										if(notifications.size() == 0){
-											usersEndHandler.handle(null);
-											return;
-										}
-
-										SimpleDateFormat formatter = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss", Locale.forLanguageTag(userLanguage));
-										final JsonArray dates = new JsonArray();
-										final JsonArray templates = new JsonArray();
-
-										for(Object notificationObj : notifications){
-											JsonObject notification = (JsonObject) notificationObj;
-											final String notificationName =
-												notification.getString("type","").toLowerCase() + "." +
-												notification.getString("event-type", "").toLowerCase();
-											if(notificationsDefaults.getObject(notificationName) == null)
-												continue;
-
-											JsonObject notificationPreference = userPrefs
-													.getObject("preferences", new JsonObject())
-														.getObject("config", new JsonObject())
-															.getObject(notificationName, new JsonObject());
-											if(TimelineNotificationsLoader.Frequencies.DAILY.name().equals(
-													notificationPrefsMixin("defaultFrequency", notificationPreference, notificationsDefaults.getObject(notificationName))) &&
-												!TimelineNotificationsLoader.Restrictions.INTERNAL.name().equals(
-													notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getObject(notificationName))) &&
-												!TimelineNotificationsLoader.Restrictions.HIDDEN.name().equals(
-													notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getObject(notificationName)))){
-												templates.add(new JsonObject()
-													.putString("template", notificationsDefaults.getObject(notificationName, new JsonObject()).getString("template", ""))
-													.putObject("params", notification.getObject("params", new JsonObject())));
-												dates.add(formatter.format(MongoDb.parseIsoDate(notification.getObject("date"))));
-											}
-										}
-										if(templates.size() > 0){
-											JsonObject templateParams = new JsonObject()
-												.putArray("nestedTemplatesArray", templates)
-												.putArray("notificationDates", dates);
-											processTimelineTemplate(templateParams, "", "notifications/daily-mail.html",
-													userDomain, userScheme, userLanguage, new Handler<String>() {
-												public void handle(final String processedTemplate) {
-													//On completion : log
-													final Handler<Message<JsonObject>> completionHandler = new Handler<Message<JsonObject>>(){
-														public void handle(Message<JsonObject> event) {
-															if("error".equals(event.body().getString("status", "error"))){
-																log.error("[Timeline daily emails] Error while sending mail : " + event.body());
-																results.putNumber("users.ko", results.getInteger("users.ko") + 1);
-															} else {
-																results.putNumber("mails.sent", results.getInteger("mails.sent") + 1);
-															}
-															usersEndHandler.handle(null);
-														}
-
-													};
-
-													//Translate mail title
-													JsonArray keys = new JsonArray()
-														.add("timeline.daily.mail.subject.header");
-													translateTimeline(keys, userDomain, userLanguage, new Handler<JsonArray>() {
-														public void handle(JsonArray translations) {
-															//Send mail containing the "daily" notifications
-															emailSender.sendEmail(request,
-																userPrefs.getString("userMail", ""),
-																null,
-																null,
-																translations.get(0).toString(),
-																processedTemplate,
-																null,
-																false,
-																completionHandler);
-														}
-													});
-												}
-											});
-										} else {
-											usersEndHandler.handle(null);
-										}
-
+						public void handle(final JsonArray preferences) {
+							if(preferences == null){
+								pageHandler.handle(new Either.Left<String, Page>("Error while retrieving users preferences."));
+								return;
+							}
+							getUsersNotifications(userIds, from, grouped(), new Handler<Map<String, List<JsonObject>>>() {
+								public void handle(Map<String, List<JsonObject>> notifications) {
+									if(notifications == null){
+										pageHandler.handle(new Either.Left<String, Page>("Error while retrieving users notifications."));
+									} else {
+										pageHandler.handle(new Either.Right<String, Page>(
+												new Page(lastId, users.size(), preferences, notifications)));
 									}
-								});
+								}
+							});
+						}
+					});
+				}
+			});
+		}
+
+		private void process(final Page page) {
+			final boolean hasNext = page.size == USERS_LIMIT;
+			if (hasNext) {
+				prefetching = true;
+				loadPage(page.lastId, new Handler<Either<String, Page>>() {
+					public void handle(Either<String, Page> event) {
+						prefetched = event;
+						prefetching = false;
+						if (!sending) {
+							next();
+						}
+					}
+				});
+			}
+			sending = true;
+			send(page, new VoidHandler() {
+				protected void handle() {
+					saveCheckpoint(page.lastId, !hasNext, new VoidHandler() {
+						protected void handle() {
+							sending = false;
+							if (!hasNext) {
+								handler.handle(new Either.Right<String, JsonObject>(results));
+							} else if (!prefetching) {
+								next();
 							}
 						}
 					});
 				}
+			});
+		}
+
+		private void next() {
+			final Either<String, Page> page = prefetched;
+			prefetched = null;
+			if (page.isLeft()) {
+				fail(page.left().getValue());
+			} else {
+				process(page.right().getValue());
+			}
+		}
+
+		private void fail(String message) {
+			log.error("[Timeline " + name + " emails] " + message);
+			handler.handle(new Either.Left<String, JsonObject>(message));
+		}
+
+		private void saveCheckpoint(String lastId, boolean done, final VoidHandler next) {
+			final JsonObject checkpoint = new JsonObject()
+				.putString("_id", checkpointId())
+				.putString("lastId", lastId)
+				.putBoolean("done", done)
+				.putObject("results", results)
+				.putObject("modified", MongoDb.now());
+			mongo.save(CHECKPOINTS_COLLECTION, checkpoint, new Handler<Message<JsonObject>>() {
+				public void handle(Message<JsonObject> event) {
+					if (!"ok".equals(event.body().getString("status"))) {
+						log.error("[Timeline " + name + " emails] Error while saving checkpoint : " +
+								event.body().getString("message"));
+					}
+					next.handle(null);
+				}
+			});
+		}
+
+		/**
+		 * Sends the mails of a page, with at most parallelism mails in flight.
+		 */
+		private void send(final Page page, final VoidHandler end) {
+			final Iterator<Object> users = page.preferences.iterator();
+			final AtomicInteger inFlight = new AtomicInteger(0);
+			final AtomicBoolean ended = new AtomicBoolean(false);
+			final VoidHandler pump = new VoidHandler() {
+				protected void handle() {
+					while(inFlight.get() < parallelism && users.hasNext()){
+						final JsonObject userPrefs = (JsonObject) users.next();
+						final List<JsonObject> notifications = page.notifications.get(userPrefs.getString("userId", ""));
+						if(notifications == null || notifications.isEmpty())
+							continue;
+						final String userLanguage = userLanguage(userPrefs);
+						final JsonObject templateParams = templateParameters(userPrefs, userLanguage, notifications);
+						if(templateParams == null)
+							continue;
+						inFlight.incrementAndGet();
+						final VoidHandler next = this;
+						sendUserMail(userPrefs, userLanguage, templateParams, new VoidHandler() {
+							protected void handle() {
+								inFlight.decrementAndGet();
+								next.handle(null);
+							}
+						});
+					}
+					if(!users.hasNext() && inFlight.get() == 0 && ended.compareAndSet(false, true)){
+						end.handle(null);
+					}
+				}
 			};
-
-			public void handle(Boolean continuation) {
-				if(continuation){
-					getImpactedUsers(userPagination.getAndIncrement(), new Handler<Either<String,JsonArray>>() {
-						public void handle(Either<String, JsonArray> event) {
-							if(event.isLeft()){
-								log.error("[sendDailyMails] Error while retrieving impacted users : " + event.left().getValue());
-								handler.handle(new Either.Left<String, JsonObject>(event.left().getValue()));
+			pump.handle(null);
+		}
+
+		private void sendUserMail(final JsonObject userPrefs, final String userLanguage, JsonObject templateParams,
+				final VoidHandler done) {
+			final String userDomain = userPrefs.getString("lastDomain", I18n.DEFAULT_DOMAIN);
+			final String userScheme = userPrefs.getString("lastScheme", "http");
+			processTimelineTemplate(templateParams, "", template, userDomain, userScheme, userLanguage, new Handler<String>() {
+				public void handle(final String processedTemplate) {
+					//On completion : log
+					final Handler<Message<JsonObject>> completionHandler = new Handler<Message<JsonObject>>(){
+						public void handle(Message<JsonObject> event) {
+							if("error".equals(event.body().getString("status", "error"))){
+								log.error("[Timeline " + name + " emails] Error while sending mail : " + event.body());
+								results.putNumber("users.ko", results.getInteger("users.ko") + 1);
 							} else {
-								JsonArray users = event.right().getValue();
-								usersHandler.handle(users);
+								results.putNumber("mails.sent", results.getInteger("mails.sent") + 1);
 							}
+							done.handle(null);
+						}
+					};
+
+					subject(userDomain, userLanguage, new Handler<String>() {
+						public void handle(String subject) {
+							emailSender.sendEmail(request,
+								userPrefs.getString("userMail", ""),
+								null,
+								null,
+								subject,
+								processedTemplate,
+								null,
+								false,
+								completionHandler);
 						}
 					});
-				} else {
-					handler.handle(new Either.Right<String, JsonObject>(results));
 				}
+			});
+		}
+
+		/**
+		 * Translates the mail subject once by domain and language.
+		 */
+		private void subject(String domain, String language, final Handler<String> subjectHandler) {
+			final String key = domain + "|" + language;
+			final String subject = subjects.get(key);
+			if (subject != null) {
+				subjectHandler.handle(subject);
+				return;
 			}
-		};
+			translateTimeline(new JsonArray().add(subjectKey), domain, language, new Handler<JsonArray>() {
+				public void handle(JsonArray translations) {
+					final String subject = translations.size() > 0 ? translations.get(0).toString() : subjectKey;
+					subjects.put(key, subject);
+					subjectHandler.handle(subject);
+				}
+			});
+		}
+
+		protected boolean isSent(String frequency, JsonObject userPrefs, String notificationName) {
+			final JsonObject defaults = notificationsDefaults.getObject(notificationName);
+			if(defaults == null)
+				return false;
+			JsonObject notificationPreference = userPrefs
+					.getObject("preferences", new JsonObject())
+						.getObject("config", new JsonObject())
+							.getObject(notificationName, new JsonObject());
+			return frequency.equals(notificationPrefsMixin("defaultFrequency", notificationPreference, defaults)) &&
+				!TimelineNotificationsLoader.Restrictions.INTERNAL.name().equals(
+					notificationPrefsMixin("restriction", notificationPreference, defaults)) &&
+				!TimelineNotificationsLoader.Restrictions.HIDDEN.name().equals(
+					notificationPrefsMixin("restriction", notificationPreference, defaults));
+		}
+
+		protected JsonObject notificationDefaults(String notificationName) {
+			return notificationsDefaults.getObject(notificationName, new JsonObject());
+		}
 
-		getNotificationsDefaults(new Handler<JsonArray>() {
-			public void handle(final JsonArray notifications) {
-				if(notifications == null){
-					log.error("[sendDailyMails] Error while retrieving notifications defaults.");
-					return;
-				} else {
-					for(Object notifObj: notifications){
-						final JsonObject notif = (JsonObject) notifObj;
-						notificationsDefaults.putObject(notif.getString("key", ""), notif);
+	}
+
+	private String userLanguage(JsonObject userPrefs) {
+		String language = "fr";
+		try {
+			language = new JsonObject(userPrefs.getString("language", "{}")).getString("default-domain", "fr");
+		} catch(Exception e) {
+			log.error("UserId [" + userPrefs.getString("userId", "") + "] - Bad language preferences format");
+		}
+		return language;
+	}
+
+	private static String notificationName(JsonObject notification) {
+		return notification.getString("type","").toLowerCase() + "." +
+			notification.getString("event-type", "").toLowerCase();
+	}
+
+	/**
+	 * Send daily notification emails for all users.
+	 *
+	 * @param dayDelta : When to aggregate, delta from now.
+	 * @param handler : Handles the results, emails sent / users KO
+	 */
+	public void sendDailyMails(int dayDelta, final Handler<Either<String, JsonObject>> handler){
+		final Calendar dayDate = Calendar.getInstance();
+		dayDate.add(Calendar.DAY_OF_MONTH, dayDelta);
+		dayDate.set(Calendar.HOUR_OF_DAY, 0);
+		dayDate.set(Calendar.MINUTE, 0);
+		dayDate.set(Calendar.SECOND, 0);
+		dayDate.set(Calendar.MILLISECOND, 0);
+
+		new DigestMails("daily", dayDate.getTime(), "notifications/daily-mail.html",
+				"timeline.daily.mail.subject.header", handler) {
+
+			protected boolean grouped() {
+				return false;
+			}
+
+			protected JsonObject templateParameters(JsonObject userPrefs, String userLanguage, List<JsonObject> notifications) {
+				SimpleDateFormat formatter = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss", Locale.forLanguageTag(userLanguage));
+				final JsonArray dates = new JsonArray();
+				final JsonArray templates = new JsonArray();
+
+				for(JsonObject notification : notifications){
+					final String notificationName = notificationName(notification);
+					if(isSent(TimelineNotificationsLoader.Frequencies.DAILY.name(), userPrefs, notificationName)){
+						templates.add(new JsonObject()
+							.putString("template", notificationDefaults(notificationName).getString("template", ""))
+							.putObject("params", notification.getObject("params", new JsonObject())));
+						dates.add(formatter.format(MongoDb.parseIsoDate(notification.getObject("date"))));
 					}
-					userContinuationHandler.handle(true);
 				}
+				if(templates.size() == 0){
+					return null;
+				}
+				return new JsonObject()
+					.putArray("nestedTemplatesArray", templates)
+					.putArray("notificationDates", dates);
 			}
-		});
+		}.start();
 	}
 
 	/**
@@ -603,9 +804,6 @@ public class TimelineMailer {
 	 * @param handler : Handles the results, emails sent / users KO
 	 */
 	public void sendWeeklyMails(int dayDelta, final Handler<Either<String, JsonObject>> handler){
-
-		final HttpServerRequest request = new JsonHttpServerRequest(new JsonObject());
-		final AtomicInteger userPagination = new AtomicInteger(0);
 		final Calendar weekDate = Calendar.getInstance();
 		weekDate.add(Calendar.DAY_OF_MONTH, dayDelta - 6);
 		weekDate.set(Calendar.HOUR_OF_DAY, 0);
@@ -613,185 +811,41 @@ public class TimelineMailer {
 		weekDate.set(Calendar.SECOND, 0);
 		weekDate.set(Calendar.MILLISECOND, 0);
 
-		final JsonObject results = new JsonObject()
-			.putNumber("mails.sent", 0)
-			.putNumber("users.ko", 0);
-		final JsonObject notificationsDefaults = new JsonObject();
-
-		final Handler<Boolean> userContinuationHandler = new Handler<Boolean>() {
+		new DigestMails("weekly", weekDate.getTime(), "notifications/weekly-mail.html",
+				"timeline.weekly.mail.subject.header", handler) {
 
-			private final Handler<Boolean> continuation = this;
-			private final Handler<JsonArray> usersHandler = new Handler<JsonArray>() {
-				public void handle(final JsonArray users) {
-					final int nbUsers = users.size();
-					if(nbUsers == 0){
-						continuation.handle(false);
-						return;
-					}
-					final AtomicInteger usersCountdown = new AtomicInteger(nbUsers);
-
-					final VoidHandler usersEndHandler = new VoidHandler() {
-						protected void handle() {
-							if(usersCountdown.decrementAndGet() <= 0){
-								continuation.handle(nbUsers == USERS_LIMIT);
-							}
-						}
-					};
-
-					final JsonArray userIds = new JsonArray();
-					for(Object userObj : users)
-						userIds.add(((JsonObject) userObj).getString("id", ""));
-					getUsersPreferences(userIds, new Handler<JsonArray>(){
-						public void handle(JsonArray preferences) {
-							for(Object userObj : preferences){
-								final JsonObject userPrefs = (JsonObject) userObj;
-								final String userDomain = userPrefs.getString("lastDomain", I18n.DEFAULT_DOMAIN);
-								final String userScheme = userPrefs.getString("lastScheme", "http");
-								String mutableUserLanguage = "fr";
-								try {
-									mutableUserLanguage = new JsonObject(userPrefs.getString("language", "{}")).getString("default-domain", "fr");
-								} catch(Exception e) {
-									log.error("UserId [" + userPrefs.getString("userId", "") + "] - Bad language preferences format");
-								}
-								final String userLanguage = mutableUserLanguage;
-
-								getAggregatedUserNotifications(userPrefs.getString("userId", ""), weekDate.getTime(), new Handler<JsonArray>(){
-									public void handle(JsonArray notifications) {
-										if(notifications.size() == 0){
-											usersEndHandler.handle(null);
-											return;
-										}
-
-										final JsonArray weeklyNotifications = new JsonArray();
-
-										for(Object notificationObj : notifications){
-											JsonObject notification = (JsonObject) notificationObj;
-											final String notificationName =
-												notification.getString("type","").toLowerCase() + "." +
-												notification.getString("event-type", "").toLowerCase();
-											if(notificationsDefaults.getObject(notificationName) == null)
-												continue;
-
-											JsonObject notificationPreference = userPrefs
-													.getObject("preferences", new JsonObject())
-														.getObject("config", new JsonObject())
-																.getObject(notificationName, new JsonObject());
-											if(TimelineNotificationsLoader.Frequencies.WEEKLY.name().equals(
-													notificationPrefsMixin("defaultFrequency", notificationPreference, notificationsDefaults.getObject(notificationName))) &&
-												!TimelineNotificationsLoader.Restrictions.INTERNAL.name().equals(
-													notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getObject(notificationName))) &&
-												!TimelineNotificationsLoader.Restrictions.HIDDEN.name().equals(
-														notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getObject(notificationName)))){
-												notification.putString("notificationName", notificationName);
-												weeklyNotifications.add(notification);
-											}
-										}
-
-										final JsonObject weeklyNotificationsObj = new JsonObject();
-										final JsonArray weeklyNotificationsGroupedArray = new JsonArray();
-										for(Object notif : weeklyNotifications){
-											JsonObject notification = (JsonObject) notif;
-											if(!weeklyNotificationsObj.containsField(notification.getString("type").toLowerCase()))
-												weeklyNotificationsObj.putObject(notification.getString("type").toLowerCase(), new JsonObject()
-													.putString("link", notificationsDefaults
-															.getObject(notification.getString("notificationName")).getString("app-address", ""))
-													.putArray("event-types", new JsonArray()));
-											weeklyNotificationsObj
-												.getObject(notification.getString("type").toLowerCase())
-													.getArray(("event-types"), new JsonArray())
-														.add(notification);
-										}
-
-										for(String key : weeklyNotificationsObj.toMap().keySet()){
-											weeklyNotificationsGroupedArray.add(new JsonObject()
-												.putString("type", key)
-												.putString("link", weeklyNotificationsObj.getObject(key).getString("link", ""))
-												.putArray("event-types", weeklyNotificationsObj.getObject(key).getArray("event-types")));
-										}
-
-										if(weeklyNotifications.size() > 0){
-											JsonObject templateParams = new JsonObject().putArray("notifications", weeklyNotificationsGroupedArray);
-											processTimelineTemplate(templateParams, "", "notifications/weekly-mail.html",
-													userDomain, userScheme, userLanguage, new Handler<String>() {
-												public void handle(final String processedTemplate) {
-													//On completion : log
-													final Handler<Message<JsonObject>> completionHandler = new Handler<Message<JsonObject>>(){
-														public void handle(Message<JsonObject> event) {
-															if("error".equals(event.body().getString("status", "error"))){
-																log.error("[Timeline weekly emails] Error while sending mail : " + event.body());
-																results.putNumber("users.ko", results.getInteger("users.ko") + 1);
-															} else {
-																results.putNumber("mails.sent", results.getInteger("mails.sent") + 1);
-															}
-															usersEndHandler.handle(null);
-														}
-
-													};
-
-													//Translate mail title
-													JsonArray keys = new JsonArray()
-														.add("timeline.weekly.mail.subject.header");
-													translateTimeline(keys, userDomain, userLanguage, new Handler<JsonArray>() {
-														public void handle(JsonArray translations) {
-															//Send mail containing the "weekly" notifications
-															emailSender.sendEmail(request,
-																userPrefs.getString("userMail", ""),
-																null,
-																null,
-																translations.get(0).toString(),
-																processedTemplate,
-																null,
-																false,
-																completionHandler);
-														}
-													});
-												}
-											});
-										} else {
-											usersEndHandler.handle(null);
-										}
+			protected boolean grouped() {
+				return true;
+			}
 
-									}
-								});
-							}
-						}
-					});
+			protected JsonObject templateParameters(JsonObject userPrefs, String userLanguage, List<JsonObject> notifications) {
+				final JsonObject weeklyNotificationsObj = new JsonObject();
+				for(JsonObject notification : notifications){
+					final String notificationName = notificationName(notification);
+					if(!isSent(TimelineNotificationsLoader.Frequencies.WEEKLY.name(), userPrefs, notificationName))
+						continue;
+					final JsonObject n = notification.copy().putString("notificationName", notificationName);
+					final String type = n.getString("type").toLowerCase();
+					if(!weeklyNotificationsObj.containsField(type))
+						weeklyNotificationsObj.putObject(type, new JsonObject()
+							.putString("link", notificationDefaults(notificationName).getString("app-address", ""))
+							.putArray("event-types", new JsonArray()));
+					weeklyNotificationsObj.getObject(type).getArray("event-types").add(n);
 				}
-			};
-
-			public void handle(Boolean continuation) {
-				if(continuation){
-					getImpactedUsers(userPagination.getAndIncrement(), new Handler<Either<String,JsonArray>>() {
-						public void handle(Either<String, JsonArray> event) {
-							if(event.isLeft()){
-								log.error("[sendWeeklyMails] Error while retrieving impacted users : " + event.left().getValue());
-								handler.handle(new Either.Left<String, JsonObject>(event.left().getValue()));
-							} else {
-								JsonArray users = event.right().getValue();
-								usersHandler.handle(users);
-							}
-						}
-					});
-				} else {
-					handler.handle(new Either.Right<String, JsonObject>(results));
+				if(weeklyNotificationsObj.size() == 0){
+					return null;
 				}
-			}
-		};
 
-		getNotificationsDefaults(new Handler<JsonArray>() {
-			public void handle(final JsonArray notifications) {
-				if(notifications == null){
-					log.error("[sendWeeklyMails] Error while retrieving notifications defaults.");
-					return;
-				} else {
-					for(Object notifObj: notifications){
-						final JsonObject notif = (JsonObject) notifObj;
-						notificationsDefaults.putObject(notif.getString("key", ""), notif);
-					}
-					userContinuationHandler.handle(true);
+				final JsonArray weeklyNotificationsGroupedArray = new JsonArray();
+				for(String key : weeklyNotificationsObj.getFieldNames()){
+					weeklyNotificationsGroupedArray.add(new JsonObject()
+						.putString("type", key)
+						.putString("link", weeklyNotificationsObj.getObject(key).getString("link", ""))
+						.putArray("event-types", weeklyNotificationsObj.getObject(key).getArray("event-types")));
 				}
+				return new JsonObject().putArray("notifications", weeklyNotificationsGroupedArray);
 			}
-		});
+		}.start();
 	}
 
 }
@@ -61,15 +61,31 @@ public class SearchingHandler implements Handler<Message<JsonObject>> {
 		final JsonArray columnsHeader = message.body().getArray("columnsHeader", new JsonArray());
 		final List<String> appFilters = message.body().getArray("appFilters", new JsonArray()).toList();
 		final String locale = message.body().getString("locale", "fr");
+		// optional absolute deadline (epoch ms) : late searches are skipped and the reply waits no longer than the budget
+		final Long deadline = message.body().getLong("deadline");
+		final long start = System.currentTimeMillis();
+
+		if (deadline != null && deadline <= start) {
+			return;
+		}
 
 		searchingEvents.searchResource(appFilters, userId, groupIds, searchWords, page, limit, columnsHeader, locale, new Handler<Either<String, JsonArray>>() {
 			@Override
 			public void handle(Either<String, JsonArray> event) {
 				if (event.isRight()) {
-					final String address = "search." + searchId;
+					final long now = System.currentTimeMillis();
+					final long timeout = (deadline != null) ? deadline - now : 5000l;
+					if (timeout <= 0) {
+						if (log.isDebugEnabled()) {
+							log.debug("Search deadline exceeded : " + searchingEvents.getClass().getSimpleName() +
+									" drops " + event.right().getValue().size() + " results.");
+						}
+						return;
+					}
 					final JsonObject message = new JsonObject().putString("application", searchingEvents.getClass().getSimpleName());
 					message.putArray("results", event.right().getValue());
-					eb.sendWithTimeout(address, message, 5000l,
+					message.putNumber("elapsed", now - start);
+					eb.sendWithTimeout("search." + searchId, message, timeout,
 							new Handler<AsyncResult<Message<JsonObject>>>() {
 								@Override
 								public void handle(AsyncResult<Message<JsonObject>> res) {
@@ -24,6 +24,7 @@ import fr.wseduc.webutils.collections.Joiner;
 import org.entcore.common.service.SearchService;
 import org.entcore.common.service.VisibilityFilter;
 import org.entcore.common.sql.Sql;
+import org.entcore.common.sql.SqlSearchColumns;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.json.JsonArray;
 
@@ -45,6 +46,7 @@ public final class SqlSearchService implements SearchService {
     private final String table;
     private final Boolean checkVisibility;
     private final List<String> searchFields;
+    private final boolean useSearchColumns;
 
     public SqlSearchService(String schema, String table, String shareTable, List<String> searchFields) {
         this(schema, table, shareTable, searchFields, null, null, null);
@@ -52,7 +54,17 @@ public final class SqlSearchService implements SearchService {
 
     public SqlSearchService(String schema, String table, String shareTable, List<String> searchFields, String userTable, String displayNameField,
                             Boolean checkVisibility) {
+        this(schema, table, shareTable, searchFields, userTable, displayNameField, checkVisibility, false);
+    }
+
+    /**
+     * @param useSearchColumns search on the normalized shadow columns maintained by SqlSearchColumns
+     *                         instead of normalizing the fields at query time.
+     */
+    public SqlSearchService(String schema, String table, String shareTable, List<String> searchFields, String userTable, String displayNameField,
+                            Boolean checkVisibility, boolean useSearchColumns) {
         this.table = table;
+        this.useSearchColumns = useSearchColumns;
         this.sql = Sql.getInstance();
         this.searchFields = searchFields;
 
@@ -94,8 +106,13 @@ public final class SqlSearchService implements SearchService {
         final String rightsWhere = "member_id IN " + Sql.listPrepared(groupsAndUserIds) +
         " OR owner = ?" + (checkVisibility ? " OR visibility IN (?,?)" : "");
 
-        final String iLikeTemplate = "ILIKE ALL " + Sql.arrayPrepared(searchWords.toArray(), true);
-        final String searchWhere = searchWherePrepared(this.searchFields, iLikeTemplate);
+        final String searchWhere;
+        if (useSearchColumns) {
+            searchWhere = searchColumnsWherePrepared(this.searchFields, searchWords.size());
+        } else {
+            final String iLikeTemplate = "ILIKE ALL " + Sql.arrayPrepared(searchWords.toArray(), true);
+            searchWhere = searchWherePrepared(this.searchFields, iLikeTemplate);
+        }
 
         final String query = "SELECT " + fields + " FROM " + resourceTable +
                 " LEFT JOIN " + shareTable + " ON " + resourceTable + ".id = resource_id" +
@@ -132,6 +149,28 @@ public final class SqlSearchService implements SearchService {
         return sb.toString();
     }
 
+    // one LIKE per word (rather than LIKE ALL on an array) so that the planner can use the trigram indexes,
+    // the words getting the same normalization as the shadow columns
+    private String searchColumnsWherePrepared(List<String> list, int nbWords) {
+        if (nbWords == 0) {
+            return "TRUE";
+        }
+        StringBuilder sb = new StringBuilder();
+        if (list != null && list.size() > 0) {
+            for (String s : list) {
+                final String column = SqlSearchColumns.shadowColumn(s);
+                sb.append("(");
+                for (int i = 0; i < nbWords; i++) {
+                    sb.append(column).append(" LIKE lower(unaccent(?)) AND ");
+                }
+                sb.delete(sb.length() - 5, sb.length());
+                sb.append(") OR ");
+            }
+            sb.delete(sb.length() - 4, sb.length());
+        }
+        return sb.toString();
+    }
+
     private List<String> searchValuesWildcard(List<String> list) {
         final List<String> result = new ArrayList<String>();
         for (String s : list) {
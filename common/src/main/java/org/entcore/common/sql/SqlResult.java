@@ -25,9 +25,7 @@ import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 public class SqlResult {
@@ -112,41 +110,7 @@ public class SqlResult {
 	}
 
 	private static JsonArray transform(JsonObject body) {
-		JsonArray f = body.getArray("fields");
-		JsonArray r = body.getArray("results");
-		JsonArray result = new JsonArray();
-		if (f != null && r != null) {
-			JsonArray jsonbAttributes = body.getArray("jsonb_fields");
-			List ja = (jsonbAttributes != null) ? jsonbAttributes.toList() : new ArrayList<>();
-			for (Object o : r) {
-				if (!(o instanceof JsonArray)) continue;
-				JsonArray a = (JsonArray) o;
-				JsonObject j = new JsonObject();
-				for (int i = 0; i < f.size(); i++) {
-					Object item = a.get(i);
-					if (item instanceof Boolean) {
-						j.putBoolean((String) f.get(i), (Boolean) item);
-					} else if (item instanceof Number) {
-						j.putNumber((String) f.get(i), (Number) item);
-					} else if (item instanceof JsonArray) {
-						j.putArray((String) f.get(i), (JsonArray) item);
-					} else if (item != null && ja.contains(f.get(i))) {
-						String stringRepresentation = item.toString().trim();
-						if(stringRepresentation.startsWith("[")){
-							j.putArray((String) f.get(i), new JsonArray(item.toString()));
-						} else {
-							j.putObject((String) f.get(i), new JsonObject(item.toString()));
-						}
-					} else if (item != null) {
-						j.putString((String) f.get(i), item.toString());
-					} else {
-						j.putValue((String) f.get(i), null);
-					}
-				}
-				result.addObject(j);
-			}
-		}
-		return result;
+		return new SqlResultSet(body).toJsonArray();
 	}
 
 	public static Either<String, JsonObject> validRowsResult(Message<JsonObject> res) {
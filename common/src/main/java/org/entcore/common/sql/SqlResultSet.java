@@ -0,0 +1,114 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.sql;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Column oriented view over a sql persistor reply ("fields" / "results").
+ * Column names and jsonb columns are resolved once per result set; rows are
+ * only turned into JsonObject when asked for.
+ */
+public class SqlResultSet {
+
+	private final String[] columns;
+	private final boolean[] jsonb;
+	private final JsonArray rows;
+
+	public SqlResultSet(JsonObject body) {
+		JsonArray f = body.getArray("fields");
+		JsonArray r = body.getArray("results");
+		JsonArray jsonbFields = body.getArray("jsonb_fields");
+		if (f == null || r == null) {
+			columns = new String[0];
+			jsonb = new boolean[0];
+			rows = new JsonArray();
+			return;
+		}
+		Set<Object> jsonbNames = new HashSet<>();
+		if (jsonbFields != null) {
+			for (Object o : jsonbFields) {
+				jsonbNames.add(o);
+			}
+		}
+		columns = new String[f.size()];
+		jsonb = new boolean[f.size()];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = f.get(i);
+			jsonb[i] = jsonbNames.contains(columns[i]);
+		}
+		rows = r;
+	}
+
+	public int size() {
+		return rows.size();
+	}
+
+	public String[] getColumns() {
+		return columns;
+	}
+
+	public JsonObject getRow(int idx) {
+		Object o = rows.get(idx);
+		if (!(o instanceof JsonArray)) {
+			return null;
+		}
+		JsonArray a = (JsonArray) o;
+		JsonObject j = new JsonObject();
+		for (int i = 0; i < columns.length; i++) {
+			Object item = a.get(i);
+			if (item instanceof Boolean) {
+				j.putBoolean(columns[i], (Boolean) item);
+			} else if (item instanceof Number) {
+				j.putNumber(columns[i], (Number) item);
+			} else if (item instanceof JsonArray) {
+				j.putArray(columns[i], (JsonArray) item);
+			} else if (item != null && jsonb[i]) {
+				String stringRepresentation = item.toString().trim();
+				if (stringRepresentation.startsWith("[")) {
+					j.putArray(columns[i], new JsonArray(stringRepresentation));
+				} else {
+					j.putObject(columns[i], new JsonObject(stringRepresentation));
+				}
+			} else if (item != null) {
+				j.putString(columns[i], item.toString());
+			} else {
+				j.putValue(columns[i], null);
+			}
+		}
+		return j;
+	}
+
+	public JsonArray toJsonArray() {
+		JsonArray result = new JsonArray();
+		for (int i = 0; i < rows.size(); i++) {
+			JsonObject j = getRow(i);
+			if (j != null) {
+				result.addObject(j);
+			}
+		}
+		return result;
+	}
+
+}
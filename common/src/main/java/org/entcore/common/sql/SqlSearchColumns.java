@@ -0,0 +1,165 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.sql;
+
+import fr.wseduc.webutils.Either;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.util.List;
+
+import static org.entcore.common.sql.SqlResult.validRowsResult;
+
+/**
+ * Search-normalized shadow columns (HTML stripped, accent folded, lower-cased) used by SqlSearchService.<br>
+ * For each searchable field <code>f</code> the shadow column is <code>f_search</code>, kept in sync by a trigger
+ * and indexed with a pg_trgm GIN index. <code>migrate</code> installs them on an existing table and backfills it in batches.
+ */
+public final class SqlSearchColumns {
+
+	private static final Logger log = LoggerFactory.getLogger(SqlSearchColumns.class);
+	public static final String SUFFIX = "_search";
+
+	private SqlSearchColumns() {}
+
+	public static String shadowColumn(String field) {
+		return field + SUFFIX;
+	}
+
+	public static String normalize(String expression) {
+		return "lower(unaccent(regexp_replace(" + expression + ",'<[^>]*>','','g')))";
+	}
+
+	/**
+	 * Adds the shadow columns and their trigger, backfills the existing rows then creates the trigram indexes.
+	 * @param schema Table schema (may be null).
+	 * @param table Table name, which must have an id primary key.
+	 * @param fields Searchable fields.
+	 * @param batchSize Number of rows updated by each backfill statement.
+	 * @param handler Called with the number of backfilled rows.
+	 */
+	public static void migrate(final String schema, final String table, final List<String> fields, final int batchSize,
+			final Handler<Either<String, JsonObject>> handler) {
+		final String t = qualified(schema, table);
+		final String prefix = (schema != null && !schema.trim().isEmpty()) ? schema + "." : "";
+		final String function = prefix + table + "_search_columns";
+
+		final SqlStatementsBuilder s = new SqlStatementsBuilder();
+		s.raw("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+		final StringBuilder assignments = new StringBuilder();
+		for (String field : fields) {
+			s.raw("DO $$ BEGIN ALTER TABLE " + t + " ADD COLUMN " + shadowColumn(field) + " TEXT; " +
+					"EXCEPTION WHEN duplicate_column THEN NULL; END $$");
+			assignments.append("NEW.").append(shadowColumn(field)).append(" := ")
+					.append(normalize("NEW." + field)).append("; ");
+		}
+		s.raw("CREATE OR REPLACE FUNCTION " + function + "() RETURNS TRIGGER AS $$ BEGIN " + assignments +
+				"RETURN NEW; END; $$ LANGUAGE plpgsql");
+		s.raw("DROP TRIGGER IF EXISTS " + table + "_search_columns_trigger ON " + t);
+		s.raw("CREATE TRIGGER " + table + "_search_columns_trigger BEFORE INSERT OR UPDATE OF " +
+				join(fields, ", ") + " ON " + t + " FOR EACH ROW EXECUTE PROCEDURE " + function + "()");
+
+		Sql.getInstance().transaction(s.build(), new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				if (!"ok".equals(message.body().getString("status"))) {
+					handler.handle(new Either.Left<String, JsonObject>(message.body().getString("message", "")));
+					return;
+				}
+				backfill(t, fields, Math.max(1, batchSize), 0l, new Handler<Either<String, JsonObject>>() {
+					@Override
+					public void handle(final Either<String, JsonObject> result) {
+						if (result.isLeft()) {
+							handler.handle(result);
+							return;
+						}
+						createIndexes(schema, table, fields, new Handler<Either<String, JsonObject>>() {
+							@Override
+							public void handle(Either<String, JsonObject> event) {
+								handler.handle(event.isRight() ? result : event);
+							}
+						});
+					}
+				});
+			}
+		});
+	}
+
+	private static void backfill(final String t, final List<String> fields, final int batchSize, final long total,
+			final Handler<Either<String, JsonObject>> handler) {
+		final StringBuilder set = new StringBuilder();
+		final StringBuilder missing = new StringBuilder();
+		for (String field : fields) {
+			set.append(shadowColumn(field)).append(" = ").append(normalize(field)).append(", ");
+			missing.append("(").append(shadowColumn(field)).append(" IS NULL AND ").append(field)
+					.append(" IS NOT NULL) OR ");
+		}
+		set.delete(set.length() - 2, set.length());
+		missing.delete(missing.length() - 4, missing.length());
+		final String query = "UPDATE " + t + " SET " + set + " WHERE id IN (SELECT id FROM " + t +
+				" WHERE " + missing + " LIMIT ?)";
+		Sql.getInstance().prepared(query, new JsonArray().add(batchSize), new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				Either<String, JsonObject> r = validRowsResult(message);
+				if (r.isLeft()) {
+					handler.handle(r);
+					return;
+				}
+				final long rows = r.right().getValue().getLong("rows", 0l);
+				if (rows > 0) {
+					log.info("Search columns backfill of " + t + " : " + (total + rows) + " rows.");
+					backfill(t, fields, batchSize, total + rows, handler);
+				} else {
+					handler.handle(new Either.Right<String, JsonObject>(new JsonObject().putNumber("rows", total)));
+				}
+			}
+		});
+	}
+
+	private static void createIndexes(String schema, String table, List<String> fields,
+			Handler<Either<String, JsonObject>> handler) {
+		final String t = qualified(schema, table);
+		final SqlStatementsBuilder s = new SqlStatementsBuilder();
+		for (String field : fields) {
+			s.raw("DO $$ BEGIN CREATE INDEX " + table + "_" + shadowColumn(field) + "_trgm_idx ON " + t +
+					" USING gin (" + shadowColumn(field) + " gin_trgm_ops); " +
+					"EXCEPTION WHEN duplicate_table THEN NULL; END $$");
+		}
+		Sql.getInstance().transaction(s.build(), SqlResult.validRowsResultHandler(handler));
+	}
+
+	private static String qualified(String schema, String table) {
+		return (schema != null && !schema.trim().isEmpty()) ? schema + "." + table : table;
+	}
+
+	private static String join(List<String> fields, String separator) {
+		final StringBuilder sb = new StringBuilder();
+		for (String field : fields) {
+			sb.append(field).append(separator);
+		}
+		return sb.substring(0, Math.max(0, sb.length() - separator.length()));
+	}
+
+}
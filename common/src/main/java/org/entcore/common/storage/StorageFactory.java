@@ -20,6 +20,7 @@
 package org.entcore.common.storage;
 
 import fr.wseduc.webutils.Server;
+import org.entcore.common.storage.impl.CachedStorage;
 import org.entcore.common.storage.impl.FileStorage;
 import org.entcore.common.storage.impl.GridfsStorage;
 import org.entcore.common.storage.impl.SwiftStorage;
@@ -29,13 +30,18 @@ import org.vertx.java.core.shareddata.ConcurrentSharedMap;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.HashMap;
+import java.util.Map;
 
 public class StorageFactory {
 
+	// one cache per bucket, shared by all the storages of the module so that its limits hold for the bucket
+	private static final Map<String, CachedStorage> caches = new HashMap<>();
 	private final Vertx vertx;
 	private JsonObject swift;
 	private JsonObject fs;
 	private String gridfsAddress;
+	private JsonObject cache;
 
 	public StorageFactory(Vertx vertx) {
 		this(vertx, null);
@@ -60,6 +66,9 @@ public class StorageFactory {
 		} else if (config != null && config.getString("gridfs-address") != null) {
 			this.gridfsAddress = config.getString("gridfs-address");
 		}
+		if (config != null && config.getObject("file-cache") != null) {
+			this.cache = config.getObject("file-cache");
+		}
 
 	}
 
@@ -80,7 +89,20 @@ public class StorageFactory {
 		} else {
 			storage = new GridfsStorage(vertx, Server.getEventBus(vertx), gridfsAddress);
 		}
+		if (storage != null && cache != null) {
+			storage = getCachedStorage(vertx, storage, cache);
+		}
 		return storage;
 	}
 
+	private static synchronized Storage getCachedStorage(Vertx vertx, Storage storage, JsonObject cache) {
+		final String key = storage.getProtocol() + ":" + storage.getBucket();
+		CachedStorage cachedStorage = caches.get(key);
+		if (cachedStorage == null) {
+			cachedStorage = new CachedStorage(vertx, storage, cache);
+			caches.put(key, cachedStorage);
+		}
+		return cachedStorage;
+	}
+
 }
@@ -0,0 +1,625 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.storage.impl;
+
+import fr.wseduc.swift.utils.FileUtils;
+import fr.wseduc.webutils.http.ETag;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.entcore.common.storage.BucketStats;
+import org.entcore.common.storage.Storage;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.file.FileSystem;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache decorator for any Storage.<br>
+ * Downloaded files are kept in a bounded local disk cache, served with zero-copy sendFile,
+ * and the smallest ones also in a bounded off-heap hot tier used by readFile.
+ * Entries are validated against the size and md5 of the file metadata when present,
+ * and invalidated when the file is removed or overwritten through this storage.
+ * Hits are sent with the ETag of the backend storage, captured when it served the file,
+ * so that a client revalidates with the same value whether it was a hit or a miss.
+ * Each instance works in its own directory, locked for the lifetime of the JVM ; StorageFactory shares
+ * one instance per bucket.
+ */
+public class CachedStorage implements Storage {
+
+	private static final Logger log = LoggerFactory.getLogger(CachedStorage.class);
+	private static final String LOCK_FILE = ".lock";
+	// md5 of the files to cache, computed out of the event loop ; when the queue is full the file isn't cached
+	private static final ThreadPoolExecutor hasher = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(8), new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "storage-cache-hasher");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	private final Vertx vertx;
+	private final Storage storage;
+	private final FileSystem fs;
+	private final FileLock dirLock;
+	private final String cachePath;
+	private final long maxDiskSize;
+	private final long maxFileSize;
+	private final long maxHotSize;
+	private final long maxHotFileSize;
+	private final Map<String, Entry> disk = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, ByteBuf> hot = new LinkedHashMap<>(16, 0.75f, true);
+	// generation of the pending load of each id, an invalidation removes it so the stale load is dropped
+	private final Map<String, Long> loading = new HashMap<>();
+	// backend etags captured while the file is being loaded
+	private final Map<String, String> pendingEtags = new HashMap<>();
+	private long generation = 0;
+	private long diskSize = 0;
+	private long hotSize = 0;
+	private long hits = 0;
+	private long hotHits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	private static final class Entry {
+		private final String path;
+		private final long size;
+		private final String md5;
+		private volatile String etag;
+
+		private Entry(String path, long size, String md5, String etag) {
+			this.path = path;
+			this.size = size;
+			this.md5 = md5;
+			this.etag = etag;
+		}
+	}
+
+	public CachedStorage(Vertx vertx, Storage storage, JsonObject config) {
+		this.vertx = vertx;
+		this.storage = storage;
+		this.fs = vertx.fileSystem();
+		this.maxDiskSize = config.getLong("max-disk-size", 1024 * 1024 * 1024l);
+		this.maxFileSize = config.getLong("max-file-size", 50 * 1024 * 1024l);
+		this.maxHotSize = config.getLong("max-hot-size", 64 * 1024 * 1024l);
+		this.maxHotFileSize = config.getLong("max-hot-file-size", 256 * 1024l);
+		final String bucket = (storage.getBucket() != null) ?
+				storage.getBucket().replaceAll("[^A-Za-z0-9._-]", "_") : "default";
+		final File bucketDir = new File(config.getString("path", System.getProperty("java.io.tmpdir") +
+				File.separator + "storage-cache"), bucket);
+		cleanPreviousRuns(bucketDir);
+		final File dir = new File(bucketDir, UUID.randomUUID().toString());
+		if (!dir.mkdirs()) {
+			log.error("Unable to create storage cache directory " + dir.getAbsolutePath());
+		}
+		this.dirLock = lock(dir);
+		this.cachePath = dir.getAbsolutePath() + File.separator;
+		vertx.eventBus().registerLocalHandler("storage.cache." + bucket,
+				new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				message.reply(getMetrics());
+			}
+		});
+	}
+
+	private static FileLock lock(File dir) {
+		try {
+			final FileLock lock = new RandomAccessFile(new File(dir, LOCK_FILE), "rw").getChannel().tryLock();
+			if (lock == null) {
+				log.error("Unable to lock storage cache directory " + dir.getAbsolutePath());
+			}
+			return lock;
+		} catch (IOException e) {
+			log.error("Unable to lock storage cache directory " + dir.getAbsolutePath(), e);
+			return null;
+		}
+	}
+
+	// removes the directories which are no longer locked by a running instance
+	private static void cleanPreviousRuns(File bucketDir) {
+		final File[] dirs = bucketDir.listFiles();
+		if (dirs == null) {
+			return;
+		}
+		for (File d : dirs) {
+			if (!d.isDirectory()) {
+				continue;
+			}
+			final File lockFile = new File(d, LOCK_FILE);
+			if (!lockFile.exists()) {
+				// directory being created by another instance
+				if (d.lastModified() > System.currentTimeMillis() - 60000l) {
+					continue;
+				}
+			} else {
+				try (FileChannel channel = new RandomAccessFile(lockFile, "rw").getChannel()) {
+					final FileLock lock = channel.tryLock();
+					if (lock == null) {
+						continue;
+					}
+					lock.release();
+				} catch (OverlappingFileLockException e) {
+					// locked by another instance of this JVM
+					continue;
+				} catch (IOException e) {
+					log.warn("Unable to check storage cache directory " + d.getAbsolutePath(), e);
+					continue;
+				}
+			}
+			final File[] files = d.listFiles();
+			if (files != null) {
+				for (File f : files) {
+					f.delete();
+				}
+			}
+			d.delete();
+		}
+	}
+
+	@Override
+	public void readFile(final String id, final Handler<Buffer> handler) {
+		final Buffer buffer = getHot(id);
+		if (buffer != null) {
+			handler.handle(buffer);
+			return;
+		}
+		final Entry e = getEntry(id, null, false);
+		if (e == null) {
+			final Long token = startLoad(id);
+			storage.readFile(id, new Handler<Buffer>() {
+				@Override
+				public void handle(Buffer event) {
+					if (token != null) {
+						if (event != null) {
+							store(id, token, event);
+						} else {
+							endLoad(id, token);
+						}
+					}
+					handler.handle(event);
+				}
+			});
+			return;
+		}
+		fs.readFile(e.path, new AsyncResultHandler<Buffer>() {
+			@Override
+			public void handle(AsyncResult<Buffer> event) {
+				if (event.succeeded()) {
+					handler.handle(event.result());
+				} else {
+					invalidate(id);
+					storage.readFile(id, handler);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline, JsonObject metadata) {
+		sendFile(id, downloadName, request, inline, metadata, null);
+	}
+
+	@Override
+	public void sendFile(final String id, final String downloadName, final HttpServerRequest request, final boolean inline,
+			final JsonObject metadata, final Handler<AsyncResult<Void>> resultHandler) {
+		// entries without the backend etag yet are served by the backend, which gives it
+		final Entry e = getEntry(id, metadata, true);
+		if (e == null) {
+			storage.sendFile(id, downloadName, request, inline, metadata, captureEtag(id, request, resultHandler));
+			final long size = (metadata != null) ? metadata.getLong("size", -1l) : -1l;
+			if (size >= 0 && size <= maxFileSize && !isCached(id)) {
+				load(id);
+			}
+			return;
+		}
+		final String etag = e.etag;
+		if (HttpRange.notModified(request, etag, resultHandler)) {
+			return;
+		}
+		// the cached file may have been removed from the disk, Vert.x would then answer a 404
+		fs.exists(e.path, new AsyncResultHandler<Boolean>() {
+			@Override
+			public void handle(AsyncResult<Boolean> event) {
+				if (event.succeeded() && Boolean.TRUE.equals(event.result())) {
+					sendCachedFile(e, etag, downloadName, request, inline, metadata, resultHandler);
+				} else {
+					invalidate(id);
+					storage.sendFile(id, downloadName, request, inline, metadata, resultHandler);
+				}
+			}
+		});
+	}
+
+	private void sendCachedFile(Entry e, String etag, String downloadName, HttpServerRequest request, boolean inline,
+			JsonObject metadata, Handler<AsyncResult<Void>> resultHandler) {
+		final HttpServerResponse resp = request.response();
+		if (!inline) {
+			String name = FileUtils.getNameWithExtension(downloadName, metadata);
+			resp.putHeader("Content-Disposition", "attachment; filename=\"" + name + "\"");
+		}
+		if (etag != null) {
+			ETag.addHeader(resp, etag);
+		}
+		resp.putHeader("Accept-Ranges", "bytes");
+		if (metadata != null && metadata.getString("content-type") != null) {
+			resp.putHeader("Content-Type", metadata.getString("content-type"));
+		}
+		final HttpRange range = HttpRange.hasRange(request) ? HttpRange.parse(request, etag, e.size) : null;
+		if (range != null) {
+			if (range.prepare(resp, e.size, resultHandler)) {
+				range.sendFile(fs, e.path, resp, resultHandler);
+			}
+		} else if (resultHandler != null) {
+			resp.sendFile(e.path, resultHandler);
+		} else {
+			resp.sendFile(e.path);
+		}
+	}
+
+	private Handler<AsyncResult<Void>> captureEtag(final String id, final HttpServerRequest request,
+			final Handler<AsyncResult<Void>> resultHandler) {
+		return new Handler<AsyncResult<Void>>() {
+			@Override
+			public void handle(AsyncResult<Void> event) {
+				final HttpServerResponse resp = request.response();
+				final String etag = resp.headers().get("ETag");
+				final int status = resp.getStatusCode();
+				if (etag != null && (status == 200 || status == 206 || status == 304)) {
+					setEtag(id, etag.replaceFirst("^W/", "").replace("\"", "").trim());
+				}
+				if (resultHandler != null) {
+					resultHandler.handle(event);
+				}
+			}
+		};
+	}
+
+	private synchronized void setEtag(String id, String etag) {
+		final Entry e = disk.get(id);
+		if (e == null) {
+			if (loading.containsKey(id)) {
+				pendingEtags.put(id, etag);
+			}
+		} else if (e.etag == null) {
+			e.etag = etag;
+		} else if (!e.etag.equals(etag)) {
+			// the file changed in the backend
+			invalidate(id);
+		}
+	}
+
+	private synchronized boolean isCached(String id) {
+		return disk.containsKey(id);
+	}
+
+	private void load(final String id) {
+		final Long token = startLoad(id);
+		if (token == null) {
+			return;
+		}
+		storage.readFile(id, new Handler<Buffer>() {
+			@Override
+			public void handle(Buffer buffer) {
+				if (buffer != null) {
+					store(id, token, buffer);
+				} else {
+					endLoad(id, token);
+				}
+			}
+		});
+	}
+
+	private synchronized Long startLoad(String id) {
+		if (loading.containsKey(id)) {
+			return null;
+		}
+		final Long token = ++generation;
+		loading.put(id, token);
+		return token;
+	}
+
+	// returns false when the load has been invalidated in the meantime
+	private synchronized boolean endLoad(String id, Long token) {
+		if (!token.equals(loading.get(id))) {
+			return false;
+		}
+		loading.remove(id);
+		pendingEtags.remove(id);
+		return true;
+	}
+
+	private synchronized boolean isLoading(String id, Long token) {
+		return token.equals(loading.get(id));
+	}
+
+	private void store(final String id, final Long token, final Buffer buffer) {
+		final long size = buffer.length();
+		if (size > maxFileSize) {
+			endLoad(id, token);
+			return;
+		}
+		final Context context = vertx.currentContext();
+		try {
+			hasher.execute(new Runnable() {
+				@Override
+				public void run() {
+					final String md5 = md5(buffer);
+					if (context != null) {
+						context.runOnContext(new Handler<Void>() {
+							@Override
+							public void handle(Void v) {
+								write(id, token, buffer, md5);
+							}
+						});
+					} else {
+						write(id, token, buffer, md5);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			endLoad(id, token);
+		}
+	}
+
+	private void write(final String id, final Long token, final Buffer buffer, final String md5) {
+		if (!isLoading(id, token)) {
+			return;
+		}
+		final long size = buffer.length();
+		// one file per load, a stale load never overwrites the file of a newer one
+		final String path = cachePath + fileName(id) + "." + token;
+		fs.writeFile(path, buffer, new AsyncResultHandler<Void>() {
+			@Override
+			public void handle(AsyncResult<Void> event) {
+				if (event.failed()) {
+					log.error("Error writing cached file " + id, event.cause());
+					endLoad(id, token);
+					deleteCachedFile(path);
+					return;
+				}
+				synchronized (CachedStorage.this) {
+					final String etag = pendingEtags.get(id);
+					if (!endLoad(id, token)) {
+						deleteCachedFile(path);
+						return;
+					}
+					if (size <= maxHotFileSize && size <= maxHotSize) {
+						putHot(id, buffer);
+					}
+					final Entry old = disk.put(id, new Entry(path, size, md5, etag));
+					diskSize += size - (old != null ? old.size : 0);
+					if (old != null) {
+						deleteCachedFile(old.path);
+					}
+					evictDisk();
+				}
+			}
+		});
+	}
+
+	private synchronized Entry getEntry(String id, JsonObject metadata, boolean withEtag) {
+		final Entry e = disk.get(id);
+		if (e != null && metadata != null && ((metadata.getLong("size") != null && metadata.getLong("size") != e.size) ||
+				(metadata.getString("md5") != null && !metadata.getString("md5").equals(e.md5)))) {
+			invalidate(id);
+			misses++;
+			return null;
+		}
+		if (e != null && (!withEtag || e.etag != null)) {
+			hits++;
+			return e;
+		}
+		misses++;
+		return null;
+	}
+
+	private synchronized Buffer getHot(String id) {
+		final ByteBuf b = hot.get(id);
+		if (b == null) {
+			return null;
+		}
+		hotHits++;
+		return new Buffer(Unpooled.copiedBuffer(b.duplicate()));
+	}
+
+	private synchronized void putHot(String id, Buffer buffer) {
+		final ByteBuf b = Unpooled.directBuffer(buffer.length()).writeBytes(buffer.getBytes());
+		final ByteBuf old = hot.put(id, b);
+		hotSize += b.readableBytes();
+		if (old != null) {
+			hotSize -= old.readableBytes();
+			old.release();
+		}
+		final Iterator<ByteBuf> it = hot.values().iterator();
+		while (hotSize > maxHotSize && it.hasNext()) {
+			final ByteBuf evicted = it.next();
+			it.remove();
+			hotSize -= evicted.readableBytes();
+			evicted.release();
+			evictions++;
+		}
+	}
+
+	private void evictDisk() {
+		final Iterator<Entry> it = disk.values().iterator();
+		while (diskSize > maxDiskSize && it.hasNext()) {
+			final Entry e = it.next();
+			it.remove();
+			diskSize -= e.size;
+			evictions++;
+			deleteCachedFile(e.path);
+		}
+	}
+
+	private synchronized void invalidate(String id) {
+		loading.remove(id);
+		pendingEtags.remove(id);
+		final ByteBuf b = hot.remove(id);
+		if (b != null) {
+			hotSize -= b.readableBytes();
+			b.release();
+		}
+		final Entry e = disk.remove(id);
+		if (e != null) {
+			diskSize -= e.size;
+			deleteCachedFile(e.path);
+		}
+	}
+
+	private void deleteCachedFile(final String path) {
+		fs.delete(path, new AsyncResultHandler<Void>() {
+			@Override
+			public void handle(AsyncResult<Void> event) {
+				if (event.failed()) {
+					log.warn("Error deleting cached file " + path, event.cause());
+				}
+			}
+		});
+	}
+
+	public synchronized JsonObject getMetrics() {
+		return new JsonObject()
+				.putNumber("hits", hits)
+				.putNumber("hotHits", hotHits)
+				.putNumber("misses", misses)
+				.putNumber("evictions", evictions)
+				.putNumber("diskEntries", disk.size())
+				.putNumber("diskSize", diskSize)
+				.putNumber("hotEntries", hot.size())
+				.putNumber("hotSize", hotSize);
+	}
+
+	private static String md5(Buffer buffer) {
+		try {
+			return String.format("%032x", new BigInteger(1, MessageDigest.getInstance("MD5").digest(buffer.getBytes())));
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	// ids may contain path separators
+	private static String fileName(String id) {
+		try {
+			return String.format("%040x", new BigInteger(1, MessageDigest.getInstance("SHA-1").digest(id.getBytes("UTF-8"))));
+		} catch (Exception e) {
+			return id.replaceAll("[^A-Za-z0-9._-]", "_");
+		}
+	}
+
+	@Override
+	public void writeUploadFile(HttpServerRequest request, Handler<JsonObject> handler) {
+		storage.writeUploadFile(request, handler);
+	}
+
+	@Override
+	public void writeUploadFile(HttpServerRequest request, Long maxSize, Handler<JsonObject> handler) {
+		storage.writeUploadFile(request, maxSize, handler);
+	}
+
+	@Override
+	public void writeBuffer(Buffer buff, String contentType, String filename, Handler<JsonObject> handler) {
+		storage.writeBuffer(buff, contentType, filename, handler);
+	}
+
+	@Override
+	public void writeBuffer(String id, Buffer buff, String contentType, String filename, Handler<JsonObject> handler) {
+		invalidate(id);
+		storage.writeBuffer(id, buff, contentType, filename, handler);
+	}
+
+	@Override
+	public void writeFsFile(String id, String filename, Handler<JsonObject> handler) {
+		invalidate(id);
+		storage.writeFsFile(id, filename, handler);
+	}
+
+	@Override
+	public void removeFile(String id, Handler<JsonObject> handler) {
+		invalidate(id);
+		storage.removeFile(id, handler);
+	}
+
+	@Override
+	public void removeFiles(JsonArray ids, Handler<JsonObject> handler) {
+		for (Object id : ids) {
+			if (id instanceof String) {
+				invalidate((String) id);
+			}
+		}
+		storage.removeFiles(ids, handler);
+	}
+
+	@Override
+	public void copyFile(String id, Handler<JsonObject> handler) {
+		storage.copyFile(id, handler);
+	}
+
+	@Override
+	public void writeToFileSystem(String[] ids, String destinationPath, JsonObject alias, Handler<JsonObject> handler) {
+		storage.writeToFileSystem(ids, destinationPath, alias, handler);
+	}
+
+	@Override
+	public String getProtocol() {
+		return storage.getProtocol();
+	}
+
+	@Override
+	public String getBucket() {
+		return storage.getBucket();
+	}
+
+	@Override
+	public void stats(AsyncResultHandler<BucketStats> handler) {
+		storage.stats(handler);
+	}
+
+}
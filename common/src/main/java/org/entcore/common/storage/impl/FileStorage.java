@@ -30,6 +30,7 @@ import org.vertx.java.core.AsyncResultHandler;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.file.FileProps;
 import org.vertx.java.core.file.FileSystem;
 import org.vertx.java.core.http.HttpServerFileUpload;
 import org.vertx.java.core.http.HttpServerRequest;
@@ -242,24 +243,43 @@ public class FileStorage implements Storage {
 	}
 
 	@Override
-	public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline,
-			JsonObject metadata, Handler<AsyncResult<Void>> resultHandler) {
+	public void sendFile(String id, final String downloadName, final HttpServerRequest request, final boolean inline,
+			final JsonObject metadata, final Handler<AsyncResult<Void>> resultHandler) {
 		final HttpServerResponse resp = request.response();
 		try {
 			final String path = getPath(id);
-			if (!inline) {
-				String name = FileUtils.getNameWithExtension(downloadName, metadata);
-				resp.putHeader("Content-Disposition", "attachment; filename=\"" + name + "\"");
-			}
-			ETag.addHeader(resp, id);
-			if (metadata != null && metadata.getString("content-type") != null) {
-				resp.putHeader("Content-Type", metadata.getString("content-type"));
-			}
-			if (resultHandler != null) {
-				resp.sendFile(path, resultHandler);
-			} else {
-				resp.sendFile(path);
-			}
+			fs.props(path, new AsyncResultHandler<FileProps>() {
+				@Override
+				public void handle(AsyncResult<FileProps> event) {
+					if (event.failed()) {
+						resp.setStatusCode(404).setStatusMessage("Not Found").end();
+						if (resultHandler != null) {
+							resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+						}
+						return;
+					}
+					final long size = event.result().size();
+					final String etag = HttpRange.etag(metadata, size, event.result().lastModifiedTime().getTime());
+					if (HttpRange.notModified(request, etag, resultHandler)) {
+						return;
+					}
+					if (!inline) {
+						String name = FileUtils.getNameWithExtension(downloadName, metadata);
+						resp.putHeader("Content-Disposition", "attachment; filename=\"" + name + "\"");
+					}
+					ETag.addHeader(resp, etag);
+					resp.putHeader("Accept-Ranges", "bytes");
+					if (metadata != null && metadata.getString("content-type") != null) {
+						resp.putHeader("Content-Type", metadata.getString("content-type"));
+					}
+					final HttpRange range = HttpRange.hasRange(request) ? HttpRange.parse(request, etag, size) : null;
+					if (range == null) {
+						sendFile(resp, path, resultHandler);
+					} else if (range.prepare(resp, size, resultHandler)) {
+						range.sendFile(fs, path, resp, resultHandler);
+					}
+				}
+			});
 		} catch (FileNotFoundException e) {
 			resp.setStatusCode(404).setStatusMessage("Not Found").end();
 			if (resultHandler != null) {
@@ -269,6 +289,14 @@ public class FileStorage implements Storage {
 		}
 	}
 
+	private void sendFile(HttpServerResponse resp, String path, Handler<AsyncResult<Void>> resultHandler) {
+		if (resultHandler != null) {
+			resp.sendFile(path, resultHandler);
+		} else {
+			resp.sendFile(path);
+		}
+	}
+
 	@Override
 	public void removeFile(String id, final Handler<JsonObject> handler) {
 		final JsonObject res = new JsonObject();
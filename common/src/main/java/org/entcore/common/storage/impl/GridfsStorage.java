@@ -219,13 +219,105 @@ public class GridfsStorage implements Storage {
 
 	@Override
 	public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline, JsonObject metadata) {
-		gridfsSendChunkFile(id, downloadName, eb, gridfsAddress, request.response(), inline, metadata);
+		sendFile(id, downloadName, request, inline, metadata, null);
 	}
 
 	@Override
 	public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline, JsonObject metadata,
 			Handler<AsyncResult<Void>> resultHandler) {
-		gridfsSendChunkFile(id, downloadName, eb, gridfsAddress, request.response(), inline, metadata, resultHandler);
+		final String etag = HttpRange.etag(metadata);
+		if (etag != null && !HttpRange.hasRange(request)) {
+			if (!HttpRange.notModified(request, etag, resultHandler)) {
+				gridfsSendChunkFile(id, downloadName, eb, gridfsAddress, request.response(), inline, metadata, etag,
+						resultHandler);
+			}
+			return;
+		}
+		sendFromFileDocument(id, downloadName, request, inline, metadata, resultHandler);
+	}
+
+	// Reads the gridfs file document to get the size and etag, then sends the requested range or the full file.
+	private void sendFromFileDocument(final String id, final String downloadName, final HttpServerRequest request,
+			final boolean inline, final JsonObject metadata, final Handler<AsyncResult<Void>> resultHandler) {
+		final HttpServerResponse response = request.response();
+		mongoDb.findOne(bucket + ".files", new JsonObject().putString("_id", id), new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> event) {
+				final JsonObject file = event.body().getObject("result");
+				if (!"ok".equals(event.body().getString("status")) || file == null ||
+						file.getLong("length") == null || file.getLong("chunkSize") == null) {
+					response.setStatusCode(404).setStatusMessage("Not Found").end();
+					if (resultHandler != null) {
+						resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+					}
+					return;
+				}
+				final long size = file.getLong("length");
+				final long chunkSize = file.getLong("chunkSize");
+				final String etag = (HttpRange.etag(metadata) == null && file.getString("md5") != null) ?
+						file.getString("md5") : HttpRange.etag(metadata, size, uploadDate(file));
+				if (HttpRange.notModified(request, etag, resultHandler)) {
+					return;
+				}
+				final HttpRange range = HttpRange.hasRange(request) ? HttpRange.parse(request, etag, size) : null;
+				if (range == null) {
+					gridfsSendChunkFile(id, downloadName, eb, gridfsAddress, response, inline, metadata, etag,
+							resultHandler);
+					return;
+				}
+				putHeaders(response, downloadName, inline, metadata, etag);
+				if (range.prepare(response, size, resultHandler)) {
+					sendRangeChunk(id, (int) (range.start() / chunkSize), chunkSize, range, response, resultHandler);
+				}
+			}
+		});
+	}
+
+	private static long uploadDate(JsonObject file) {
+		final Object date = file.getValue("uploadDate");
+		if (date instanceof JsonObject) {
+			return ((JsonObject) date).getLong("$date", 0l);
+		} else if (date instanceof Number) {
+			return ((Number) date).longValue();
+		}
+		return 0l;
+	}
+
+	private void sendRangeChunk(final String id, final int n, final long chunkSize, final HttpRange range,
+			final HttpServerResponse response, final Handler<AsyncResult<Void>> resultHandler) {
+		getChunk(id, n, eb, gridfsAddress, new Handler<Chunk>() {
+			@Override
+			public void handle(Chunk chunk) {
+				if (chunk == null) {
+					response.close();
+					if (resultHandler != null) {
+						resultHandler.handle(new DefaultAsyncResult<Void>(
+								new StorageException("Missing chunk " + n + " of file " + id)));
+					}
+					return;
+				}
+				final long offset = n * chunkSize;
+				final int from = (int) Math.max(0, range.start() - offset);
+				final int to = (int) Math.min(chunk.data.length(), range.end() - offset + 1);
+				response.write(chunk.data.getBuffer(from, to));
+				if (offset + to > range.end()) {
+					response.end();
+					if (resultHandler != null) {
+						resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+					}
+				} else if (response.writeQueueFull()) {
+					response.drainHandler(new Handler<Void>() {
+						@Override
+						public void handle(Void event) {
+							response.drainHandler(null);
+							sendRangeChunk(id, n + 1, chunkSize, range, response, resultHandler);
+						}
+					});
+				} else {
+					sendRangeChunk(id, n + 1, chunkSize, range, response, resultHandler);
+				}
+			}
+		});
 	}
 
 	private static void gridfsReadChunkFile(final String id, final EventBus eb, final String gridfsAddress,
@@ -329,13 +421,8 @@ public class GridfsStorage implements Storage {
 
 	private static void gridfsSendChunkFile(final String id, final String downloadName, final EventBus eb,
 									  final String gridfsAddress, final HttpServerResponse response, final boolean inline,
-									  final JsonObject metadata) {
-		gridfsSendChunkFile(id, downloadName, eb, gridfsAddress, response, inline, metadata, null);
-	}
-
-	private static void gridfsSendChunkFile(final String id, final String downloadName, final EventBus eb,
-									  final String gridfsAddress, final HttpServerResponse response, final boolean inline,
-									  final JsonObject metadata, final Handler<AsyncResult<Void>> resultHandler) {
+									  final JsonObject metadata, final String etag,
+									  final Handler<AsyncResult<Void>> resultHandler) {
 		response.setChunked(true);
 		gridfsReadChunkFile(id, eb, gridfsAddress, response, new Handler<Chunk>() {
 			@Override
@@ -355,32 +442,8 @@ public class GridfsStorage implements Storage {
 					return;
 				}
 				if (chunk.n == 0) {
-					if (!inline) {
-						String name = downloadName;
-						if (metadata != null && metadata.getString("filename") != null) {
-							String filename = metadata.getString("filename");
-							int fIdx = filename.lastIndexOf('.');
-							String fExt = null;
-							if (fIdx >= 0) {
-								fExt = filename.substring(fIdx);
-							}
-							int dIdx = downloadName.lastIndexOf('.');
-							String dExt = null;
-							if (dIdx >= 0) {
-								dExt = downloadName.substring(dIdx);
-							}
-							if (fExt != null && !fExt.equals(dExt)) {
-								name += fExt;
-							}
-						}
-						response.putHeader("Content-Disposition",
-								"attachment; filename=\"" + name + "\"");
-					} else {
-						ETag.addHeader(response, id);
-					}
-					if (metadata != null && metadata.getString("content-type") != null) {
-						response.putHeader("Content-Type", metadata.getString("content-type"));
-					}
+					putHeaders(response, downloadName, inline, metadata, etag);
+					response.putHeader("Accept-Ranges", "bytes");
 				}
 
 				response.write(chunk.data);
@@ -388,6 +451,35 @@ public class GridfsStorage implements Storage {
 		});
 	}
 
+	private static void putHeaders(HttpServerResponse response, String downloadName, boolean inline,
+			JsonObject metadata, String etag) {
+		if (!inline) {
+			String name = downloadName;
+			if (metadata != null && metadata.getString("filename") != null) {
+				String filename = metadata.getString("filename");
+				int fIdx = filename.lastIndexOf('.');
+				String fExt = null;
+				if (fIdx >= 0) {
+					fExt = filename.substring(fIdx);
+				}
+				int dIdx = downloadName.lastIndexOf('.');
+				String dExt = null;
+				if (dIdx >= 0) {
+					dExt = downloadName.substring(dIdx);
+				}
+				if (fExt != null && !fExt.equals(dExt)) {
+					name += fExt;
+				}
+			}
+			response.putHeader("Content-Disposition",
+					"attachment; filename=\"" + name + "\"");
+		}
+		ETag.addHeader(response, etag);
+		if (metadata != null && metadata.getString("content-type") != null) {
+			response.putHeader("Content-Type", metadata.getString("content-type"));
+		}
+	}
+
 	@Override
 	public void removeFile(String id, Handler<JsonObject> handler) {
 		FileUtils.gridfsRemoveFile(id, eb, gridfsAddress, handler);
@@ -0,0 +1,233 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.storage.impl;
+
+import fr.wseduc.webutils.DefaultAsyncResult;
+import fr.wseduc.webutils.http.ETag;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.file.AsyncFile;
+import org.vertx.java.core.file.FileSystem;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Single byte range (RFC 7233) and conditional request helpers shared by the storages.
+ * Multiple ranges aren't supported : such requests are answered with the full file.
+ */
+final class HttpRange {
+
+	private static final int READ_SIZE = 64 * 1024;
+	private final long start;
+	private final long end;
+	private final boolean satisfiable;
+
+	private HttpRange(long start, long end, boolean satisfiable) {
+		this.start = start;
+		this.end = end;
+		this.satisfiable = satisfiable;
+	}
+
+	// the stored md5 when known, null otherwise (the id can't be used : files are overwritten in place)
+	static String etag(JsonObject metadata) {
+		if (metadata != null && metadata.getString("md5") != null) {
+			return metadata.getString("md5");
+		}
+		return null;
+	}
+
+	// the stored md5 when known, derived from the size and modification time of the stored file otherwise
+	static String etag(JsonObject metadata, long size, long modified) {
+		final String md5 = etag(metadata);
+		if (md5 != null) {
+			return md5;
+		}
+		return Long.toHexString(modified) + "-" + Long.toHexString(size);
+	}
+
+	// the stored md5 when known, derived from the id and the size given by the metadata otherwise
+	static String etag(String id, JsonObject metadata) {
+		final String md5 = etag(metadata);
+		if (md5 != null) {
+			return md5;
+		}
+		final Long size = (metadata != null) ? metadata.getLong("size") : null;
+		return (size != null) ? id + "-" + Long.toHexString(size) : id;
+	}
+
+	static boolean hasRange(HttpServerRequest request) {
+		return request.headers().get("Range") != null;
+	}
+
+	/**
+	 * Answers 304 when the request If-None-Match matches the etag.
+	 * @return true if the response was sent.
+	 */
+	static boolean notModified(HttpServerRequest request, String etag, Handler<AsyncResult<Void>> resultHandler) {
+		if (etag == null || !ETag.check(request, etag)) {
+			return false;
+		}
+		final HttpServerResponse response = request.response();
+		ETag.addHeader(response, etag);
+		response.setStatusCode(304).setStatusMessage("Not Modified").end();
+		if (resultHandler != null) {
+			resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+		}
+		return true;
+	}
+
+	/**
+	 * Parses the Range header of the request.
+	 * @return null when the full file must be sent (no range, multiple or invalid ranges, If-Range mismatch
+	 * or no etag to compare it with).
+	 */
+	static HttpRange parse(HttpServerRequest request, String etag, long size) {
+		return parse(request.headers().get("Range"), request.headers().get("If-Range"), etag, size);
+	}
+
+	static HttpRange parse(String header, String ifRange, String etag, long size) {
+		if (header == null || !header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+			return null;
+		}
+		if (ifRange != null && (etag == null || !etag.equals(ifRange.replaceFirst("^W/", "").replace("\"", "").trim()))) {
+			return null;
+		}
+		final String spec = header.substring(6).trim();
+		final int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return null;
+		}
+		try {
+			final String first = spec.substring(0, dash).trim();
+			final String last = spec.substring(dash + 1).trim();
+			if (first.isEmpty()) {
+				final long suffix = Long.parseLong(last);
+				if (suffix <= 0 || size == 0) {
+					return new HttpRange(0, 0, false);
+				}
+				return new HttpRange(Math.max(0, size - suffix), size - 1, true);
+			}
+			final long start = Long.parseLong(first);
+			final long end = last.isEmpty() ? size - 1 : Long.parseLong(last);
+			if (!last.isEmpty() && end < start) {
+				return null;
+			}
+			if (start >= size) {
+				return new HttpRange(0, 0, false);
+			}
+			return new HttpRange(start, Math.min(end, size - 1), true);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	long start() {
+		return start;
+	}
+
+	long end() {
+		return end;
+	}
+
+	boolean isSatisfiable() {
+		return satisfiable;
+	}
+
+	/**
+	 * Sets the 206 status and range headers, or answers 416 when the range isn't satisfiable.
+	 * @return false if the response was already ended.
+	 */
+	boolean prepare(HttpServerResponse response, long size, Handler<AsyncResult<Void>> resultHandler) {
+		response.putHeader("Accept-Ranges", "bytes");
+		if (!satisfiable) {
+			response.putHeader("Content-Range", "bytes */" + size);
+			response.setStatusCode(416).setStatusMessage("Requested Range Not Satisfiable").end();
+			if (resultHandler != null) {
+				resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+			}
+			return false;
+		}
+		response.setStatusCode(206).setStatusMessage("Partial Content");
+		response.putHeader("Content-Range", "bytes " + start + "-" + end + "/" + size);
+		response.putHeader("Content-Length", String.valueOf(end - start + 1));
+		return true;
+	}
+
+	/**
+	 * Streams the range of a local file, with back pressure on the response.
+	 */
+	void sendFile(final FileSystem fs, final String path, final HttpServerResponse response,
+			final Handler<AsyncResult<Void>> resultHandler) {
+		fs.open(path, null, true, false, false, new Handler<AsyncResult<AsyncFile>>() {
+			@Override
+			public void handle(AsyncResult<AsyncFile> ar) {
+				if (ar.failed()) {
+					response.setStatusCode(500).end();
+					if (resultHandler != null) {
+						resultHandler.handle(new DefaultAsyncResult<Void>(ar.cause()));
+					}
+					return;
+				}
+				read(ar.result(), start, response, resultHandler);
+			}
+		});
+	}
+
+	private void read(final AsyncFile file, final long position, final HttpServerResponse response,
+			final Handler<AsyncResult<Void>> resultHandler) {
+		if (position > end) {
+			file.close();
+			response.end();
+			if (resultHandler != null) {
+				resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+			}
+			return;
+		}
+		final int length = (int) Math.min(READ_SIZE, end - position + 1);
+		file.read(new Buffer(length), 0, position, length, new Handler<AsyncResult<Buffer>>() {
+			@Override
+			public void handle(AsyncResult<Buffer> ar) {
+				if (ar.failed()) {
+					file.close();
+					response.close();
+					if (resultHandler != null) {
+						resultHandler.handle(new DefaultAsyncResult<Void>(ar.cause()));
+					}
+					return;
+				}
+				response.write(ar.result());
+				if (response.writeQueueFull()) {
+					response.drainHandler(new Handler<Void>() {
+						@Override
+						public void handle(Void event) {
+							response.drainHandler(null);
+							read(file, position + length, response, resultHandler);
+						}
+					});
+				} else {
+					read(file, position + length, response, resultHandler);
+				}
+			}
+		});
+	}
+
+}
@@ -21,7 +21,9 @@ package org.entcore.common.storage.impl;
 
 import fr.wseduc.swift.SwiftClient;
 import fr.wseduc.swift.storage.StorageObject;
+import fr.wseduc.swift.utils.FileUtils;
 import fr.wseduc.webutils.DefaultAsyncResult;
+import fr.wseduc.webutils.http.ETag;
 import org.entcore.common.storage.BucketStats;
 import org.entcore.common.storage.Storage;
 import org.vertx.java.core.AsyncResult;
@@ -30,6 +32,7 @@ import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
@@ -39,6 +42,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 public class SwiftStorage implements Storage {
 
+	// ranges of larger objects are ignored, the full object is sent
+	private static final long MAX_RANGE_READ_SIZE = 16 * 1024 * 1024l;
 	private final SwiftClient swiftClient;
 	private final String container;
 
@@ -114,13 +119,65 @@ public class SwiftStorage implements Storage {
 
 	@Override
 	public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline, JsonObject metadata) {
-		swiftClient.downloadFile(id, request, inline, downloadName, metadata, id);
+		sendFile(id, downloadName, request, inline, metadata, null);
 	}
 
 	@Override
-	public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline, JsonObject metadata,
-			Handler<AsyncResult<Void>> resultHandler) {
-		swiftClient.downloadFile(id, request, inline, downloadName, metadata, id, resultHandler);
+	public void sendFile(final String id, final String downloadName, final HttpServerRequest request,
+			final boolean inline, final JsonObject metadata, final Handler<AsyncResult<Void>> resultHandler) {
+		// the object md5 when known by the metadata, a stable value derived from the id and size otherwise
+		final String etag = HttpRange.etag(id, metadata);
+		if (HttpRange.notModified(request, etag, resultHandler)) {
+			return;
+		}
+		final long size = (metadata != null) ? metadata.getLong("size", -1l) : -1l;
+		if (HttpRange.hasRange(request) && size >= 0 && size <= MAX_RANGE_READ_SIZE) {
+			sendRange(id, downloadName, request, inline, metadata, etag, resultHandler);
+		} else if (resultHandler != null) {
+			swiftClient.downloadFile(id, request, inline, downloadName, metadata, etag, resultHandler);
+		} else {
+			swiftClient.downloadFile(id, request, inline, downloadName, metadata, etag);
+		}
+	}
+
+	// the swift client doesn't forward ranges : the object is read and the range answered from the buffer
+	private void sendRange(final String id, final String downloadName, final HttpServerRequest request,
+			final boolean inline, final JsonObject metadata, final String etag,
+			final Handler<AsyncResult<Void>> resultHandler) {
+		swiftClient.readFile(id, new AsyncResultHandler<StorageObject>() {
+			@Override
+			public void handle(AsyncResult<StorageObject> event) {
+				final HttpServerResponse resp = request.response();
+				if (event.failed() || event.result().getBuffer() == null) {
+					resp.setStatusCode(404).setStatusMessage("Not Found").end();
+					if (resultHandler != null) {
+						resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+					}
+					return;
+				}
+				final Buffer buffer = event.result().getBuffer();
+				if (!inline) {
+					String name = FileUtils.getNameWithExtension(downloadName, metadata);
+					resp.putHeader("Content-Disposition", "attachment; filename=\"" + name + "\"");
+				}
+				ETag.addHeader(resp, etag);
+				if (metadata != null && metadata.getString("content-type") != null) {
+					resp.putHeader("Content-Type", metadata.getString("content-type"));
+				}
+				// the actual length, the metadata size may be outdated
+				final HttpRange range = HttpRange.parse(request, etag, buffer.length());
+				if (range == null) {
+					resp.end(buffer);
+				} else if (range.prepare(resp, buffer.length(), resultHandler)) {
+					resp.end(buffer.getBuffer((int) range.start(), (int) range.end() + 1));
+				} else {
+					return;
+				}
+				if (resultHandler != null) {
+					resultHandler.handle(new DefaultAsyncResult<>((Void) null));
+				}
+			}
+		});
 	}
 
 	@Override
@@ -0,0 +1,75 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.user;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Session object handed to a request, which carries the values derived from the session
+ * (authorized action names, user infos) so that they are computed once per session
+ * object instead of once per use.
+ */
+class MemoizedSession extends JsonObject {
+
+	private volatile Set<String> authorizedActionNames;
+	private volatile UserInfos userInfos;
+
+	MemoizedSession(JsonObject session) {
+		this(session, null);
+	}
+
+	MemoizedSession(JsonObject session, Set<String> authorizedActionNames) {
+		super();
+		mergeIn(session);
+		this.authorizedActionNames = authorizedActionNames;
+	}
+
+	Set<String> getAuthorizedActionNames() {
+		Set<String> names = authorizedActionNames;
+		if (names == null) {
+			names = authorizedActionNames = authorizedActionNames(this);
+		}
+		return names;
+	}
+
+	UserInfos getUserInfos() {
+		return userInfos;
+	}
+
+	void setUserInfos(UserInfos userInfos) {
+		this.userInfos = userInfos;
+	}
+
+	static Set<String> authorizedActionNames(JsonObject session) {
+		final Set<String> names = new HashSet<>();
+		for (Object o : session.getArray("authorizedActions", new JsonArray())) {
+			if (o instanceof JsonObject) {
+				names.add(((JsonObject) o).getString("name"));
+			}
+		}
+		return Collections.unmodifiableSet(names);
+	}
+
+}
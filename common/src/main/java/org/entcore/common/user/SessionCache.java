@@ -0,0 +1,159 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.user;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class SessionCache {
+
+	public static final String INVALIDATION_ADDRESS = "wse.session.invalidate";
+	private static final long DEFAULT_TTL = 60 * 1000;
+	private static final int DEFAULT_MAX_SIZE = 5000;
+	private static final String SESSION_ADDRESS = "wse.session";
+
+	private boolean enabled = false;
+	private long ttl = DEFAULT_TTL;
+	private long touchInterval = DEFAULT_TTL / 2;
+	private EventBus eb;
+	private Map<String, CachedSession> sessions;
+
+	private static final class CachedSession {
+		private final JsonObject session;
+		private final String userId;
+		private final long expires;
+		private long touched;
+		private volatile Set<String> authorizedActionNames;
+
+		private CachedSession(JsonObject session, long now, long expires) {
+			this.session = session;
+			this.userId = session.getString("userId");
+			this.touched = now;
+			this.expires = expires;
+		}
+
+		private Set<String> getAuthorizedActionNames() {
+			Set<String> names = authorizedActionNames;
+			if (names == null) {
+				names = authorizedActionNames = MemoizedSession.authorizedActionNames(session);
+			}
+			return names;
+		}
+	}
+
+	private SessionCache() {}
+
+	private static class SessionCacheHolder {
+		private static final SessionCache instance = new SessionCache();
+	}
+
+	public static SessionCache getInstance() {
+		return SessionCacheHolder.instance;
+	}
+
+	public synchronized void init(Vertx vertx, JsonObject config) {
+		if (enabled || !config.getBoolean("session-cache", false)) {
+			return;
+		}
+		ttl = config.getLong("session-cache-ttl", DEFAULT_TTL);
+		// hits are reported to the session manager at most once per interval, for its sliding expiration
+		touchInterval = config.getLong("session-cache-touch-interval", ttl / 2);
+		eb = vertx.eventBus();
+		final int maxSize = config.getInteger("session-cache-size", DEFAULT_MAX_SIZE);
+		sessions = new LinkedHashMap<String, CachedSession>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedSession> eldest) {
+				return size() > maxSize;
+			}
+		};
+		vertx.eventBus().registerHandler(INVALIDATION_ADDRESS, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				invalidate(message.body().getString("sessionId"), message.body().getString("userId"));
+			}
+		});
+		enabled = true;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public JsonObject get(String sessionId) {
+		if (!enabled || sessionId == null) {
+			return null;
+		}
+		final CachedSession cs;
+		boolean touch = false;
+		synchronized (this) {
+			cs = sessions.get(sessionId);
+			final long now = System.currentTimeMillis();
+			if (cs != null && cs.expires < now) {
+				sessions.remove(sessionId);
+				return null;
+			}
+			if (cs != null && touchInterval > 0 && now - cs.touched >= touchInterval) {
+				cs.touched = now;
+				touch = true;
+			}
+		}
+		if (touch) {
+			eb.send(SESSION_ADDRESS, new JsonObject().putString("action", "touch").putString("sessionId", sessionId));
+		}
+		return (cs != null) ? new MemoizedSession(cs.session.copy(), cs.getAuthorizedActionNames()) : null;
+	}
+
+	public void put(String sessionId, JsonObject session) {
+		if (!enabled || sessionId == null || session == null) {
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		final CachedSession cs = new CachedSession(session.copy(), now, now + ttl);
+		synchronized (this) {
+			sessions.put(sessionId, cs);
+		}
+	}
+
+	public synchronized void invalidate(String sessionId, String userId) {
+		if (!enabled) {
+			return;
+		}
+		if (sessionId != null) {
+			sessions.remove(sessionId);
+		}
+		if (userId != null) {
+			Iterator<CachedSession> it = sessions.values().iterator();
+			while (it.hasNext()) {
+				if (userId.equals(it.next().userId)) {
+					it.remove();
+				}
+			}
+		}
+	}
+
+}
@@ -30,7 +30,7 @@ import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
-import java.io.IOException;
+import java.util.Set;
 
 public class UserUtils {
 
@@ -43,6 +43,8 @@ public class UserUtils {
 	private static final JsonObject QUERY_VISIBLE_MANUAL_GROUPS = new JsonObject()
 	.putString("action", "visibleManualGroups");
 	private static final I18n i18n = I18n.getInstance();
+	private static final SessionCache sessionCache = SessionCache.getInstance();
+	private static final ObjectMapper mapper = new ObjectMapper();
 
 	private static void findUsers(final EventBus eb, HttpServerRequest request,
 								  final JsonObject query, final Handler<JsonArray> handler) {
@@ -277,6 +279,14 @@ public class UserUtils {
 				handler.handle(null);
 				return;
 			} else {
+				final JsonObject cached = sessionCache.get(oneSessionId);
+				if (cached != null) {
+					if (request instanceof SecureHttpServerRequest) {
+						((SecureHttpServerRequest) request).setSession(cached);
+					}
+					handler.handle(cached);
+					return;
+				}
 				request.pause();
 				JsonObject findSession = new JsonObject();
 				if (oneSessionId != null && !oneSessionId.trim().isEmpty()) {
@@ -292,17 +302,21 @@ public class UserUtils {
 		}
 	}
 
-	private static void findSession(EventBus eb, final HttpServerRequest request, JsonObject findSession,
+	private static void findSession(EventBus eb, final HttpServerRequest request, final JsonObject findSession,
 			final Handler<JsonObject> handler) {
 		eb.send(SESSION_ADDRESS, findSession, new Handler<Message<JsonObject>>() {
 
 			@Override
 			public void handle(Message<JsonObject> message) {
-				JsonObject session = message.body().getObject("session");
+				final JsonObject s = message.body().getObject("session");
 				if (request != null) {
 					request.resume();
 				}
-				if ("ok".equals(message.body().getString("status")) && session != null) {
+				if ("ok".equals(message.body().getString("status")) && s != null) {
+					final JsonObject session = new MemoizedSession(s);
+					if ("find".equals(findSession.getString("action"))) {
+						sessionCache.put(findSession.getString("sessionId"), session);
+					}
 					if (request instanceof SecureHttpServerRequest) {
 						((SecureHttpServerRequest) request).setSession(session);
 					}
@@ -315,31 +329,63 @@ public class UserUtils {
 	}
 
 	public static void getSession(EventBus eb, final String sessionId,  final Handler<JsonObject> handler) {
+		final JsonObject cached = sessionCache.get(sessionId);
+		if (cached != null) {
+			handler.handle(cached);
+			return;
+		}
 		JsonObject findSession = new JsonObject()
 				.putString("action", "find")
 				.putString("sessionId", sessionId);
 		findSession(eb, null, findSession, handler);
 	}
 
+	/**
+	 * Names of the actions authorized by the session, computed once per session object
+	 * when it was obtained with getSession.
+	 */
+	public static Set<String> authorizedActionNames(JsonObject session) {
+		if (session instanceof MemoizedSession) {
+			return ((MemoizedSession) session).getAuthorizedActionNames();
+		}
+		return MemoizedSession.authorizedActionNames(session);
+	}
+
 	public static UserInfos sessionToUserInfos(JsonObject session) {
 		if (session == null) {
 			return null;
 		}
-		ObjectMapper mapper = new ObjectMapper();
 		try {
-			return mapper.readValue(session.encode(), UserInfos.class);
-		} catch (IOException e) {
+			return mapper.convertValue(session.toMap(), UserInfos.class);
+		} catch (IllegalArgumentException e) {
 			e.printStackTrace();
 			return null;
 		}
 	}
 
-	public static void getUserInfos(EventBus eb, HttpServerRequest request,
+	/**
+	 * Same as sessionToUserInfos(session) but the result is memoized on the session
+	 * object attached to the request by getSession.
+	 */
+	public static UserInfos sessionToUserInfos(HttpServerRequest request, JsonObject session) {
+		if (!(session instanceof MemoizedSession)) {
+			return sessionToUserInfos(session);
+		}
+		final MemoizedSession s = (MemoizedSession) session;
+		UserInfos user = s.getUserInfos();
+		if (user == null) {
+			user = sessionToUserInfos(session);
+			s.setUserInfos(user);
+		}
+		return user;
+	}
+
+	public static void getUserInfos(EventBus eb, final HttpServerRequest request,
 									final Handler<UserInfos> handler) {
 		getSession(eb, request, new Handler<JsonObject>() {
 			@Override
 			public void handle(JsonObject session) {
-				handler.handle(sessionToUserInfos(session));
+				handler.handle(sessionToUserInfos(request, session));
 			}
 		});
 	}
@@ -373,6 +419,7 @@ public class UserUtils {
 
 	public static void deleteSession(EventBus eb, String sessionId,
 									 final Handler<Boolean> handler) {
+		sessionCache.invalidate(sessionId, null);
 		JsonObject json = new JsonObject()
 				.putString("action", "drop")
 				.putString("sessionId", sessionId);
@@ -389,6 +436,7 @@ public class UserUtils {
 
 	public static void deleteSessionWithMetadata(EventBus eb, String sessionId,
 			final Handler<JsonObject> handler) {
+		sessionCache.invalidate(sessionId, null);
 		JsonObject json = new JsonObject()
 				.putString("action", "drop")
 				.putBoolean("sessionMetadata", true)
@@ -427,6 +475,7 @@ public class UserUtils {
 
 	public static void addSessionAttribute(EventBus eb, String userId,
 			String key, Object value, final Handler<Boolean> handler) {
+		sessionCache.invalidate(null, userId);
 		JsonObject json = new JsonObject()
 				.putString("action", "addAttribute")
 				.putString("userId", userId)
@@ -445,6 +494,7 @@ public class UserUtils {
 
 	public static void removeSessionAttribute(EventBus eb, String userId,
 			String key, final Handler<Boolean> handler) {
+		sessionCache.invalidate(null, userId);
 		JsonObject json = new JsonObject()
 				.putString("action", "removeAttribute")
 				.putString("userId", userId)
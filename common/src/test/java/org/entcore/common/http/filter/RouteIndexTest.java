@@ -0,0 +1,104 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.http.filter;
+
+import fr.wseduc.webutils.http.Binding;
+import fr.wseduc.webutils.http.HttpMethod;
+import fr.wseduc.webutils.security.ActionType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class RouteIndexTest {
+
+	private RouteIndex routes;
+
+	private static Binding binding(HttpMethod method, String pattern, String serviceMethod) {
+		return new Binding(method, Pattern.compile(pattern), serviceMethod, ActionType.WORKFLOW);
+	}
+
+	private String find(String method, String path) {
+		final Binding b = routes.find(method, path);
+		return b != null ? b.getServiceMethod() : null;
+	}
+
+	@Before
+	public void setUp() {
+		routes = new RouteIndex(Arrays.asList(
+				binding(HttpMethod.GET, "/blog/list/all", "listAll"),
+				binding(HttpMethod.GET, "/blog/(?<blogId>[^\\/]+)", "get"),
+				binding(HttpMethod.GET, "/blog/(?<blogId>[^\\/]+)/post/(?<postId>[^\\/]+)", "getPost"),
+				binding(HttpMethod.GET, "/blog/new", "create"),
+				binding(HttpMethod.PUT, "/blog/(?<blogId>[^\\/]+)", "update"),
+				binding(HttpMethod.GET, "/blog/public/.*", "publicResource")
+		));
+	}
+
+	@Test
+	public void literalPath() {
+		assertEquals("listAll", find("GET", "/blog/list/all"));
+	}
+
+	@Test
+	public void parameters() {
+		assertEquals("get", find("GET", "/blog/b1"));
+		assertEquals("getPost", find("GET", "/blog/b1/post/p1"));
+	}
+
+	@Test
+	public void literalWinsOverParameter() {
+		assertEquals("create", find("GET", "/blog/new"));
+	}
+
+	@Test
+	public void methodsAreSeparated() {
+		assertEquals("update", find("PUT", "/blog/b1"));
+		assertNull(find("PUT", "/blog/list/all"));
+		assertNull(find("DELETE", "/blog/b1"));
+	}
+
+	@Test
+	public void regexFallback() {
+		assertEquals("publicResource", find("GET", "/blog/public/js/app.js"));
+	}
+
+	@Test
+	public void parameterDoesNotMatchEmptySegment() {
+		assertNull(find("GET", "/blog/"));
+		assertNull(find("GET", "/blog//post/p1"));
+	}
+
+	@Test
+	public void noMatch() {
+		assertNull(find("GET", "/blog/b1/comments"));
+		assertNull(find("GET", "/other"));
+	}
+
+	@Test
+	public void emptyIndex() {
+		routes = new RouteIndex(null);
+		assertNull(find("GET", "/blog/b1"));
+	}
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.storage.impl;
+
+import org.entcore.common.storage.BucketStats;
+import org.entcore.common.storage.Storage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.VertxFactory;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class CachedStorageTest {
+
+	private Vertx vertx;
+	private File cacheDir;
+	private MemoryStorage backend;
+
+	@Before
+	public void setUp() throws Exception {
+		vertx = VertxFactory.newVertx();
+		cacheDir = Files.createTempDirectory("storage-cache-test").toFile();
+		backend = new MemoryStorage();
+		backend.put("a", "aaaaaaaaaa");
+		backend.put("b", "bbbbbbbbbb");
+		backend.put("c", "cccccccccc");
+	}
+
+	@After
+	public void tearDown() {
+		vertx.stop();
+		delete(cacheDir);
+	}
+
+	private CachedStorage cachedStorage(JsonObject config) {
+		return new CachedStorage(vertx, backend, config.putString("path", cacheDir.getAbsolutePath()));
+	}
+
+	@Test
+	public void testMissThenHotHit() throws Exception {
+		final CachedStorage storage = cachedStorage(new JsonObject());
+		assertEquals("aaaaaaaaaa", read(storage, "a"));
+		assertEquals(1, backend.reads.get());
+		assertEquals(1l, storage.getMetrics().getLong("misses").longValue());
+		awaitMetric(storage, "hotEntries", 1);
+		assertEquals("aaaaaaaaaa", read(storage, "a"));
+		assertEquals(1, backend.reads.get());
+		assertEquals(1l, storage.getMetrics().getLong("hotHits").longValue());
+	}
+
+	@Test
+	public void testDiskHit() throws Exception {
+		final CachedStorage storage = cachedStorage(new JsonObject().putNumber("max-hot-size", 0));
+		assertEquals("aaaaaaaaaa", read(storage, "a"));
+		awaitMetric(storage, "diskEntries", 1);
+		assertEquals("aaaaaaaaaa", read(storage, "a"));
+		assertEquals(1, backend.reads.get());
+		assertEquals(1l, storage.getMetrics().getLong("hits").longValue());
+		assertEquals(0l, storage.getMetrics().getLong("hotEntries").longValue());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		final CachedStorage storage = cachedStorage(new JsonObject()
+				.putNumber("max-disk-size", 25).putNumber("max-hot-size", 0));
+		read(storage, "a");
+		awaitMetric(storage, "diskEntries", 1);
+		read(storage, "b");
+		awaitMetric(storage, "diskEntries", 2);
+		read(storage, "c");
+		awaitMetric(storage, "evictions", 1);
+		assertEquals(2l, storage.getMetrics().getLong("diskEntries").longValue());
+		assertEquals(20l, storage.getMetrics().getLong("diskSize").longValue());
+		// the least recently used file has been evicted
+		assertEquals("aaaaaaaaaa", read(storage, "a"));
+		assertEquals(4, backend.reads.get());
+	}
+
+	@Test
+	public void testFileLargerThanLimitNotCached() throws Exception {
+		final CachedStorage storage = cachedStorage(new JsonObject().putNumber("max-file-size", 5));
+		read(storage, "a");
+		read(storage, "a");
+		assertEquals(2, backend.reads.get());
+		assertEquals(0l, storage.getMetrics().getLong("diskEntries").longValue());
+	}
+
+	@Test
+	public void testInvalidationOnWrite() throws Exception {
+		final CachedStorage storage = cachedStorage(new JsonObject());
+		read(storage, "a");
+		awaitMetric(storage, "diskEntries", 1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		storage.writeBuffer("a", new Buffer("AAAAAAAAAA"), "text/plain", "a.txt", new Handler<JsonObject>() {
+			@Override
+			public void handle(JsonObject event) {
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(0l, storage.getMetrics().getLong("diskEntries").longValue());
+		assertEquals(0l, storage.getMetrics().getLong("hotEntries").longValue());
+		assertEquals("AAAAAAAAAA", read(storage, "a"));
+		assertEquals(2, backend.reads.get());
+	}
+
+	@Test
+	public void testInvalidationOnRemove() throws Exception {
+		final CachedStorage storage = cachedStorage(new JsonObject());
+		read(storage, "a");
+		read(storage, "b");
+		awaitMetric(storage, "diskEntries", 2);
+		final CountDownLatch latch = new CountDownLatch(1);
+		storage.removeFiles(new JsonArray().add("a").add("b"), new Handler<JsonObject>() {
+			@Override
+			public void handle(JsonObject event) {
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(0l, storage.getMetrics().getLong("diskEntries").longValue());
+		assertEquals(0l, storage.getMetrics().getLong("diskSize").longValue());
+		assertNull(read(storage, "a"));
+	}
+
+	private static String read(Storage storage, String id) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<Buffer> result = new AtomicReference<>();
+		storage.readFile(id, new Handler<Buffer>() {
+			@Override
+			public void handle(Buffer event) {
+				result.set(event);
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		return (result.get() != null) ? result.get().toString() : null;
+	}
+
+	// files are cached asynchronously
+	private static void awaitMetric(CachedStorage storage, String metric, long expected) throws InterruptedException {
+		final long timeout = System.currentTimeMillis() + 5000;
+		while (storage.getMetrics().getLong(metric) != expected && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals(expected, storage.getMetrics().getLong(metric).longValue());
+	}
+
+	private static void delete(File f) {
+		final File[] files = f.listFiles();
+		if (files != null) {
+			for (File child : files) {
+				delete(child);
+			}
+		}
+		f.delete();
+	}
+
+	private static final class MemoryStorage implements Storage {
+
+		private final Map<String, Buffer> files = new ConcurrentHashMap<>();
+		private final AtomicInteger reads = new AtomicInteger();
+
+		private void put(String id, String content) {
+			files.put(id, new Buffer(content));
+		}
+
+		@Override
+		public void readFile(String id, Handler<Buffer> handler) {
+			reads.incrementAndGet();
+			final Buffer b = files.get(id);
+			handler.handle((b != null) ? b.copy() : null);
+		}
+
+		@Override
+		public void writeBuffer(String id, Buffer buff, String contentType, String filename, Handler<JsonObject> handler) {
+			files.put(id, buff);
+			handler.handle(new JsonObject().putString("status", "ok").putString("_id", id));
+		}
+
+		@Override
+		public void removeFile(String id, Handler<JsonObject> handler) {
+			files.remove(id);
+			handler.handle(new JsonObject().putString("status", "ok"));
+		}
+
+		@Override
+		public void removeFiles(JsonArray ids, Handler<JsonObject> handler) {
+			for (Object id : ids) {
+				files.remove(id);
+			}
+			handler.handle(new JsonObject().putString("status", "ok"));
+		}
+
+		@Override
+		public void writeUploadFile(HttpServerRequest request, Handler<JsonObject> handler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void writeUploadFile(HttpServerRequest request, Long maxSize, Handler<JsonObject> handler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void writeBuffer(Buffer buff, String contentType, String filename, Handler<JsonObject> handler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void writeFsFile(String id, String filename, Handler<JsonObject> handler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline,
+				JsonObject metadata) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void sendFile(String id, String downloadName, HttpServerRequest request, boolean inline,
+				JsonObject metadata, Handler<AsyncResult<Void>> resultHandler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void copyFile(String id, Handler<JsonObject> handler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void writeToFileSystem(String[] ids, String destinationPath, JsonObject alias,
+				Handler<JsonObject> handler) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getProtocol() {
+			return "memory";
+		}
+
+		@Override
+		public String getBucket() {
+			return "test";
+		}
+
+		@Override
+		public void stats(AsyncResultHandler<BucketStats> handler) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
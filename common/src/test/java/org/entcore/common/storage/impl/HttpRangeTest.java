@@ -0,0 +1,135 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.storage.impl;
+
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+
+import static org.junit.Assert.*;
+
+public class HttpRangeTest {
+
+	private static final String ETAG = "d41d8cd98f00b204e9800998ecf8427e";
+
+	@Test
+	public void testNoRange() {
+		assertNull(HttpRange.parse(null, null, ETAG, 100));
+	}
+
+	@Test
+	public void testOtherUnit() {
+		assertNull(HttpRange.parse("items=0-10", null, ETAG, 100));
+	}
+
+	@Test
+	public void testMultipleRanges() {
+		assertNull(HttpRange.parse("bytes=0-10,20-30", null, ETAG, 100));
+	}
+
+	@Test
+	public void testClosedRange() {
+		final HttpRange range = HttpRange.parse("bytes=10-19", null, ETAG, 100);
+		assertTrue(range.isSatisfiable());
+		assertEquals(10, range.start());
+		assertEquals(19, range.end());
+	}
+
+	@Test
+	public void testOpenRange() {
+		final HttpRange range = HttpRange.parse("bytes=90-", null, ETAG, 100);
+		assertTrue(range.isSatisfiable());
+		assertEquals(90, range.start());
+		assertEquals(99, range.end());
+	}
+
+	@Test
+	public void testEndBeyondSize() {
+		final HttpRange range = HttpRange.parse("bytes=50-1000", null, ETAG, 100);
+		assertTrue(range.isSatisfiable());
+		assertEquals(50, range.start());
+		assertEquals(99, range.end());
+	}
+
+	@Test
+	public void testSuffixRange() {
+		final HttpRange range = HttpRange.parse("bytes=-10", null, ETAG, 100);
+		assertTrue(range.isSatisfiable());
+		assertEquals(90, range.start());
+		assertEquals(99, range.end());
+	}
+
+	@Test
+	public void testSuffixLongerThanFile() {
+		final HttpRange range = HttpRange.parse("bytes=-500", null, ETAG, 100);
+		assertTrue(range.isSatisfiable());
+		assertEquals(0, range.start());
+		assertEquals(99, range.end());
+	}
+
+	@Test
+	public void testUnsatisfiableRanges() {
+		assertFalse(HttpRange.parse("bytes=100-", null, ETAG, 100).isSatisfiable());
+		assertFalse(HttpRange.parse("bytes=-0", null, ETAG, 100).isSatisfiable());
+		assertFalse(HttpRange.parse("bytes=-10", null, ETAG, 0).isSatisfiable());
+	}
+
+	@Test
+	public void testInvalidRanges() {
+		assertNull(HttpRange.parse("bytes=20-10", null, ETAG, 100));
+		assertNull(HttpRange.parse("bytes=200-100", null, ETAG, 100));
+		assertNull(HttpRange.parse("bytes=abc-10", null, ETAG, 100));
+		assertNull(HttpRange.parse("bytes=10", null, ETAG, 100));
+	}
+
+	@Test
+	public void testIfRange() {
+		assertNotNull(HttpRange.parse("bytes=0-9", "\"" + ETAG + "\"", ETAG, 100));
+		assertNotNull(HttpRange.parse("bytes=0-9", "W/\"" + ETAG + "\"", ETAG, 100));
+		assertNull(HttpRange.parse("bytes=0-9", "\"other\"", ETAG, 100));
+		assertNull(HttpRange.parse("bytes=0-9", "\"" + ETAG + "\"", null, 100));
+	}
+
+	@Test
+	public void testEtag() {
+		assertNull(HttpRange.etag(null));
+		assertNull(HttpRange.etag(new JsonObject().putNumber("size", 100)));
+		assertEquals(ETAG, HttpRange.etag(new JsonObject().putString("md5", ETAG)));
+		assertEquals(ETAG, HttpRange.etag(new JsonObject().putString("md5", ETAG), 100, 1000));
+	}
+
+	@Test
+	public void testEtagFromSizeAndModification() {
+		final String etag = HttpRange.etag(null, 100, 1000);
+		assertEquals(etag, HttpRange.etag(new JsonObject(), 100, 1000));
+		assertFalse(etag.equals(HttpRange.etag(null, 101, 1000)));
+		assertFalse(etag.equals(HttpRange.etag(null, 100, 1001)));
+	}
+
+	@Test
+	public void testIdEtag() {
+		assertEquals(ETAG, HttpRange.etag("id", new JsonObject().putString("md5", ETAG)));
+		assertEquals("id", HttpRange.etag("id", null));
+		final String etag = HttpRange.etag("id", new JsonObject().putNumber("size", 100));
+		assertEquals(etag, HttpRange.etag("id", new JsonObject().putNumber("size", 100)));
+		assertFalse(etag.equals(HttpRange.etag("id", new JsonObject().putNumber("size", 101))));
+		assertFalse(etag.equals(HttpRange.etag("other", new JsonObject().putNumber("size", 100))));
+	}
+
+}
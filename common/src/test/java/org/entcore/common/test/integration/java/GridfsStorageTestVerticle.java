@@ -70,4 +70,19 @@ public class GridfsStorageTestVerticle extends TestVerticle {
 		storageTests.statsTest();
 	}
 
+	@Test
+	public void rangeTest() {
+		storageTests.rangeTest(vertx);
+	}
+
+	@Test
+	public void suffixRangeTest() {
+		storageTests.suffixRangeTest(vertx);
+	}
+
+	@Test
+	public void notModifiedTest() {
+		storageTests.notModifiedTest(vertx);
+	}
+
 }
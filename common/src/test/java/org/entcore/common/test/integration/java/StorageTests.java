@@ -23,7 +23,20 @@ import org.entcore.common.storage.BucketStats;
 import org.entcore.common.storage.Storage;
 import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.AsyncResultHandler;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonObject;
 
+import java.io.File;
+import java.util.UUID;
+
+import static org.vertx.testtools.VertxAssert.assertEquals;
+import static org.vertx.testtools.VertxAssert.assertNotNull;
 import static org.vertx.testtools.VertxAssert.assertTrue;
 import static org.vertx.testtools.VertxAssert.testComplete;
 
@@ -49,4 +62,139 @@ public class StorageTests {
 		});
 	}
 
+	// 2.5 MB file : three chunks of a GridfsStorage
+	private static final int FILE_SIZE = 2621440;
+
+	private void writeTestFile(final Vertx vertx, final Handler<String> handler) {
+		final Buffer content = new Buffer(FILE_SIZE);
+		for (int i = 0; i < FILE_SIZE; i++) {
+			content.appendByte((byte) (i % 251));
+		}
+		final String path = System.getProperty("java.io.tmpdir") + File.separator + "storage-range-test.bin";
+		vertx.fileSystem().writeFileSync(path, content);
+		final String id = UUID.randomUUID().toString();
+		storage.writeFsFile(id, path, new Handler<JsonObject>() {
+			@Override
+			public void handle(JsonObject event) {
+				assertEquals("ok", event.getString("status"));
+				handler.handle(id);
+			}
+		});
+	}
+
+	private void serve(final Vertx vertx, final String id, final Handler<HttpClient> handler) {
+		vertx.createHttpServer().requestHandler(new Handler<HttpServerRequest>() {
+			@Override
+			public void handle(HttpServerRequest request) {
+				storage.sendFile(id, "range.bin", request, true, null);
+			}
+		}).listen(8091, "localhost", new AsyncResultHandler<org.vertx.java.core.http.HttpServer>() {
+			@Override
+			public void handle(AsyncResult<org.vertx.java.core.http.HttpServer> event) {
+				assertTrue(event.succeeded());
+				handler.handle(vertx.createHttpClient().setHost("localhost").setPort(8091));
+			}
+		});
+	}
+
+	public void rangeTest(final Vertx vertx) {
+		final int start = 1048000;
+		final int end = 2097500;
+		writeTestFile(vertx, new Handler<String>() {
+			@Override
+			public void handle(final String id) {
+				serve(vertx, id, new Handler<HttpClient>() {
+					@Override
+					public void handle(HttpClient client) {
+						HttpClientRequest req = client.get("/", new Handler<HttpClientResponse>() {
+							@Override
+							public void handle(final HttpClientResponse response) {
+								assertEquals(206, response.statusCode());
+								assertEquals("bytes " + start + "-" + end + "/" + FILE_SIZE,
+										response.headers().get("Content-Range"));
+								response.bodyHandler(new Handler<Buffer>() {
+									@Override
+									public void handle(Buffer body) {
+										assertEquals(end - start + 1, body.length());
+										for (int i = 0; i < body.length(); i++) {
+											assertEquals((byte) ((start + i) % 251), body.getByte(i));
+										}
+										testComplete();
+									}
+								});
+							}
+						});
+						req.putHeader("Range", "bytes=" + start + "-" + end);
+						req.end();
+					}
+				});
+			}
+		});
+	}
+
+	public void suffixRangeTest(final Vertx vertx) {
+		writeTestFile(vertx, new Handler<String>() {
+			@Override
+			public void handle(final String id) {
+				serve(vertx, id, new Handler<HttpClient>() {
+					@Override
+					public void handle(HttpClient client) {
+						HttpClientRequest req = client.get("/", new Handler<HttpClientResponse>() {
+							@Override
+							public void handle(final HttpClientResponse response) {
+								assertEquals(206, response.statusCode());
+								response.bodyHandler(new Handler<Buffer>() {
+									@Override
+									public void handle(Buffer body) {
+										assertEquals(1500, body.length());
+										assertEquals((byte) ((FILE_SIZE - 1) % 251), body.getByte(body.length() - 1));
+										testComplete();
+									}
+								});
+							}
+						});
+						req.putHeader("Range", "bytes=-1500");
+						req.end();
+					}
+				});
+			}
+		});
+	}
+
+	public void notModifiedTest(final Vertx vertx) {
+		writeTestFile(vertx, new Handler<String>() {
+			@Override
+			public void handle(final String id) {
+				serve(vertx, id, new Handler<HttpClient>() {
+					@Override
+					public void handle(final HttpClient client) {
+						client.getNow("/", new Handler<HttpClientResponse>() {
+							@Override
+							public void handle(final HttpClientResponse response) {
+								assertEquals(200, response.statusCode());
+								final String etag = response.headers().get("ETag");
+								assertNotNull(etag);
+								response.bodyHandler(new Handler<Buffer>() {
+									@Override
+									public void handle(Buffer body) {
+										assertEquals(FILE_SIZE, body.length());
+										HttpClientRequest req = client.get("/", new Handler<HttpClientResponse>() {
+											@Override
+											public void handle(HttpClientResponse response) {
+												assertEquals(304, response.statusCode());
+												testComplete();
+											}
+										});
+										req.putHeader("If-None-Match", etag);
+										req.end();
+									}
+								});
+							}
+						});
+					}
+				});
+			}
+		});
+	}
+
 }
@@ -35,13 +35,18 @@ import org.entcore.common.http.filter.AdminFilter;
 import org.entcore.common.http.filter.ResourceFilter;
 import org.entcore.communication.services.CommunicationService;
 import org.entcore.communication.services.impl.DefaultCommunicationService;
+import org.entcore.communication.services.impl.VisibilityIndex;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.RouteMatcher;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.platform.Container;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.entcore.common.http.response.DefaultResponseHandler.arrayResponseHandler;
 import static org.entcore.common.http.response.DefaultResponseHandler.defaultResponseHandler;
@@ -49,7 +54,18 @@ import static org.entcore.common.http.response.DefaultResponseHandler.notEmptyRe
 
 public class CommunicationController extends BaseController {
 
-	private final CommunicationService communicationService = new DefaultCommunicationService();
+	private CommunicationService communicationService;
+
+	@Override
+	public void init(Vertx vertx, Container container, RouteMatcher rm,
+			Map<String, fr.wseduc.webutils.security.SecuredAction> securedActions) {
+		super.init(vertx, container, rm, securedActions);
+		if (container.config().getBoolean("visibility-index", false)) {
+			communicationService = new DefaultCommunicationService(new VisibilityIndex(vertx, container.config()));
+		} else {
+			communicationService = new DefaultCommunicationService();
+		}
+	}
 
 	@Get("/admin-console")
 	@SecuredAction(value = "", type = ActionType.RESOURCE)
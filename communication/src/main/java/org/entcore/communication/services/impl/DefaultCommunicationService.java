@@ -40,6 +40,15 @@ public class DefaultCommunicationService implements CommunicationService {
 
 	private final Neo4j neo4j = Neo4j.getInstance();
 	private static final Logger log = LoggerFactory.getLogger(DefaultCommunicationService.class);
+	private final VisibilityIndex visibilityIndex;
+
+	public DefaultCommunicationService() {
+		this(null);
+	}
+
+	public DefaultCommunicationService(VisibilityIndex visibilityIndex) {
+		this.visibilityIndex = visibilityIndex;
+	}
 
 	@Override
 	public void addLink(String startGroupId, String endGroupId, Handler<Either<String, JsonObject>> handler) {
@@ -51,7 +60,7 @@ public class DefaultCommunicationService implements CommunicationService {
 		JsonObject params = new JsonObject()
 				.putString("startGroupId", startGroupId)
 				.putString("endGroupId", endGroupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(invalidateVisibles(handler)));
 	}
 
 	@Override
@@ -64,7 +73,7 @@ public class DefaultCommunicationService implements CommunicationService {
 		JsonObject params = new JsonObject()
 				.putString("startGroupId", startGroupId)
 				.putString("endGroupId", endGroupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(invalidateVisibles(handler)));
 	}
 
 	@Override
@@ -88,7 +97,7 @@ public class DefaultCommunicationService implements CommunicationService {
 				"CREATE UNIQUE " + createRelationship +
 				"RETURN COUNT(*) as number ";
 		JsonObject params = new JsonObject().putString("groupId", groupId).putString("direction", direction.name());
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(invalidateVisibles(handler)));
 	}
 
 	@Override
@@ -116,7 +125,7 @@ public class DefaultCommunicationService implements CommunicationService {
 				"DELETE r " +
 				"RETURN COUNT(*) as number ";
 		JsonObject params = new JsonObject().putString("groupId", groupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(invalidateVisibles(handler)));
 	}
 
 	@Override
@@ -163,7 +172,7 @@ public class DefaultCommunicationService implements CommunicationService {
 				"CREATE UNIQUE " + createRelationship +
 				"RETURN COUNT(*) as number ";
 		JsonObject params = new JsonObject().putString("groupId", groupId).putString("direction", direction.name());
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(invalidateVisibles(handler)));
 	}
 
 	@Override
@@ -195,7 +204,7 @@ public class DefaultCommunicationService implements CommunicationService {
 				"DELETE r " +
 				"RETURN COUNT(*) as number ";
 		JsonObject params = new JsonObject().putString("groupId", groupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(invalidateVisibles(handler)));
 	}
 
 	@Override
@@ -234,7 +243,8 @@ public class DefaultCommunicationService implements CommunicationService {
 									@Override
 									public void handle(Message<JsonObject> message) {
 										if ("ok".equals(message.body().getString("status"))) {
-											handler.handle(new Either.Right<String, JsonObject>(new JsonObject()));
+											invalidateVisibles(handler).handle(
+													new Either.Right<String, JsonObject>(new JsonObject()));
 											log.info("Default communication rules initialized.");
 										} else {
 											handler.handle(new Either.Left<String, JsonObject>(
@@ -391,7 +401,7 @@ public class DefaultCommunicationService implements CommunicationService {
 				"WITH DISTINCT v " +
 				"SET v:Visible ";
 		s.add(setVisible, params);
-		neo4j.executeTransaction(s.build(), null, true, validEmptyHandler(handler));
+		neo4j.executeTransaction(s.build(), null, true, validEmptyHandler(invalidateVisibles(handler)));
 	}
 
 	@Override
@@ -435,7 +445,7 @@ public class DefaultCommunicationService implements CommunicationService {
 				"WITH DISTINCT v " +
 				"SET v:Visible ";
 		s.add(setVisible, params);
-		neo4j.executeTransaction(s.build(), null, true, validEmptyHandler(handler));
+		neo4j.executeTransaction(s.build(), null, true, validEmptyHandler(invalidateVisibles(handler)));
 	}
 
 	@Override
@@ -454,13 +464,60 @@ public class DefaultCommunicationService implements CommunicationService {
 					"OPTIONAL MATCH ()-[r1:COMMUNIQUE_DIRECT]->() " +
 					"DELETE r, r1 ";
 		}
-		neo4j.execute(query, params, validEmptyHandler(handler));
+		neo4j.execute(query, params, validEmptyHandler(invalidateVisibles(handler)));
+	}
+
+	private Handler<Either<String, JsonObject>> invalidateVisibles(final Handler<Either<String, JsonObject>> handler) {
+		if (visibilityIndex == null) {
+			return handler;
+		}
+		return new Handler<Either<String, JsonObject>>() {
+			@Override
+			public void handle(Either<String, JsonObject> event) {
+				if (event.isRight()) {
+					visibilityIndex.publishInvalidation();
+				}
+				handler.handle(event);
+			}
+		};
 	}
 
 	@Override
-	public void visibleUsers(String userId, String structureId, JsonArray expectedTypes, boolean itSelf,
-			boolean myGroup, boolean profile, String preFilter, String customReturn, JsonObject additionnalParams,
+	public void visibleUsers(final String userId, String structureId, final JsonArray expectedTypes,
+			final boolean itSelf, final boolean myGroup, final boolean profile, final String preFilter,
+			final String customReturn, final JsonObject additionnalParams,
 			final Handler<Either<String, JsonArray>> handler) {
+		if (visibilityIndex != null && (structureId == null || structureId.trim().isEmpty())) {
+			final VisibilityIndex.Visibles visibles = visibilityIndex.get(userId, myGroup);
+			if (visibles != null) {
+				indexedVisibleUsers(userId, visibles, expectedTypes, itSelf, profile, preFilter, customReturn,
+						additionnalParams, handler);
+				return;
+			}
+			String query =
+					"MATCH p=(n:User)-[r:COMMUNIQUE|COMMUNIQUE_DIRECT]->t-[:COMMUNIQUE*0..1]->ipg" +
+					"-[:COMMUNIQUE*0..1]->g<-[:DEPENDS*0..1]-m " +
+					"WHERE n.id = {userId} AND " + visibleCondition(myGroup) +
+					"WITH DISTINCT m " +
+					"RETURN COLLECT(CASE WHEN m:User THEN m.id END) as users, " +
+					"COLLECT(CASE WHEN m:Group THEN m.id END) as groups ";
+			neo4j.execute(query, new JsonObject().putString("userId", userId), new Handler<Message<JsonObject>>() {
+				@Override
+				public void handle(Message<JsonObject> event) {
+					JsonArray res = event.body().getArray("result");
+					if ("ok".equals(event.body().getString("status")) && res != null && res.size() == 1) {
+						JsonObject r = res.get(0);
+						VisibilityIndex.Visibles v = visibilityIndex.put(userId, myGroup,
+								r.getArray("users", new JsonArray()), r.getArray("groups", new JsonArray()));
+						indexedVisibleUsers(userId, v, expectedTypes, itSelf, profile, preFilter, customReturn,
+								additionnalParams, handler);
+					} else {
+						handler.handle(new Either.Left<String, JsonArray>(event.body().getString("message")));
+					}
+				}
+			});
+			return;
+		}
 		StringBuilder query = new StringBuilder();
 		JsonObject params = new JsonObject();
 		String condition = itSelf ? "" : "AND m.id <> {userId} ";
@@ -468,18 +525,48 @@ public class DefaultCommunicationService implements CommunicationService {
 			query.append("MATCH (n:User)-[:COMMUNIQUE*1..3]->m-[:DEPENDS*1..2]->(s:Structure {id:{schoolId}})"); //TODO manage leaf
 			params.putString("schoolId", structureId);
 		} else {
-			String l = (myGroup) ? " AND (length(p) >= 2 OR m.users <> 'INCOMING')" : " AND length(p) >= 2";
 			query.append(" MATCH p=(n:User)-[r:COMMUNIQUE|COMMUNIQUE_DIRECT]->t-[:COMMUNIQUE*0..1]->ipg" +
 					"-[:COMMUNIQUE*0..1]->g<-[:DEPENDS*0..1]-m ");
-			condition += "AND ((type(r) = 'COMMUNIQUE_DIRECT' AND length(p) = 1) " +
-					"XOR (type(r) = 'COMMUNIQUE'"+ l +
-					" AND (length(p) < 3 OR (ipg:Group AND (m:User OR g<-[:DEPENDS]-m) AND length(p) = 3)))) ";
+			condition += "AND " + visibleCondition(myGroup);
 		}
 		query.append("WHERE n.id = {userId} AND (NOT(HAS(m.blocked)) OR m.blocked = false) ");
 		if (preFilter != null) {
 			query.append(preFilter);
 		}
 		query.append(condition);
+		appendExpectedTypes(query, expectedTypes);
+		executeVisibleUsers(query, userId, profile, customReturn, additionnalParams, params, handler);
+	}
+
+	private void indexedVisibleUsers(String userId, VisibilityIndex.Visibles visibles, JsonArray expectedTypes,
+			boolean itSelf, boolean profile, String preFilter, String customReturn, JsonObject additionnalParams,
+			Handler<Either<String, JsonArray>> handler) {
+		StringBuilder query = new StringBuilder(
+				"MATCH (u:User) WHERE u.id IN {visibleUsers} WITH COLLECT(u) as us " +
+				"OPTIONAL MATCH (vg:Group) WHERE vg.id IN {visibleGroups} WITH us + COLLECT(vg) as ms " +
+				"UNWIND ms as m " +
+				"WITH m WHERE (NOT(HAS(m.blocked)) OR m.blocked = false) ");
+		if (preFilter != null) {
+			query.append(preFilter);
+		}
+		if (!itSelf) {
+			query.append("AND m.id <> {userId} ");
+		}
+		appendExpectedTypes(query, expectedTypes);
+		JsonObject params = new JsonObject()
+				.putArray("visibleUsers", visibles.users)
+				.putArray("visibleGroups", visibles.groups);
+		executeVisibleUsers(query, userId, profile, customReturn, additionnalParams, params, handler);
+	}
+
+	private static String visibleCondition(boolean myGroup) {
+		String l = (myGroup) ? " AND (length(p) >= 2 OR m.users <> 'INCOMING')" : " AND length(p) >= 2";
+		return "((type(r) = 'COMMUNIQUE_DIRECT' AND length(p) = 1) " +
+				"XOR (type(r) = 'COMMUNIQUE'"+ l +
+				" AND (length(p) < 3 OR (ipg:Group AND (m:User OR g<-[:DEPENDS]-m) AND length(p) = 3)))) ";
+	}
+
+	private static void appendExpectedTypes(StringBuilder query, JsonArray expectedTypes) {
 		if (expectedTypes != null && expectedTypes.size() > 0) {
 			query.append("AND (");
 			StringBuilder types = new StringBuilder();
@@ -490,6 +577,10 @@ public class DefaultCommunicationService implements CommunicationService {
 			}
 			query.append(types.substring(4)).append(") ");
 		}
+	}
+
+	private void executeVisibleUsers(StringBuilder query, String userId, boolean profile, String customReturn,
+			JsonObject additionnalParams, JsonObject params, Handler<Either<String, JsonArray>> handler) {
 		String pcr = " ";
 		String pr = "";
 		if (profile) {
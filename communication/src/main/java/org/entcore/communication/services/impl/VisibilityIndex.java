@@ -0,0 +1,193 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.communication.services.impl;
+
+import fr.wseduc.webutils.Either;
+import org.entcore.common.neo4j.Neo4j;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.entcore.common.appregistry.AppRegistryEvents.*;
+import static org.entcore.common.neo4j.Neo4jResult.validUniqueResultHandler;
+
+/**
+ * In memory index of the users and groups visible by a user, computed once with
+ * the COMMUNIQUE traversal and dropped when communication links or group
+ * memberships change. A membership change drops the entries of the updated users
+ * and of every viewer who saw them or who sees one of their groups.
+ */
+public class VisibilityIndex {
+
+	public static final String INVALIDATE_ADDRESS = "wse.communication.visibles.invalidate";
+	private static final long DEFAULT_TTL = 15 * 60 * 1000;
+	private static final int DEFAULT_MAX_SIZE = 20000;
+
+	private final EventBus eb;
+	private final long ttl;
+	private final Map<String, Visibles> index;
+
+	static final class Visibles {
+		final JsonArray users;
+		final JsonArray groups;
+		final long expires;
+
+		private Visibles(JsonArray users, JsonArray groups, long expires) {
+			this.users = users;
+			this.groups = groups;
+			this.expires = expires;
+		}
+	}
+
+	public VisibilityIndex(Vertx vertx, JsonObject config) {
+		this.eb = vertx.eventBus();
+		this.ttl = config.getLong("visibility-index-ttl", DEFAULT_TTL);
+		final int maxSize = config.getInteger("visibility-index-size", DEFAULT_MAX_SIZE);
+		this.index = new LinkedHashMap<String, Visibles>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Visibles> eldest) {
+				return size() > maxSize;
+			}
+		};
+		eb.registerHandler(INVALIDATE_ADDRESS, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				JsonArray users = message.body().getArray("users");
+				if (users != null) {
+					invalidate(users);
+				} else {
+					clear();
+				}
+			}
+		});
+		eb.registerHandler(APP_REGISTRY_INVALIDATIONS_ADDRESS, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				String type = message.body().getString("type");
+				if (USER_GROUP_UPDATED.equals(type)) {
+					JsonArray users = message.body().getArray("users");
+					if (users != null) {
+						invalidateMembers(users);
+					}
+				} else if (IMPORT_SUCCEEDED.equals(type)) {
+					clear();
+				}
+			}
+		});
+	}
+
+	synchronized Visibles get(String userId, boolean myGroup) {
+		final String key = key(userId, myGroup);
+		Visibles v = index.get(key);
+		if (v != null && v.expires < System.currentTimeMillis()) {
+			index.remove(key);
+			return null;
+		}
+		return v;
+	}
+
+	synchronized Visibles put(String userId, boolean myGroup, JsonArray users, JsonArray groups) {
+		final Visibles v = new Visibles(users, groups, System.currentTimeMillis() + ttl);
+		index.put(key(userId, myGroup), v);
+		return v;
+	}
+
+	public void publishInvalidation() {
+		eb.publish(INVALIDATE_ADDRESS, new JsonObject());
+	}
+
+	private synchronized void clear() {
+		index.clear();
+	}
+
+	private synchronized void invalidate(JsonArray users) {
+		for (Object u : users) {
+			if (u instanceof String) {
+				index.remove(key((String) u, true));
+				index.remove(key((String) u, false));
+			}
+		}
+	}
+
+	private void invalidateMembers(JsonArray users) {
+		final Set<String> ids = toSet(users);
+		if (ids.isEmpty()) {
+			return;
+		}
+		invalidate(users);
+		// viewers who saw a removed member
+		invalidateViewers(ids, false);
+		final String query =
+				"MATCH (u:User)-[:IN]->(g:Group) " +
+				"WHERE u.id IN {users} " +
+				"RETURN COLLECT(DISTINCT g.id) as groups ";
+		Neo4j.getInstance().execute(query, new JsonObject().putArray("users", users),
+				validUniqueResultHandler(new Handler<Either<String, JsonObject>>() {
+			@Override
+			public void handle(Either<String, JsonObject> event) {
+				if (event.isRight()) {
+					// viewers who see a group the members belong to now see these members
+					invalidateViewers(toSet(event.right().getValue().getArray("groups", new JsonArray())), true);
+				} else {
+					clear();
+				}
+			}
+		}));
+	}
+
+	private synchronized void invalidateViewers(Set<String> ids, boolean groups) {
+		if (ids.isEmpty()) {
+			return;
+		}
+		final Iterator<Visibles> it = index.values().iterator();
+		while (it.hasNext()) {
+			for (Object o : (groups ? it.next().groups : it.next().users)) {
+				if (ids.contains(o)) {
+					it.remove();
+					break;
+				}
+			}
+		}
+	}
+
+	private static Set<String> toSet(JsonArray a) {
+		final Set<String> s = new HashSet<>();
+		for (Object o : a) {
+			if (o instanceof String) {
+				s.add((String) o);
+			}
+		}
+		return s;
+	}
+
+	private static String key(String userId, boolean myGroup) {
+		return userId + (myGroup ? "-g" : "");
+	}
+
+}
@@ -358,6 +358,8 @@ public class ConversationController extends BaseController {
 		final String folder = request.params().get("folder");
 		final String restrain = request.params().get("restrain");
 		final String p = Utils.getOrElse(request.params().get("page"), "0", false);
+		final String before = request.params().get("before");
+		final String beforeId = request.params().get("beforeId");
 		if (folder == null || folder.trim().isEmpty()) {
 			badRequest(request);
 			return;
@@ -366,11 +368,7 @@ public class ConversationController extends BaseController {
 			@Override
 			public void handle(final UserInfos user) {
 				if (user != null) {
-					int page;
-					try {
-						page = Integer.parseInt(p);
-					} catch (NumberFormatException e) { page = 0; }
-					conversationService.list(folder, restrain, user, page, new Handler<Either<String, JsonArray>>() {
+					final Handler<Either<String, JsonArray>> handler = new Handler<Either<String, JsonArray>>() {
 						@Override
 						public void handle(Either<String, JsonArray> r) {
 							if (r.isRight()) {
@@ -387,7 +385,23 @@ public class ConversationController extends BaseController {
 								renderJson(request, error, 400);
 							}
 						}
-					});
+					};
+					if (before != null && !before.trim().isEmpty()) {
+						Long date;
+						try {
+							date = Long.parseLong(before);
+						} catch (NumberFormatException e) {
+							badRequest(request);
+							return;
+						}
+						conversationService.list(folder, restrain, user, date, beforeId, handler);
+					} else {
+						int page;
+						try {
+							page = Integer.parseInt(p);
+						} catch (NumberFormatException e) { page = 0; }
+						conversationService.list(folder, restrain, user, page, handler);
+					}
 				} else {
 					unauthorized(request);
 				}
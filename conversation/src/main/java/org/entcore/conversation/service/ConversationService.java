@@ -60,6 +60,13 @@ public interface ConversationService {
 
 	void list(String folder, String restrain, UserInfos user, int page, Handler<Either<String, JsonArray>> results);
 
+	/**
+	 * Keyset pagination : lists the LIST_LIMIT messages sorted after the (before, beforeId) cursor,
+	 * i.e. the date and id of the last message of the previous page. Null cursor returns the first page.
+	 */
+	void list(String folder, String restrain, UserInfos user, Long before, String beforeId,
+			Handler<Either<String, JsonArray>> results);
+
 	void trash(List<String> messagesId, UserInfos user, Handler<Either<String, JsonObject>> result);
 
 	void restore(List<String> messagesId, UserInfos user, Handler<Either<String, JsonObject>> result);
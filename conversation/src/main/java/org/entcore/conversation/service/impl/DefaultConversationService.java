@@ -404,8 +404,18 @@ public class DefaultConversationService implements ConversationService {
 	@Override
 	public void list(String folder, String restrain, UserInfos user, int page, final Handler<Either<String, JsonArray>> results) {
 		if (validationError(user, results, folder)) return;
-		int skip = page * LIST_LIMIT;
+		list(folder, restrain, user, page * LIST_LIMIT, null, null, results);
+	}
+
+	@Override
+	public void list(String folder, String restrain, UserInfos user, Long before, String beforeId,
+			final Handler<Either<String, JsonArray>> results) {
+		if (validationError(user, results, folder)) return;
+		list(folder, restrain, user, 0, before, beforeId, results);
+	}
 
+	private void list(String folder, String restrain, UserInfos user, int skip, Long before, String beforeId,
+			final Handler<Either<String, JsonArray>> results) {
 		JsonObject params = new JsonObject()
 			.putString("userId", user.getUserId())
 			.putString("folder", folder)
@@ -431,13 +441,23 @@ public class DefaultConversationService implements ConversationService {
 				"WHERE NOT HAS(r.insideFolder) ";
 		}
 
+		if (before != null) {
+			if (beforeId != null) {
+				messageFilter += "AND (m.date < {before} OR (m.date = {before} AND m.id < {beforeId})) ";
+				params.putString("beforeId", beforeId);
+			} else {
+				messageFilter += "AND m.date < {before} ";
+			}
+			params.putNumber("before", before);
+		}
+
 		String query =
 				"MATCH (c:Conversation {userId : {userId}, active : {true}})" +
 				messageFilter +
 				"RETURN DISTINCT m.id as id, m.to as to, m.from as from, m.state as state, " +
 				"m.toName as toName, m.fromName as fromName, " +
 				"m.subject as subject, m.date as date, r.unread as unread, m.displayNames as displayNames, coalesce(r.attachments, []) as attachments,  collect(f.name) as systemFolders " +
-				"ORDER BY m.date DESC " +
+				"ORDER BY m.date DESC, m.id DESC " +
 				"SKIP {skip} " +
 				"LIMIT {limit} ";
 
@@ -21,6 +21,7 @@ package org.entcore.conversation.service.impl;
 
 import static org.entcore.common.user.UserUtils.findVisibles;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -37,6 +38,8 @@ import org.vertx.java.core.Vertx;
 import org.vertx.java.core.eventbus.EventBus;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
 
 import fr.wseduc.webutils.Either;
 import fr.wseduc.webutils.Server;
@@ -44,10 +47,18 @@ import fr.wseduc.webutils.Utils;
 
 public class SqlConversationService implements ConversationService{
 
+	private static final Logger log = LoggerFactory.getLogger(SqlConversationService.class);
+
+	private static final long SEND_CHUNK_RETRY_DELAY = 1000l;
+
+	private final Vertx vertx;
 	private final EventBus eb;
 	private final Sql sql;
 
 	private final int maxFolderDepth;
+	private final int sendChunkSize;
+	private final int asyncSendThreshold;
+	private final int sendChunkRetries;
 
 	private final String messageTable;
 	private final String folderTable;
@@ -56,9 +67,13 @@ public class SqlConversationService implements ConversationService{
 	private final String userMessageAttachmentTable;
 
 	public SqlConversationService(Vertx vertx, String schema) {
+		this.vertx = vertx;
 		this.eb = Server.getEventBus(vertx);
 		this.sql = Sql.getInstance();
 		this.maxFolderDepth = Config.getConf().getInteger("max-folder-depth", Conversation.DEFAULT_FOLDER_DEPTH);
+		this.sendChunkSize = Math.max(1, Config.getConf().getInteger("send-chunk-size", 1000));
+		this.asyncSendThreshold = Config.getConf().getInteger("async-send-threshold", 0);
+		this.sendChunkRetries = Math.max(0, Config.getConf().getInteger("send-chunk-retries", 3));
 		messageTable = schema + ".messages";
 		folderTable = schema + ".folders";
 		attachmentTable = schema + ".attachments";
@@ -168,6 +183,21 @@ public class SqlConversationService implements ConversationService{
 
 				final JsonArray ids = message.getArray("allUsers", new JsonArray());
 
+				final List<JsonArray> chunks = new ArrayList<>();
+				JsonArray chunk = new JsonArray();
+				for(Object toObj : ids){
+					if(toObj.equals(user.getUserId()))
+						continue;
+					if(chunk.size() >= sendChunkSize){
+						chunks.add(chunk);
+						chunk = new JsonArray();
+					}
+					chunk.addString(toObj.toString());
+				}
+				if(chunk.size() > 0){
+					chunks.add(chunk);
+				}
+
 				SqlStatementsBuilder builder = new SqlStatementsBuilder();
 
 				String updateMessage =
@@ -175,33 +205,85 @@ public class SqlConversationService implements ConversationService{
 					"RETURNING id, subject";
 				builder.prepared(updateMessage, new JsonArray().add("SENT").add(draftId));
 
-				for(Object toObj : ids){
-					if(toObj.equals(user.getUserId()))
-						continue;
-
-					builder.insert(userMessageTable, new JsonObject()
-						.putString("user_id", toObj.toString())
-						.putString("message_id", draftId)
-						.putNumber("total_quota", totalQuota)
-					);
-					for(Object attachmentId : attachmentIds){
-						builder.insert(userMessageAttachmentTable, new JsonObject()
-							.putString("user_id", toObj.toString())
-							.putString("message_id", draftId)
-							.putString("attachment_id", attachmentId.toString())
-						);
+				if(asyncSendThreshold > 0 && ids.size() > asyncSendThreshold && chunks.size() > 1){
+					// first chunk is written with the state update, remaining recipients are fanned out afterwards
+					addRecipients(builder, chunks.get(0), draftId, totalQuota, attachmentIds);
+					sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, new Handler<Either<String, JsonObject>>() {
+						@Override
+						public void handle(Either<String, JsonObject> event) {
+							result.handle(event);
+							if (event.isRight()) {
+								fanOut(chunks, 1, 0, draftId, totalQuota, attachmentIds);
+							}
+						}
+					}));
+				} else {
+					for(JsonArray c : chunks){
+						addRecipients(builder, c, draftId, totalQuota, attachmentIds);
 					}
+					sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, result));
 				}
-
-				sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, result));
 			}
 		});
 	}
 
+	private void addRecipients(SqlStatementsBuilder builder, JsonArray recipients, String messageId,
+			long totalQuota, JsonArray attachmentIds) {
+		builder.prepared(
+			"INSERT INTO " + userMessageTable + " (user_id, message_id, total_quota) " +
+			"SELECT r, ?, ? FROM jsonb_array_elements_text(?::jsonb) r",
+			new JsonArray().add(messageId).add(totalQuota).add(recipients.encode()));
+		if(attachmentIds != null && attachmentIds.size() > 0){
+			builder.prepared(
+				"INSERT INTO " + userMessageAttachmentTable + " (user_id, message_id, attachment_id) " +
+				"SELECT r, ?, a FROM jsonb_array_elements_text(?::jsonb) r, jsonb_array_elements_text(?::jsonb) a",
+				new JsonArray().add(messageId).add(recipients.encode()).add(attachmentIds.encode()));
+		}
+	}
+
+	private void fanOut(final List<JsonArray> chunks, final int idx, final int attempt, final String messageId,
+			final long totalQuota, final JsonArray attachmentIds) {
+		if(idx >= chunks.size())
+			return;
+		SqlStatementsBuilder builder = new SqlStatementsBuilder();
+		addRecipients(builder, chunks.get(idx), messageId, totalQuota, attachmentIds);
+		sql.transaction(builder.build(), SqlResult.validResultsHandler(new Handler<Either<String, JsonArray>>() {
+			@Override
+			public void handle(Either<String, JsonArray> event) {
+				if (event.isRight()) {
+					fanOut(chunks, idx + 1, 0, messageId, totalQuota, attachmentIds);
+				} else if (attempt < sendChunkRetries) {
+					// the chunk is written in its own transaction, so it can be replayed as a whole
+					log.warn("Error sending message " + messageId + " to recipients chunk " + idx +
+							", retrying : " + event.left().getValue());
+					vertx.setTimer(SEND_CHUNK_RETRY_DELAY * (attempt + 1), new Handler<Long>() {
+						@Override
+						public void handle(Long timerId) {
+							fanOut(chunks, idx, attempt + 1, messageId, totalQuota, attachmentIds);
+						}
+					});
+				} else {
+					log.error("Error sending message " + messageId + " to recipients " +
+							chunks.get(idx).encode() + " : " + event.left().getValue());
+					fanOut(chunks, idx + 1, 0, messageId, totalQuota, attachmentIds);
+				}
+			}
+		}));
+	}
+
 	@Override
 	public void list(String folder, String restrain, UserInfos user, int page, Handler<Either<String, JsonArray>> results) {
-		int skip = page * LIST_LIMIT;
+		list(folder, restrain, user, page * LIST_LIMIT, null, null, results);
+	}
 
+	@Override
+	public void list(String folder, String restrain, UserInfos user, Long before, String beforeId,
+			Handler<Either<String, JsonArray>> results) {
+		list(folder, restrain, user, 0, before, beforeId, results);
+	}
+
+	private void list(String folder, String restrain, UserInfos user, int skip, Long before, String beforeId,
+			Handler<Either<String, JsonArray>> results) {
 		String additionalWhere = "";
 		JsonArray values = new JsonArray()
 			.add(user.getUserId());
@@ -213,15 +295,32 @@ public class SqlConversationService implements ConversationService{
 			additionalWhere = addFolderCondition(folder, values, user.getUserId());
 		}
 
-		String query = "SELECT m.*, um.unread as unread, " +
-			"CASE when COUNT(distinct att) = 0 THEN '[]' ELSE json_agg(distinct att.*) END AS attachments " +
-			"FROM " + userMessageTable + " um LEFT JOIN " +
-			userMessageAttachmentTable + " uma ON um.user_id = uma.user_id AND um.message_id = uma.message_id JOIN " +
-			messageTable + " m ON um.message_id = m.id LEFT JOIN " +
-			attachmentTable + " att ON uma.attachment_id = att.id " +
-			"WHERE um.user_id = ? " + additionalWhere + " " +
-			"GROUP BY m.id, unread " +
-			"ORDER BY m.date DESC LIMIT " + LIST_LIMIT + " OFFSET " + skip;
+		if(before != null){
+			if(beforeId != null){
+				additionalWhere += " AND (m.date, m.id) < (?, ?)";
+				values.add(before).add(beforeId);
+			} else {
+				additionalWhere += " AND m.date < ?";
+				values.add(before);
+			}
+		}
+		values.add(user.getUserId());
+
+		// the page is selected on (date, id) first, attachments are only aggregated for the returned rows
+		String query =
+			"WITH page AS (" +
+				"SELECT m.id, m.date, um.unread " +
+				"FROM " + userMessageTable + " um JOIN " +
+				messageTable + " m ON um.message_id = m.id " +
+				"WHERE um.user_id = ? " + additionalWhere + " " +
+				"ORDER BY m.date DESC, m.id DESC LIMIT " + LIST_LIMIT + " OFFSET " + skip +
+			") " +
+			"SELECT m.*, p.unread as unread, " +
+			"COALESCE((SELECT json_agg(att.*) FROM " + userMessageAttachmentTable + " uma JOIN " +
+				attachmentTable + " att ON uma.attachment_id = att.id " +
+				"WHERE uma.user_id = ? AND uma.message_id = p.id), '[]') AS attachments " +
+			"FROM page p JOIN " + messageTable + " m ON p.id = m.id " +
+			"ORDER BY p.date DESC, p.id DESC";
 
 		sql.prepared(query, values, SqlResult.validResultHandler(results, "attachments", "to", "toName", "cc", "ccName", "displayNames"));
 	}
@@ -0,0 +1 @@
+CREATE INDEX idx_messages_date_id ON conversation.messages (date, id);
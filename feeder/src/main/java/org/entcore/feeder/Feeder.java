@@ -26,6 +26,7 @@ import org.entcore.common.events.EventStore;
 import org.entcore.common.events.EventStoreFactory;
 import org.entcore.common.user.UserInfos;
 import org.entcore.feeder.aaf.AafFeeder;
+import org.entcore.feeder.aaf.BaseImportProcessing;
 import org.entcore.feeder.aaf1d.Aaf1dFeeder;
 import org.entcore.feeder.be1d.Be1dFeeder;
 import org.entcore.feeder.be1d.Be1dValidator;
@@ -75,6 +76,9 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 		}
 		neo4j = new Neo4j(vertx.eventBus(), node + neo4jAddress);
 		TransactionManager.getInstance().setNeo4j(neo4j);
+		BaseImportProcessing.configureParsers(
+				container.config().getInteger("aaf-parsers-pool-size", BaseImportProcessing.DEFAULT_PARSERS_POOL_SIZE),
+				container.config().getInteger("aaf-read-ahead-files", BaseImportProcessing.DEFAULT_READ_AHEAD_FILES));
 		EventStoreFactory factory = EventStoreFactory.getFactory();
 		factory.setVertx(vertx);
 		eventStore = factory.getEventStore(Feeder.class.getSimpleName());
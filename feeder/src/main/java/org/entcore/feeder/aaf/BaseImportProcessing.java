@@ -38,6 +38,7 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.concurrent.*;
 
 public abstract class BaseImportProcessing implements ImportProcessing {
 
@@ -55,11 +56,51 @@ public abstract class BaseImportProcessing implements ImportProcessing {
 					new NumericEntityUnescaper()
 			);
 
+	private static final JsonObject END_OF_FILE = new JsonObject();
+	private static final int QUEUE_SIZE = 1000;
+	public static final int DEFAULT_PARSERS_POOL_SIZE = 2;
+	public static final int DEFAULT_READ_AHEAD_FILES = 1;
+	private static ExecutorService parsersPool;
+	private static int readAheadFiles = DEFAULT_READ_AHEAD_FILES;
+
 	protected BaseImportProcessing(String path, Vertx vertx) {
 		this.path = path;
 		this.vertx = vertx;
 	}
 
+	/**
+	 * Sizes the pool parsing the import files and the number of files parsed ahead of the one being processed.
+	 * Each file in flight is fully loaded in memory, so the read-ahead must stay small.
+	 *
+	 * @param poolSize : Number of parser threads
+	 * @param readAhead : Number of files parsed ahead of the file being processed
+	 */
+	public static synchronized void configureParsers(int poolSize, int readAhead) {
+		if (parsersPool != null) {
+			parsersPool.shutdown();
+		}
+		parsersPool = createParsersPool(poolSize);
+		readAheadFiles = Math.max(0, readAhead);
+	}
+
+	private static synchronized ExecutorService getParsersPool() {
+		if (parsersPool == null) {
+			parsersPool = createParsersPool(DEFAULT_PARSERS_POOL_SIZE);
+		}
+		return parsersPool;
+	}
+
+	private static ExecutorService createParsersPool(int poolSize) {
+		return Executors.newFixedThreadPool(Math.max(1, poolSize), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "aaf-parser");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
 	protected void parse(final Handler<Message<JsonObject>> handler, final ImportProcessing importProcessing) {
 		final String [] files = vertx.fileSystem()
 				.readDirSync(path, getFileRegex());
@@ -71,55 +112,44 @@ public abstract class BaseImportProcessing implements ImportProcessing {
 			}
 		};
 		Arrays.sort(files);
+		// files are parsed on the parsers pool at most readAheadFiles ahead, entities are processed here in files order
+		final ExecutorService pool = getParsersPool();
+		final int readAhead = readAheadFiles;
+		final FileParser[] parsers = new FileParser[files.length];
+		for (int i = 0; i < files.length; i++) {
+			parsers[i] = new FileParser(files[i]);
+		}
+		final int[] submitted = {0};
 		for (int i = files.length - 1; i >= 0; i--) {
 			final int j = i;
 			handlers[i] = new VoidHandler() {
 				@Override
 				protected void handle() {
 					try {
-						String file = files[j];
-						log.info("Parsing file : " + file);
-						byte[] encoded = Files.readAllBytes(Paths.get(file));
-						String content = UNESCAPE_AAF.translate(new String(encoded, "UTF-8"));
-						InputSource in = new InputSource(new StringReader(content));
-						AAFHandler sh = new AAFHandler(BaseImportProcessing.this);
-						XMLReader xr = XMLReaderFactory.createXMLReader();
-						xr.setContentHandler(sh);
-						xr.setEntityResolver(new EntityResolver2() {
-							@Override
-							public InputSource getExternalSubset(String name, String baseURI) throws SAXException, IOException {
-								return null;
-							}
-
-							@Override
-							public InputSource resolveEntity(String name, String publicId, String baseURI, String systemId) throws SAXException, IOException {
-								return resolveEntity(publicId, systemId);
-							}
-
-							@Override
-							public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
-								if (systemId.equals("ficAlimMENESR.dtd")) {
-									Reader reader = new FileReader(path + File.separator + "ficAlimMENESR.dtd");
-									return new InputSource(reader);
-								} else {
-									return null;
-								}
-							}
-						});
-						xr.parse(in);
+						while (submitted[0] < files.length && submitted[0] <= j + readAhead) {
+							pool.execute(parsers[submitted[0]++]);
+						}
+						log.info("Processing file : " + files[j]);
+						JsonObject entity;
+						while ((entity = parsers[j].take()) != END_OF_FILE) {
+							process(entity);
+						}
 						importer.flush(new Handler<Message<JsonObject>>() {
 							@Override
 							public void handle(Message<JsonObject> message) {
 								if ("ok".equals(message.body().getString("status"))) {
 									handlers[j + 1].handle(null);
 								} else {
+									cancel(parsers);
 									error(message, handler);
 								}
 							}
 						});
 					} catch (Exception e) {
+						cancel(parsers);
 						error(e, handler);
 					} catch (OutOfMemoryError err) { // badly catch Error to unlock importer
+						cancel(parsers);
 						log.error("OOM reading import files", err);
 						error(new Exception("OOM"), handler);
 					}
@@ -129,6 +159,110 @@ public abstract class BaseImportProcessing implements ImportProcessing {
 		handlers[0].handle(null);
 	}
 
+	private void cancel(FileParser[] parsers) {
+		for (FileParser p : parsers) {
+			p.cancel();
+		}
+	}
+
+	private class FileParser implements Runnable {
+
+		private final String file;
+		private final BlockingQueue<JsonObject> entities = new LinkedBlockingQueue<>(QUEUE_SIZE);
+		private volatile Exception error;
+		private volatile boolean cancelled = false;
+
+		private FileParser(String file) {
+			this.file = file;
+		}
+
+		@Override
+		public void run() {
+			if (cancelled) {
+				return;
+			}
+			try {
+				log.info("Parsing file : " + file);
+				byte[] encoded = Files.readAllBytes(Paths.get(file));
+				String content = UNESCAPE_AAF.translate(new String(encoded, "UTF-8"));
+				InputSource in = new InputSource(new StringReader(content));
+				AAFHandler sh = new AAFHandler(new ImportProcessing() {
+					@Override
+					public void start(Handler<Message<JsonObject>> handler) {
+					}
+
+					@Override
+					public String getMappingResource() {
+						return BaseImportProcessing.this.getMappingResource();
+					}
+
+					@Override
+					public void process(JsonObject object) {
+						put(object);
+					}
+				});
+				XMLReader xr = XMLReaderFactory.createXMLReader();
+				xr.setContentHandler(sh);
+				xr.setEntityResolver(new EntityResolver2() {
+					@Override
+					public InputSource getExternalSubset(String name, String baseURI) throws SAXException, IOException {
+						return null;
+					}
+
+					@Override
+					public InputSource resolveEntity(String name, String publicId, String baseURI, String systemId) throws SAXException, IOException {
+						return resolveEntity(publicId, systemId);
+					}
+
+					@Override
+					public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+						if (systemId.equals("ficAlimMENESR.dtd")) {
+							Reader reader = new FileReader(path + File.separator + "ficAlimMENESR.dtd");
+							return new InputSource(reader);
+						} else {
+							return null;
+						}
+					}
+				});
+				xr.parse(in);
+			} catch (CancellationException e) {
+				return;
+			} catch (Exception e) {
+				error = e;
+			} catch (OutOfMemoryError err) {
+				log.error("OOM reading import files", err);
+				error = new Exception("OOM");
+			}
+			put(END_OF_FILE);
+		}
+
+		private void put(JsonObject entity) {
+			try {
+				while (!entities.offer(entity, 100, TimeUnit.MILLISECONDS)) {
+					if (cancelled) {
+						throw new CancellationException();
+					}
+				}
+			} catch (InterruptedException e) {
+				throw new CancellationException();
+			}
+		}
+
+		private JsonObject take() throws Exception {
+			JsonObject entity = entities.take();
+			if (entity == END_OF_FILE && error != null) {
+				throw error;
+			}
+			return entity;
+		}
+
+		private void cancel() {
+			cancelled = true;
+			entities.clear();
+		}
+
+	}
+
 	protected void next(final Handler<Message<JsonObject>> handler, final ImportProcessing importProcessing) {
 		preCommit();
 		if (importProcessing != null) {
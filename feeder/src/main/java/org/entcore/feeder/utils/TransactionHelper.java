@@ -26,17 +26,20 @@ import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.logging.Logger;
 import org.vertx.java.core.logging.impl.LoggerFactory;
 
+import java.util.LinkedList;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class TransactionHelper {
 
 	private static final Logger log = LoggerFactory.getLogger(TransactionHelper.class);
+	private static final long TARGET_LATENCY = 1000l;
 	private final Neo4j neo4j;
 	private JsonArray statements;
-	private AtomicInteger remainingStatementNumber;
-	private final int statementNumber;
+	private final LinkedList<JsonArray> readyBatches = new LinkedList<>();
+	private final int minBatchSize;
+	private final int maxBatchSize;
+	private int batchSize;
 	private Integer transactionId;
 	private Timer resetTimeOutTimer;
 	private Message<JsonObject> error;
@@ -67,19 +70,14 @@ public class TransactionHelper {
 
 	public TransactionHelper(Neo4j neo4j, int statementNumber) {
 		this.neo4j = neo4j;
-		this.remainingStatementNumber = new AtomicInteger(statementNumber);
-		this.statementNumber = statementNumber;
+		this.batchSize = statementNumber;
+		this.minBatchSize = Math.max(1, statementNumber / 10);
+		this.maxBatchSize = statementNumber * 5;
 		this.statements = new JsonArray();
 		send(new JsonArray());
 	}
 
 	public void add(String query, JsonObject params) {
-		if (autoSend && !waitingQuery && transactionId != null &&
-				remainingStatementNumber.getAndDecrement() == 0) {
-			send(statements.copy());
-			statements = new JsonArray();
-			remainingStatementNumber = new AtomicInteger(statementNumber);
-		}
 		if (query != null && !query.trim().isEmpty()) {
 			if (log.isDebugEnabled()) {
 				log.debug("query : " + query + " - params : " + (params != null ? params.encode() : "{}"));
@@ -90,17 +88,30 @@ public class TransactionHelper {
 			}
 			statements.addObject(statement);
 		}
+		if (autoSend && statements.size() >= batchSize) {
+			// full batches are queued and chained, so a batch never grows while a query is pending
+			readyBatches.add(statements);
+			statements = new JsonArray();
+			sendNext();
+		}
+	}
+
+	private void sendNext() {
+		if (!waitingQuery && transactionId != null && !readyBatches.isEmpty()) {
+			send(readyBatches.poll());
+		}
 	}
 
 	private void send(JsonArray s) {
 		send(s, null);
 	}
 
-	private void send(JsonArray s, final Handler<Message<JsonObject>> handler) {
+	private void send(final JsonArray s, final Handler<Message<JsonObject>> handler) {
 		if (error != null) {
 			throw new IllegalStateException(error.body().getString("message"));
 		}
 		waitingQuery = true;
+		final long start = System.currentTimeMillis();
 		neo4j.executeTransaction(s, transactionId, false, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> message) {
@@ -114,31 +125,52 @@ public class TransactionHelper {
 						resetTimeOutTimer = new Timer();
 						//resetTimeOutTimer.schedule(new ResetTransactionTimer(), 0, 55000); // TODO use transaction expires
 					}
+					adaptBatchSize(s.size(), System.currentTimeMillis() - start);
 				} else {
 					error = message;
 					log.error(message.body().encode());
 				}
 				waitingQuery = false;
-				if (commit) {
+				if (error == null && !readyBatches.isEmpty()) {
+					sendNext();
+				} else if (commit) {
+					commit = false;
 					commit(commitHandler);
 				} else if (flush) {
+					flush = false;
 					flush(flushHandler);
 				}
 			}
 		});
 	}
 
+	private void adaptBatchSize(int size, long latency) {
+		if (size < batchSize / 2) {
+			return;
+		}
+		if (latency < TARGET_LATENCY / 2 && batchSize < maxBatchSize) {
+			batchSize = Math.min(maxBatchSize, batchSize * 2);
+		} else if (latency > TARGET_LATENCY && batchSize > minBatchSize) {
+			batchSize = Math.max(minBatchSize, batchSize / 2);
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("batch of " + size + " statements in " + latency + " ms, next batch size : " + batchSize);
+		}
+	}
+
 	public void commit(Handler<Message<JsonObject>> handler) {
 		if (error != null) {
 			throw new IllegalStateException(error.body().getString("message"));
 		}
-		if (waitingQuery) {
+		if (waitingQuery || !readyBatches.isEmpty()) {
 			commit = true;
 			commitHandler = handler;
+			sendNext();
 			return;
 		}
 		if (transactionId != null || statements.size() > 0) {
 			neo4j.executeTransaction(statements, transactionId, true, handler);
+			statements = new JsonArray();
 			if (transactionId != null) {
 				resetTimeOutTimer.cancel();
 				resetTimeOutTimer.purge();
@@ -150,6 +182,7 @@ public class TransactionHelper {
 	}
 
 	public void rollback() {
+		readyBatches.clear();
 		if (transactionId != null) {
 			neo4j.rollbackTransaction(transactionId, null);
 			resetTimeOutTimer.cancel();
@@ -162,13 +195,14 @@ public class TransactionHelper {
 		if (error != null) {
 			throw new IllegalStateException(error.body().getString("message"));
 		}
-		if (waitingQuery) {
+		if (waitingQuery || !readyBatches.isEmpty()) {
 			flush = true;
 			flushHandler = handler;
+			sendNext();
 		} else if (transactionId != null) {
-			send(statements.copy(), handler);
+			JsonArray s = statements;
 			statements = new JsonArray();
-			remainingStatementNumber = new AtomicInteger(statementNumber);
+			send(s, handler);
 		}
 	}
 
@@ -181,10 +215,9 @@ public class TransactionHelper {
 	}
 
 	public boolean isEmpty() {
-		return statements == null || statements.size() == 0;
+		return (statements == null || statements.size() == 0) && readyBatches.isEmpty();
 	}
 
-
 	public boolean isAutoSend() {
 		return autoSend;
 	}
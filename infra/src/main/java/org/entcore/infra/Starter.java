@@ -27,7 +27,6 @@ import org.entcore.common.notification.TimelineHelper;
 import org.entcore.infra.controllers.EventStoreController;
 import org.entcore.infra.controllers.MonitoringController;
 import org.entcore.infra.cron.HardBounceTask;
-import org.entcore.infra.services.EventStoreService;
 import org.entcore.infra.services.impl.MongoDbEventStore;
 import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Handler;
@@ -51,6 +50,7 @@ public class Starter extends BaseServer {
 	String developerId = "";
 	private String node;
 	private boolean cluster;
+	private MongoDbEventStore eventStore;
 
 	@Override
 	public void start() {
@@ -111,13 +111,21 @@ public class Starter extends BaseServer {
 		} catch (Exception ex) {
 			log.error(ex.getMessage());
 		}
-		EventStoreService eventStoreService = new MongoDbEventStore();
+		eventStore = new MongoDbEventStore(vertx, config);
 		EventStoreController eventStoreController = new EventStoreController();
-		eventStoreController.setEventStoreService(eventStoreService);
+		eventStoreController.setEventStoreService(eventStore);
 		addController(eventStoreController);
 		addController(new MonitoringController());
 	}
 
+	@Override
+	public void stop() {
+		if (eventStore != null) {
+			eventStore.close();
+		}
+		super.stop();
+	}
+
 	private void loadInvalidEmails() {
 		final Map<Object, Object> invalidEmails;
 		if (cluster) {
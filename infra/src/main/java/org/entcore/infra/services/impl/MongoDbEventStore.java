@@ -21,8 +21,10 @@ package org.entcore.infra.services.impl;
 
 import fr.wseduc.mongodb.MongoDb;
 import fr.wseduc.webutils.Either;
+import org.entcore.common.events.impl.MongoDbEventBuffer;
 import org.entcore.infra.services.EventStoreService;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonObject;
 
@@ -30,9 +32,23 @@ public class MongoDbEventStore implements EventStoreService {
 
 	private MongoDb mongoDb = MongoDb.getInstance();
 	private static final String COLLECTION = "events";
+	private final MongoDbEventBuffer buffer;
+
+	public MongoDbEventStore() {
+		this.buffer = null;
+	}
+
+	public MongoDbEventStore(Vertx vertx, JsonObject config) {
+		this.buffer = config.getBoolean("events-buffer", false) ?
+				new MongoDbEventBuffer(vertx, COLLECTION, config, "event.store.buffer.infra") : null;
+	}
 
 	@Override
 	public void store(JsonObject event, final Handler<Either<String, Void>> handler) {
+		if (buffer != null) {
+			buffer.add(event, handler);
+			return;
+		}
 		mongoDb.save(COLLECTION, event, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> event) {
@@ -46,4 +62,13 @@ public class MongoDbEventStore implements EventStoreService {
 		});
 	}
 
+	/**
+	 * Writes the buffered events, called when the verticle stops.
+	 */
+	public void close() {
+		if (buffer != null) {
+			buffer.close();
+		}
+	}
+
 }
@@ -0,0 +1,134 @@
+// Compares the fan-out-on-write (default) and fan-out-on-read timeline stores on the generate-dataset.js dataset.
+//   mongo timeline_bench --eval "var samples = 1000" scripts/timeline/benchmark/benchmark.js
+// Parameters (--eval) : samples (1000 users read), limit (25, page size), publishes (100 structure broadcasts),
+// marks (true, also measures marking the page as read, which modifies the dataset).
+// Each operation reproduces the queries of DefaultTimelineEventStore and FanOutOnReadTimelineEventStore.
+if (typeof samples === "undefined") var samples = 1000;
+if (typeof limit === "undefined") var limit = 25;
+if (typeof publishes === "undefined") var publishes = 100;
+if (typeof marks === "undefined") var marks = true;
+
+var users = db.getCollection("bench.users").count();
+if (users === 0) {
+  print("No dataset, run generate-dataset.js first.");
+  quit(1);
+}
+
+function percentile(sorted, p) {
+  return sorted[Math.min(sorted.length - 1, Math.floor(sorted.length * p))];
+}
+
+function report(name, times) {
+  var sorted = times.slice().sort(function(a, b) { return a - b; });
+  var total = 0;
+  sorted.forEach(function(t) { total += t; });
+  print(name + " : avg " + (total / sorted.length).toFixed(2) + " ms, p50 " + percentile(sorted, 0.5) +
+      " ms, p95 " + percentile(sorted, 0.95) + " ms, p99 " + percentile(sorted, 0.99) + " ms, max " +
+      sorted[sorted.length - 1] + " ms");
+}
+
+function time(f) {
+  var start = new Date().getTime();
+  f();
+  return new Date().getTime() - start;
+}
+
+var seed = 7;
+function random() {
+  seed = (seed * 16807) % 2147483647;
+  return (seed - 1) / 2147483646;
+}
+
+var sampled = [];
+for (var i = 0; i < samples; i++) {
+  sampled.push(db.getCollection("bench.users").findOne({"_id" : "u" + Math.floor(random() * users)}));
+}
+
+var now = new Date();
+var writeReads = [], writeMarks = [], readReads = [], readMarks = [];
+sampled.forEach(function(user) {
+  // fan-out-on-write : recipients entries of the user, read state embedded
+  var page;
+  writeReads.push(time(function() {
+    page = db.getCollection("bench.write").find({"date" : {"$lt" : now}, "recipients.userId" : user._id},
+        {"type" : 1, "date" : 1, "params" : 1, "recipients.$" : 1}).sort({"date" : -1}).limit(limit).toArray();
+  }));
+  if (marks) {
+    var unread = [];
+    page.forEach(function(e) { if (e.recipients[0].unread === 1) unread.push(e._id); });
+    writeMarks.push(time(function() {
+      if (unread.length > 0) {
+        db.getCollection("bench.write").update({"_id" : {"$in" : unread},
+          "recipients" : {"$elemMatch" : {"userId" : user._id, "unread" : 1}}},
+          {"$set" : {"recipients.$.unread" : 0}}, {"multi" : true});
+      }
+    }));
+  }
+
+  // fan-out-on-read : user recipients or groups of the user, read markers merged afterwards
+  var events;
+  readReads.push(time(function() {
+    events = db.getCollection("bench.read").find({"date" : {"$lt" : now}, "$or" : [
+      {"recipients.userId" : user._id}, {"groups" : {"$in" : user.groups.concat(user.structures)}}]},
+        {"type" : 1, "date" : 1, "params" : 1}).sort({"date" : -1}).limit(limit).toArray();
+    var ids = events.map(function(e) { return user._id + ":" + e._id; });
+    var read = {};
+    db.getCollection("bench.read.read").find({"_id" : {"$in" : ids}}, {"_id" : 1}).forEach(function(m) {
+      read[m._id] = true;
+    });
+    events.forEach(function(e) { e.unread = read[user._id + ":" + e._id] ? 0 : 1; });
+  }));
+  if (marks) {
+    var markers = [];
+    events.forEach(function(e) { if (e.unread === 1) markers.push({"_id" : user._id + ":" + e._id, "event" : e._id}); });
+    readMarks.push(time(function() {
+      if (markers.length > 0) {
+        var bulk = db.getCollection("bench.read.read").initializeUnorderedBulkOp();
+        markers.forEach(function(m) { bulk.insert(m); });
+        try {
+          bulk.execute();
+        } catch (e) {
+          // markers already present
+        }
+      }
+    }));
+  }
+});
+
+// publication of a structure wide notification
+var structures = db.getCollection("bench.users").distinct("structures");
+var writePublish = [], readPublish = [];
+for (var p = 0; p < publishes; p++) {
+  var s = structures[Math.floor(random() * structures.length)];
+  var doc = {"_id" : "bench-publish-" + p, "type" : "BENCH", "event-type" : "BENCH", "date" : new Date(),
+    "params" : {"uri" : "/bench/publish/" + p}};
+  writePublish.push(time(function() {
+    var recipients = [];
+    db.getCollection("bench.users").find({"structures" : s}, {"_id" : 1}).forEach(function(u) {
+      recipients.push({"userId" : u._id, "unread" : 1});
+    });
+    doc.recipients = recipients;
+    db.getCollection("bench.write").insert(doc);
+  }));
+  readPublish.push(time(function() {
+    db.getCollection("bench.read").insert({"_id" : doc._id, "type" : doc.type, "event-type" : doc["event-type"],
+      "date" : doc.date, "params" : doc.params, "recipients" : [], "groups" : [s]});
+  }));
+}
+db.getCollection("bench.write").remove({"_id" : /^bench-publish-/});
+db.getCollection("bench.read").remove({"_id" : /^bench-publish-/});
+
+print("Users : " + users + ", sampled : " + samples + ", page size : " + limit);
+report("fan-out-on-write read page", writeReads);
+report("fan-out-on-read  read page", readReads);
+if (marks) {
+  report("fan-out-on-write mark read", writeMarks);
+  report("fan-out-on-read  mark read", readMarks);
+}
+report("fan-out-on-write publish to a structure", writePublish);
+report("fan-out-on-read  publish to a structure", readPublish);
+["bench.write", "bench.read", "bench.read.read"].forEach(function(c) {
+  var stats = db.getCollection(c).stats();
+  print(c + " : " + Math.round(stats.size / 1048576) + " MB data, " +
+      Math.round(stats.totalIndexSize / 1048576) + " MB indexes");
+});
@@ -0,0 +1,144 @@
+// Synthetic dataset to compare the fan-out-on-write (default) and fan-out-on-read timeline stores.
+// Run it on a dedicated database, never on a platform one :
+//   mongo timeline_bench --eval "var users = 500000" scripts/timeline/benchmark/generate-dataset.js
+// Parameters (--eval) : users (500000), structures (200), classSize (25), notifications (50000),
+// broadcastRatio (0.05, notifications sent to a whole structure), directRatio (0.25, sent to 1 to 3 users,
+// the others being sent to a class), readRatio (0.5, probability that a recipient has read a notification).
+// Collections :
+//   bench.users                          userId, class group and structure of each user
+//   bench.write                          default store : one recipient entry with read state per user
+//   bench.read / bench.read.read         fan-out-on-read store : classes and structures in "groups",
+//                                        read markers in bench.read.read
+// Both models get the same notifications and the same read states.
+if (typeof users === "undefined") var users = 500000;
+if (typeof structures === "undefined") var structures = 200;
+if (typeof classSize === "undefined") var classSize = 25;
+if (typeof notifications === "undefined") var notifications = 50000;
+if (typeof broadcastRatio === "undefined") var broadcastRatio = 0.05;
+if (typeof directRatio === "undefined") var directRatio = 0.25;
+if (typeof readRatio === "undefined") var readRatio = 0.5;
+
+var usersByStructure = Math.ceil(users / structures);
+var classes = Math.ceil(users / classSize);
+var start = new Date().getTime() - notifications * 60000;
+
+function userId(i) { return "u" + i; }
+function classId(c) { return "c" + c; }
+function structureId(s) { return "s" + s; }
+function structureOf(i) { return Math.floor(i / usersByStructure); }
+function classOf(i) { return Math.floor(i / classSize); }
+
+// deterministic read state, shared by both models
+function isRead(u, n) {
+  var h = (u * 2654435761 + n * 40503) % 1000003;
+  return h / 1000003 < readRatio;
+}
+
+// deterministic pseudo random numbers, the dataset is the same for the same parameters
+var seed = 42;
+function random() {
+  seed = (seed * 16807) % 2147483647;
+  return (seed - 1) / 2147483646;
+}
+
+db.getCollection("bench.users").drop();
+db.getCollection("bench.write").drop();
+db.getCollection("bench.read").drop();
+db.getCollection("bench.read.read").drop();
+
+var bulk = db.getCollection("bench.users").initializeUnorderedBulkOp();
+for (var i = 0; i < users; i++) {
+  bulk.insert({"_id" : userId(i), "groups" : [classId(classOf(i))], "structures" : [structureId(structureOf(i))]});
+  if ((i + 1) % 10000 === 0) {
+    bulk.execute();
+    bulk = db.getCollection("bench.users").initializeUnorderedBulkOp();
+  }
+}
+if (users % 10000 !== 0) {
+  bulk.execute();
+}
+print("Users : " + users);
+
+var write = db.getCollection("bench.write").initializeUnorderedBulkOp();
+var read = db.getCollection("bench.read").initializeUnorderedBulkOp();
+var markers = db.getCollection("bench.read.read").initializeUnorderedBulkOp();
+var pending = 0;
+var markersPending = 0;
+var recipientsCount = 0;
+for (var n = 0; n < notifications; n++) {
+  var id = "n" + n;
+  var r = random();
+  var members = [];
+  var groups = null;
+  if (r < broadcastRatio) {
+    var s = Math.floor(random() * structures);
+    for (var u = s * usersByStructure; u < Math.min(users, (s + 1) * usersByStructure); u++) members.push(u);
+    groups = [structureId(s)];
+  } else if (r < broadcastRatio + directRatio) {
+    var nb = 1 + Math.floor(random() * 3);
+    for (var k = 0; k < nb; k++) {
+      var d = Math.floor(random() * users);
+      if (members.indexOf(d) < 0) members.push(d);
+    }
+  } else {
+    var c = Math.floor(random() * classes);
+    for (var u = c * classSize; u < Math.min(users, (c + 1) * classSize); u++) members.push(u);
+    groups = [classId(c)];
+  }
+  var doc = {"_id" : id, "type" : "BENCH", "event-type" : "BENCH", "resource" : "r" + (n % 1000),
+    "date" : new Date(start + n * 60000), "params" : {"uri" : "/bench/" + n}};
+  var writeRecipients = [];
+  members.forEach(function(u) {
+    var readState = isRead(u, n);
+    writeRecipients.push({"userId" : userId(u), "unread" : readState ? 0 : 1});
+    if (readState) {
+      markers.insert({"_id" : userId(u) + ":" + id, "event" : id});
+      markersPending++;
+    }
+  });
+  recipientsCount += members.length;
+  doc.recipients = writeRecipients;
+  write.insert(doc);
+  var readDoc = {"_id" : id, "type" : doc.type, "event-type" : doc["event-type"], "resource" : doc.resource,
+    "date" : doc.date, "params" : doc.params};
+  if (groups !== null) {
+    readDoc.recipients = [];
+    readDoc.groups = groups;
+  } else {
+    readDoc.recipients = writeRecipients.map(function(e) { return {"userId" : e.userId}; });
+  }
+  read.insert(readDoc);
+  pending++;
+  if (pending === 500) {
+    write.execute();
+    read.execute();
+    write = db.getCollection("bench.write").initializeUnorderedBulkOp();
+    read = db.getCollection("bench.read").initializeUnorderedBulkOp();
+    pending = 0;
+  }
+  if (markersPending >= 10000) {
+    markers.execute();
+    markers = db.getCollection("bench.read.read").initializeUnorderedBulkOp();
+    markersPending = 0;
+  }
+}
+if (pending > 0) {
+  write.execute();
+  read.execute();
+}
+if (markersPending > 0) {
+  markers.execute();
+}
+
+// indexes of each store
+db.getCollection("bench.write").createIndex({"recipients.userId" : 1});
+db.getCollection("bench.read").createIndex({"recipients.userId" : 1});
+db.getCollection("bench.read").createIndex({"groups" : 1, "date" : -1}, {"sparse" : true});
+db.getCollection("bench.read.read").createIndex({"event" : 1});
+
+print("Notifications : " + notifications + ", recipient entries (fan-out-on-write) : " + recipientsCount);
+["bench.write", "bench.read", "bench.read.read"].forEach(function(c) {
+  var stats = db.getCollection(c).stats();
+  print(c + " : " + stats.count + " documents, " + Math.round(stats.size / 1048576) + " MB data, " +
+      Math.round(stats.totalIndexSize / 1048576) + " MB indexes");
+});
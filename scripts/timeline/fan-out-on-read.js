@@ -0,0 +1,39 @@
+// Opt-in conversion of the timeline to the fan-out-on-read model ("fan-out-on-read": true in the timeline config).
+// Read states move from recipients.unread to the timeline.read collection, recipients only keep their userId.
+// Not a versioned migration : run it only when enabling the flag, with the timeline module stopped,
+// the default store can not read the converted read states. fan-out-on-write.js reverts it.
+// Usage : mongo <database> scripts/timeline/fan-out-on-read.js
+db["timeline.read"].createIndex({"event":1});
+db.timeline.createIndex({"groups":1, "date":-1}, {"sparse":true});
+
+var markers = db["timeline.read"].initializeUnorderedBulkOp();
+var notifications = db.timeline.initializeUnorderedBulkOp();
+var count = 0;
+var markersCount = 0;
+db.timeline.find({"recipients.unread" : {"$exists" : true}}, {"_id":1, "recipients":1}).forEach(function(doc) {
+  var recipients = [];
+  doc.recipients.forEach(function(r) {
+    recipients.push({"userId" : r.userId});
+    if (r.unread === 0) {
+      markers.find({"_id" : r.userId + ":" + doc._id}).upsert().updateOne({"$set" : {"event" : doc._id}});
+      markersCount++;
+    }
+  });
+  notifications.find({"_id" : doc._id}).updateOne({"$set" : {"recipients" : recipients}});
+  count++;
+  if (count % 1000 === 0) {
+    if (markersCount > 0) {
+      markers.execute();
+      markers = db["timeline.read"].initializeUnorderedBulkOp();
+      markersCount = 0;
+    }
+    notifications.execute();
+    notifications = db.timeline.initializeUnorderedBulkOp();
+  }
+});
+if (markersCount > 0) {
+  markers.execute();
+}
+if (count % 1000 !== 0) {
+  notifications.execute();
+}
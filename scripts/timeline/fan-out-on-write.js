@@ -0,0 +1,39 @@
+// Reverse of fan-out-on-read.js, to go back to the default timeline store ("fan-out-on-read": false or absent).
+// Read markers of timeline.read are merged back into recipients.unread.
+// Notifications addressed to groups only (no user recipient) can't be expanded from MongoDB
+// and stay invisible to the default store : their count is printed.
+// Run it with the timeline module stopped.
+// Usage : mongo <database> scripts/timeline/fan-out-on-write.js
+var notifications = db.timeline.initializeUnorderedBulkOp();
+var count = 0;
+var pending = 0;
+var groupsOnly = 0;
+db.timeline.find({"recipients.unread" : {"$exists" : false}}, {"_id":1, "recipients":1, "groups":1}).forEach(function(doc) {
+  if (!doc.recipients || doc.recipients.length === 0) {
+    if (doc.groups && doc.groups.length > 0) {
+      groupsOnly++;
+    }
+    return;
+  }
+  var read = {};
+  db["timeline.read"].find({"event" : doc._id}, {"_id":1}).forEach(function(marker) {
+    read[marker._id] = true;
+  });
+  var recipients = [];
+  doc.recipients.forEach(function(r) {
+    recipients.push({"userId" : r.userId, "unread" : read[r.userId + ":" + doc._id] ? 0 : 1});
+  });
+  notifications.find({"_id" : doc._id}).updateOne({"$set" : {"recipients" : recipients}});
+  count++;
+  pending++;
+  if (pending === 1000) {
+    notifications.execute();
+    notifications = db.timeline.initializeUnorderedBulkOp();
+    pending = 0;
+  }
+});
+if (pending > 0) {
+  notifications.execute();
+}
+print("Notifications restored : " + count + ", addressed to groups only : " + groupsOnly);
+print("timeline.read can be dropped once the default store is running : db[\"timeline.read\"].drop()");
@@ -27,6 +27,7 @@ import org.vertx.java.busmods.BusModBase;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.impl.VertxInternal;
+import org.vertx.java.core.json.DecodeException;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.core.shareddata.ConcurrentSharedMap;
@@ -37,17 +38,37 @@ import java.util.*;
 
 public class AuthManager extends BusModBase implements Handler<Message<JsonObject>> {
 
-	protected Map<String, String> sessions;
+	protected Map<String, Object> sessions;
 	protected Map<String, List<LoginInfo>> logins;
 
 	private static final long DEFAULT_SESSION_TIMEOUT = 30 * 60 * 1000;
 	private static final String SESSIONS_COLLECTION = "sessions";
+	private static final String INVALIDATION_ADDRESS = "wse.session.invalidate";
+	private static final String APP_REGISTRY_INVALIDATIONS_ADDRESS = "app.registry.invalidations";
+	private static final long DEFAULT_GROUPS_CACHE_TTL = 5 * 60 * 1000;
+	private static final int DEFAULT_GROUPS_CACHE_SIZE = 10000;
+	private static final long DEFAULT_STRUCTURES_CACHE_TTL = 60 * 60 * 1000;
+	private static final long DEFAULT_EXPIRY_TICK = 1000;
 
 	private long sessionTimeout;
+	private boolean slidingExpiration;
+	private ExpiryWheel<String> expiry;
+	private long expiredSessions;
+	private long lastSweepExpired;
+	private long lastSweepDuration;
+	private long lastSweepTime;
+	private double expirationsPerSecond;
 	private String neo4jAddress;
 	private MongoDb mongo;
+	private boolean binarySessions;
+	private JsonObject structureMapping;
+	private long structureMappingExpires;
+	private long structuresCacheTtl;
+	private Map<String, CachedGroupsInfos> groupsInfos;
+	private long groupsCacheTtl;
 
 	private static final class LoginInfo implements Serializable {
+		// unused since expiry is handled by the expiry wheel, kept for serialization compatibility
 		final long timerId;
 		final String sessionId;
 
@@ -57,6 +78,16 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		}
 	}
 
+	private static final class CachedGroupsInfos {
+		final JsonObject infos;
+		final long expires;
+
+		private CachedGroupsInfos(JsonObject infos, long expires) {
+			this.infos = infos;
+			this.expires = expires;
+		}
+	}
+
 	public void start() {
 		super.start();
 		ConcurrentSharedMap<Object, Object> server = vertx.sharedData().getMap("server");
@@ -73,6 +104,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 			sessions = new HashMap<>();
 			logins = new HashMap<>();
 		}
+		binarySessions = config.getBoolean("binary-sessions", false);
 		final String address = getOptionalStringConfig("address", "wse.session");
 		Number timeout = config.getNumber("session_timeout");
 		if (timeout != null) {
@@ -84,8 +116,39 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		} else {
 			this.sessionTimeout = DEFAULT_SESSION_TIMEOUT;
 		}
+		slidingExpiration = config.getBoolean("sliding-expiration", false);
+		final long expiryTick = config.getLong("expiry-tick", DEFAULT_EXPIRY_TICK);
+		expiry = new ExpiryWheel<>(expiryTick);
+		lastSweepTime = System.currentTimeMillis();
+		vertx.setPeriodic(expiryTick, new Handler<Long>() {
+			@Override
+			public void handle(Long event) {
+				sweepExpiredSessions();
+			}
+		});
+
+		structuresCacheTtl = config.getLong("structures-cache-ttl", DEFAULT_STRUCTURES_CACHE_TTL);
+		groupsCacheTtl = config.getLong("groups-cache-ttl", DEFAULT_GROUPS_CACHE_TTL);
+		final int groupsCacheSize = config.getInteger("groups-cache-size", DEFAULT_GROUPS_CACHE_SIZE);
+		groupsInfos = new LinkedHashMap<String, CachedGroupsInfos>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedGroupsInfos> eldest) {
+				return size() > groupsCacheSize;
+			}
+		};
 
 		eb.registerLocalHandler(address, this);
+		eb.registerHandler(APP_REGISTRY_INVALIDATIONS_ADDRESS, new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> event) {
+				String type = event.body().getString("type");
+				if ("PROFILE_GROUP_ACTIONS_UPDATED".equals(type)) {
+					invalidateCaches(false);
+				} else if ("IMPORT_SUCCEEDED".equals(type)) {
+					invalidateCaches(true);
+				}
+			}
+		});
 	}
 
 	@Override
@@ -119,6 +182,12 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		case "removeAttribute":
 			doRemoveAttribute(message);
 			break;
+		case "stats":
+			doStats(message);
+			break;
+		case "touch":
+			doTouch(message);
+			break;
 		default:
 			sendError(message, "Invalid action: " + action);
 		}
@@ -176,7 +245,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		}
 		JsonObject session = null;
 		try {
-			session = unmarshal(sessions.get(info.sessionId));
+			session = getSession(info.sessionId);
 		} catch (HazelcastSerializationException e) {
 			logger.error("Error in deserializing hazelcast session " + info.sessionId, e);
 		}
@@ -195,11 +264,43 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		return null;
 	}
 
-	private JsonObject unmarshal(String s) {
-		if (s != null) {
-			return new JsonObject(s);
+	private JsonObject unmarshal(Object s) {
+		try {
+			return SessionCodec.unmarshal(s);
+		} catch (IllegalStateException | DecodeException e) {
+			logger.error("Error decoding session, handled as not found.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the session, or null when it is missing or can't be decoded.
+	 * Undecodable entries are dropped from the sessions map.
+	 */
+	private JsonObject getSession(String sessionId) {
+		final Object s = sessions.get(sessionId);
+		final JsonObject session = unmarshal(s);
+		if (session == null && s != null) {
+			logger.warn("Dropping undecodable session " + sessionId);
+			if (sessions instanceof BaseMap) {
+				((BaseMap) sessions).delete(sessionId);
+			} else {
+				sessions.remove(sessionId);
+			}
+		}
+		return session;
+	}
+
+	private Object marshal(JsonObject session) {
+		return SessionCodec.marshal(session, binarySessions);
+	}
+
+	// activity of a session served from a session cache, no reply
+	private void doTouch(final Message<JsonObject> message) {
+		final String sessionId = message.body().getString("sessionId");
+		if (slidingExpiration && sessionId != null) {
+			expiry.touch(sessionId, sessionTimeout);
 		}
-		return null;
 	}
 
 	private void doFind(final Message<JsonObject> message) {
@@ -211,7 +312,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 
 		JsonObject session = null;
 		try {
-			session = unmarshal(sessions.get(sessionId));
+			session = getSession(sessionId);
 		} catch (HazelcastSerializationException e) {
 			logger.warn("Error in deserializing hazelcast session " + sessionId);
 			try {
@@ -241,7 +342,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 							public void handle(String sId) {
 								if (sId != null) {
 									try {
-										JsonObject s = unmarshal(sessions.get(sId));
+										JsonObject s = getSession(sId);
 										if (s != null) {
 											JsonObject sessionResponse = new JsonObject().putString("status", "ok")
 													.putObject("session", s);
@@ -276,6 +377,9 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 				}
 			});
 		} else {
+			if (slidingExpiration) {
+				expiry.touch(sessionId, sessionTimeout);
+			}
 			sendOK(message, new JsonObject().putString("status", "ok").putObject("session", session));
 		}
 	}
@@ -310,22 +414,17 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 			@Override
 			public void handle(JsonObject infos) {
 				if (infos != null) {
-					long timerId = vertx.setTimer(sessionTimeout, new Handler<Long>() {
-						public void handle(Long timerId) {
-							logins.remove(userId);
-							sessions.remove(sessionId);
-						}
-					});
+					expiry.schedule(sessionId, userId, sessionTimeout);
 					try {
-						sessions.put(sessionId, infos.encode());
-						addLoginInfo(userId, timerId, sessionId);
+						sessions.put(sessionId, marshal(infos));
+						addLoginInfo(userId, sessionId);
 					} catch (HazelcastSerializationException e) {
 						logger.error("Error putting session in hazelcast map");
 						try {
 							if (sessions instanceof IMap) {
-								((IMap) sessions).putAsync(sessionId, infos.encode());
+								((IMap) sessions).putAsync(sessionId, marshal(infos));
 							}
-							addLoginInfo(userId, timerId, sessionId);
+							addLoginInfo(userId, sessionId);
 						} catch (HazelcastSerializationException e1) {
 							logger.error("Error putting async session in hazelcast map", e1);
 						}
@@ -351,12 +450,12 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		});
 	}
 
-	private void addLoginInfo(String userId, long timerId, String sessionId) {
+	private void addLoginInfo(String userId, String sessionId) {
 		List<LoginInfo> loginInfos = logins.get(userId);
 		if (loginInfos == null) {
 			loginInfos = new ArrayList<>();
 		}
-		loginInfos.add(new LoginInfo(timerId, sessionId));
+		loginInfos.add(new LoginInfo(-1, sessionId));
 		logins.put(userId, loginInfos);
 	}
 
@@ -384,9 +483,10 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 
 	private void dropSession(Message<JsonObject> message, String sessionId, JsonObject meta) {
 		mongo.delete(SESSIONS_COLLECTION, new JsonObject().putString("_id", sessionId));
+		invalidateNearCaches(sessionId, null);
 		JsonObject session =  null;
 		try {
-			session = unmarshal(sessions.get(sessionId));
+			session = getSession(sessionId);
 		} catch (HazelcastSerializationException e) {
 			try {
 				if (sessions instanceof BaseMap) {
@@ -406,14 +506,12 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		JsonObject s =  unmarshal(sessions.remove(sessionId));
 		if (s != null) {
 			final String userId = s.getString("userId");
-			LoginInfo info = removeLoginInfo(sessionId, userId);
+			removeLoginInfo(sessionId, userId);
 			if (config.getBoolean("slo", false)) {
 				eb.send("cas", new JsonObject().putString("action", "logout").putString("userId", userId));
 			}
-			if (info != null) {
-				vertx.cancelTimer(info.timerId);
-			}
 		}
+		expiry.cancel(sessionId);
 		JsonObject res = new JsonObject().putString("status", "ok");
 		if (meta != null) {
 			res.putObject("sessionMetadata", meta);
@@ -485,7 +583,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		}
 		JsonObject session =  null;
 		try {
-			session = unmarshal(sessions.get(info.sessionId));
+			session = getSession(info.sessionId);
 		} catch (HazelcastSerializationException e) {
 			logger.error("Error in deserializing hazelcast session " + info.sessionId, e);
 		}
@@ -508,13 +606,60 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 			sendError(message, "[updateSessionByUserId] info is null - Invalid userId : " + message.body().encode());
 			return;
 		}
+		final Object s = marshal(session);
 		for (LoginInfo info : infos) {
 			try {
-				sessions.put(info.sessionId, session.encode());
+				sessions.put(info.sessionId, s);
 			} catch (HazelcastSerializationException e) {
 				logger.error("Error putting session in hazelcast map : " + info.sessionId, e);
 			}
 		}
+		invalidateNearCaches(null, userId);
+	}
+
+	private void sweepExpiredSessions() {
+		final long start = System.currentTimeMillis();
+		final List<Map.Entry<String, String>> expired = expiry.sweep();
+		for (Map.Entry<String, String> e : expired) {
+			try {
+				logins.remove(e.getValue());
+				sessions.remove(e.getKey());
+			} catch (HazelcastSerializationException ex) {
+				logger.error("Error removing expired session " + e.getKey(), ex);
+			}
+			invalidateNearCaches(e.getKey(), null);
+		}
+		final long end = System.currentTimeMillis();
+		expiredSessions += expired.size();
+		lastSweepExpired = expired.size();
+		lastSweepDuration = end - start;
+		if (end > lastSweepTime) {
+			expirationsPerSecond = expired.size() * 1000.0 / (end - lastSweepTime);
+		}
+		lastSweepTime = end;
+		if (lastSweepDuration > 1000) {
+			logger.warn("Session expiry sweep took " + lastSweepDuration + " ms for " + expired.size() + " sessions.");
+		}
+	}
+
+	private void doStats(Message<JsonObject> message) {
+		sendOK(message, new JsonObject()
+				.putNumber("liveSessions", expiry.size())
+				.putNumber("expiredSessions", expiredSessions)
+				.putNumber("lastSweepExpired", lastSweepExpired)
+				.putNumber("expirationsPerSecond", expirationsPerSecond)
+				.putNumber("lastSweepDuration", lastSweepDuration));
+	}
+
+	private void invalidateNearCaches(String sessionId, String userId) {
+		JsonObject m = new JsonObject();
+		if (sessionId != null) {
+			m.putString("sessionId", sessionId);
+		}
+		if (userId != null) {
+			m.putString("userId", userId);
+		}
+		eb.publish(INVALIDATION_ADDRESS, m);
 	}
 
 	private void doRemoveAttribute(Message<JsonObject> message) {
@@ -551,6 +696,63 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 				"COLLECT(distinct s.id) as structures, COLLECT(distinct [f.externalId, rf.scope]) as functions, " +
 				"COLLECT(distinct s.name) as structureNames, COLLECT(distinct s.UAI) as uai, " +
 				"COLLECT(distinct gp.id) as groupsIds, n.federatedIDP as federatedIDP, n.functions as aafFunctions";
+		final String query5 = "MATCH (u:User {id: {id}})-[:PREFERS]->(uac:UserAppConf) RETURN uac AS preferences";
+		JsonObject params = new JsonObject();
+		params.putString("id", userId);
+		final boolean loadStructures = structureMapping == null ||
+				structureMappingExpires < System.currentTimeMillis();
+		JsonArray statements = new JsonArray()
+				.add(new JsonObject().putString("statement", query).putObject("parameters", params))
+				.add(new JsonObject().putString("statement", query5).putObject("parameters", params));
+		if (loadStructures) {
+			statements.add(new JsonObject().putString("statement",
+					"MATCH (s:Structure) return s.id as id, s.externalId as externalId"));
+		}
+		executeTransaction(statements, null, true, new Handler<Message<JsonObject>>() {
+
+			@Override
+			public void handle(Message<JsonObject> message) {
+				final JsonArray results = message.body().getArray("results");
+				if ("ok".equals(message.body().getString("status")) && results != null &&
+						results.size() == (loadStructures ? 3 : 2) && results.<JsonArray>get(0).size() > 0) {
+					if (loadStructures) {
+						JsonObject mapping = new JsonObject();
+						for (Object o : results.<JsonArray>get(2)) {
+							if (!(o instanceof JsonObject)) continue;
+							JsonObject jsonObject = (JsonObject) o;
+							mapping.putString(jsonObject.getString("externalId"), jsonObject.getString("id"));
+						}
+						structureMapping = mapping;
+						structureMappingExpires = System.currentTimeMillis() + structuresCacheTtl;
+					}
+					final JsonObject structures = structureMapping;
+					final JsonObject j = results.<JsonArray>get(0).get(0);
+					final JsonObject cache = (results.<JsonArray>get(1) != null && results.<JsonArray>get(1).size() > 0 &&
+							results.<JsonArray>get(1).get(0) != null) ? results.<JsonArray>get(1).<JsonObject>get(0) : new JsonObject();
+					getGroupsInfos(userId, j.getArray("groupsIds", new JsonArray()), new Handler<JsonObject>() {
+						@Override
+						public void handle(JsonObject infos) {
+							if (infos != null) {
+								handler.handle(buildSessionInfos(userId, j, infos, cache, structures));
+							} else {
+								handler.handle(null);
+							}
+						}
+					});
+				} else {
+					handler.handle(null);
+				}
+			}
+		});
+	}
+
+	private void getGroupsInfos(final String userId, JsonArray groupsIds, final Handler<JsonObject> handler) {
+		final String signature = groupsSignature(groupsIds);
+		final CachedGroupsInfos cached = groupsInfos.get(signature);
+		if (cached != null && cached.expires >= System.currentTimeMillis()) {
+			handler.handle(cached.infos.copy());
+			return;
+		}
 		final String query2 =
 				"MATCH (n:User {id : {id}})-[:IN]->()-[:AUTHORIZED]->(:Role)-[:AUTHORIZE]->(a:Action)" +
 				"<-[:PROVIDE]-(app:Application) " +
@@ -572,34 +774,20 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 					"application: app.name, " +
 					"mandatory: ANY(a IN authorizations WHERE HAS(a.mandatory) AND a.mandatory = true)"+
 				"}) as widgets";
-		final String query4 = "MATCH (s:Structure) return s.id as id, s.externalId as externalId";
-		final String query5 = "MATCH (u:User {id: {id}})-[:PREFERS]->(uac:UserAppConf) RETURN uac AS preferences";
 		JsonObject params = new JsonObject();
 		params.putString("id", userId);
 		JsonArray statements = new JsonArray()
-				.add(new JsonObject().putString("statement", query).putObject("parameters", params))
 				.add(new JsonObject().putString("statement", query2).putObject("parameters", params))
-				.add(new JsonObject().putString("statement", query3).putObject("parameters", params))
-				.add(new JsonObject().putString("statement", query4))
-				.add(new JsonObject().putString("statement", query5).putObject("parameters", params));
+				.add(new JsonObject().putString("statement", query3).putObject("parameters", params));
 		executeTransaction(statements, null, true, new Handler<Message<JsonObject>>() {
 
 			@Override
 			public void handle(Message<JsonObject> message) {
 				JsonArray results = message.body().getArray("results");
-				if ("ok".equals(message.body().getString("status")) && results != null && results.size() == 5 &&
-						results.<JsonArray>get(0).size() > 0 && results.<JsonArray>get(1).size() > 0) {
-					JsonObject j = results.<JsonArray>get(0).get(0);
-					JsonObject j2 = results.<JsonArray>get(1).get(0);
-					JsonObject j3 = results.<JsonArray>get(2).get(0);
-					JsonObject structureMapping = new JsonObject();
-					for (Object o : results.<JsonArray>get(3)) {
-						if (!(o instanceof JsonObject)) continue;
-						JsonObject jsonObject = (JsonObject) o;
-						structureMapping.putString(jsonObject.getString("externalId"), jsonObject.getString("id"));
-					}
-					j.putString("userId", userId);
-					JsonObject functions = new JsonObject();
+				if ("ok".equals(message.body().getString("status")) && results != null && results.size() == 2 &&
+						results.<JsonArray>get(0).size() > 0) {
+					JsonObject j2 = results.<JsonArray>get(0).get(0);
+					JsonObject j3 = results.<JsonArray>get(1).get(0);
 					JsonArray actions = new JsonArray();
 					JsonArray apps = new JsonArray();
 					for (Object o : j2.getArray("authorizedActions", new JsonArray())) {
@@ -623,57 +811,13 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 								.putString("prefix", (String) a.get(6))
 						);
 					}
-					for (Object o : j.getArray("aafFunctions", new JsonArray())) {
-						if (o == null) continue;
-						String [] sf = o.toString().split("\\$");
-						if (sf.length == 5) {
-							JsonObject jo = functions.getObject(sf[1]);
-							if (jo == null) {
-								jo = new JsonObject().putString("code", sf[1])
-										.putString("functionName", sf[2])
-										.putArray("scope", new JsonArray())
-										.putArray("structureExternalIds", new JsonArray())
-										.putObject("subjects", new JsonObject());
-								functions.putObject(sf[1], jo);
-							}
-							JsonObject subject = jo.getObject("subjects").getObject(sf[3]);
-							if (subject == null) {
-								subject = new JsonObject()
-										.putString("subjectCode", sf[3])
-										.putString("subjectName", sf[4])
-										.putArray("scope", new JsonArray())
-										.putArray("structureExternalIds", new JsonArray());
-								jo.getObject("subjects").putObject(sf[3], subject);
-							}
-							jo.getArray("structureExternalIds").addString(sf[0]);
-							subject.getArray("structureExternalIds").addString(sf[0]);
-							String sid = structureMapping.getString(sf[0]);
-							if (sid != null) {
-								jo.getArray("scope").addString(sid);
-								subject.getArray("scope").addString(sid);
-							}
-						}
-					}
-					j.removeField("aafFunctions");
-					for (Object o : j.getArray("functions", new JsonArray())) {
-						if (!(o instanceof JsonArray)) continue;
-						JsonArray a = (JsonArray) o;
-						String code = a.get(0);
-						if (code != null) {
-							functions.putObject(code, new JsonObject()
-									.putString("code", code)
-									.putArray("scope", (JsonArray) a.get(1))
-							);
-						}
-					}
-					j.putObject("functions", functions);
-					j.putArray("authorizedActions", actions);
-					j.putArray("apps", apps);
-					final JsonObject cache = (results.<JsonArray>get(4) != null && results.<JsonArray>get(4).size() > 0 &&
-							results.<JsonArray>get(4).get(0) != null) ? results.<JsonArray>get(4).<JsonObject>get(0) : new JsonObject();
-					j.putObject("cache", cache);
-					j.putArray("widgets", j3.getArray("widgets", new JsonArray()));
-					handler.handle(j);
+					JsonObject infos = new JsonObject()
+							.putArray("authorizedActions", actions)
+							.putArray("apps", apps)
+							.putArray("widgets", j3.getArray("widgets", new JsonArray()));
+					groupsInfos.put(signature, new CachedGroupsInfos(infos.copy(),
+							System.currentTimeMillis() + groupsCacheTtl));
+					handler.handle(infos);
 				} else {
 					handler.handle(null);
 				}
@@ -681,6 +825,83 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		});
 	}
 
+	private static String groupsSignature(JsonArray groupsIds) {
+		List<String> ids = new ArrayList<>(groupsIds.size());
+		for (Object o : groupsIds) {
+			if (o != null) {
+				ids.add(o.toString());
+			}
+		}
+		Collections.sort(ids);
+		StringBuilder sb = new StringBuilder();
+		for (String id : ids) {
+			sb.append(id).append(',');
+		}
+		return sb.toString();
+	}
+
+	private JsonObject buildSessionInfos(String userId, JsonObject j, JsonObject groupsInfos, JsonObject cache,
+			JsonObject structureMapping) {
+		j.putString("userId", userId);
+		JsonObject functions = new JsonObject();
+		for (Object o : j.getArray("aafFunctions", new JsonArray())) {
+			if (o == null) continue;
+			String [] sf = o.toString().split("\\$");
+			if (sf.length == 5) {
+				JsonObject jo = functions.getObject(sf[1]);
+				if (jo == null) {
+					jo = new JsonObject().putString("code", sf[1])
+							.putString("functionName", sf[2])
+							.putArray("scope", new JsonArray())
+							.putArray("structureExternalIds", new JsonArray())
+							.putObject("subjects", new JsonObject());
+					functions.putObject(sf[1], jo);
+				}
+				JsonObject subject = jo.getObject("subjects").getObject(sf[3]);
+				if (subject == null) {
+					subject = new JsonObject()
+							.putString("subjectCode", sf[3])
+							.putString("subjectName", sf[4])
+							.putArray("scope", new JsonArray())
+							.putArray("structureExternalIds", new JsonArray());
+					jo.getObject("subjects").putObject(sf[3], subject);
+				}
+				jo.getArray("structureExternalIds").addString(sf[0]);
+				subject.getArray("structureExternalIds").addString(sf[0]);
+				String sid = structureMapping.getString(sf[0]);
+				if (sid != null) {
+					jo.getArray("scope").addString(sid);
+					subject.getArray("scope").addString(sid);
+				}
+			}
+		}
+		j.removeField("aafFunctions");
+		for (Object o : j.getArray("functions", new JsonArray())) {
+			if (!(o instanceof JsonArray)) continue;
+			JsonArray a = (JsonArray) o;
+			String code = a.get(0);
+			if (code != null) {
+				functions.putObject(code, new JsonObject()
+						.putString("code", code)
+						.putArray("scope", (JsonArray) a.get(1))
+				);
+			}
+		}
+		j.putObject("functions", functions);
+		j.putArray("authorizedActions", groupsInfos.getArray("authorizedActions"));
+		j.putArray("apps", groupsInfos.getArray("apps"));
+		j.putObject("cache", cache);
+		j.putArray("widgets", groupsInfos.getArray("widgets"));
+		return j;
+	}
+
+	private void invalidateCaches(boolean structures) {
+		groupsInfos.clear();
+		if (structures) {
+			structureMappingExpires = 0;
+		}
+	}
+
 	public void executeTransaction(JsonArray statements, Integer transactionId, boolean commit,
 			Handler<Message<JsonObject>> handler) {
 		JsonObject jo = new JsonObject();
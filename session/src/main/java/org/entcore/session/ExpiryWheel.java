@@ -0,0 +1,109 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bucketed expiry scheduler : entries are grouped by expiration tick, so that
+ * scheduling, extending and cancelling are O(1) and a single periodic sweep
+ * expires every due entry in batch. Not thread safe.
+ */
+public class ExpiryWheel<V> {
+
+	private final long tickDuration;
+	private final Map<Long, Map<String, V>> buckets = new HashMap<>();
+	private final Map<String, Long> deadlines = new HashMap<>();
+	private long lastSweptTick;
+
+	public ExpiryWheel(long tickDuration) {
+		this.tickDuration = tickDuration;
+		this.lastSweptTick = now() / tickDuration;
+	}
+
+	public void schedule(String key, V value, long timeout) {
+		cancel(key);
+		long tick = (now() + timeout + tickDuration - 1) / tickDuration;
+		if (tick <= lastSweptTick) {
+			tick = lastSweptTick + 1;
+		}
+		Map<String, V> bucket = buckets.get(tick);
+		if (bucket == null) {
+			bucket = new LinkedHashMap<>();
+			buckets.put(tick, bucket);
+		}
+		bucket.put(key, value);
+		deadlines.put(key, tick);
+	}
+
+	public boolean touch(String key, long timeout) {
+		Long tick = deadlines.get(key);
+		if (tick == null) {
+			return false;
+		}
+		V value = buckets.get(tick).get(key);
+		schedule(key, value, timeout);
+		return true;
+	}
+
+	public V cancel(String key) {
+		Long tick = deadlines.remove(key);
+		if (tick == null) {
+			return null;
+		}
+		Map<String, V> bucket = buckets.get(tick);
+		V value = bucket.remove(key);
+		if (bucket.isEmpty()) {
+			buckets.remove(tick);
+		}
+		return value;
+	}
+
+	public List<Map.Entry<String, V>> sweep() {
+		final long currentTick = now() / tickDuration;
+		final List<Map.Entry<String, V>> expired = new ArrayList<>();
+		for (long t = lastSweptTick + 1; t <= currentTick; t++) {
+			Map<String, V> bucket = buckets.remove(t);
+			if (bucket != null) {
+				for (Map.Entry<String, V> e : bucket.entrySet()) {
+					deadlines.remove(e.getKey());
+					expired.add(e);
+				}
+			}
+		}
+		if (currentTick > lastSweptTick) {
+			lastSweptTick = currentTick;
+		}
+		return expired;
+	}
+
+	public int size() {
+		return deadlines.size();
+	}
+
+	long now() {
+		return System.currentTimeMillis();
+	}
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.session;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary form of a session, stored as byte[] in the sessions map.
+ * Sessions written by older nodes as JSON strings are still readable.
+ * Unknown versions and corrupt entries are rejected with an IllegalStateException.
+ */
+public final class SessionCodec {
+
+	private static final byte VERSION = 1;
+
+	private static final byte NULL = 0;
+	private static final byte TRUE = 1;
+	private static final byte FALSE = 2;
+	private static final byte INT = 3;
+	private static final byte LONG = 4;
+	private static final byte DOUBLE = 5;
+	private static final byte STRING = 6;
+	private static final byte OBJECT = 7;
+	private static final byte ARRAY = 8;
+	private static final byte BINARY = 9;
+
+	private SessionCodec() {}
+
+	public static Object marshal(JsonObject session, boolean binary) {
+		if (session == null) {
+			return null;
+		}
+		return binary ? encode(session) : session.encode();
+	}
+
+	public static JsonObject unmarshal(Object s) {
+		if (s instanceof byte[]) {
+			return decode((byte[]) s);
+		} else if (s instanceof String) {
+			return new JsonObject((String) s);
+		}
+		return null;
+	}
+
+	public static byte[] encode(JsonObject session) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+		DataOutputStream out = new DataOutputStream(bos);
+		try {
+			out.writeByte(VERSION);
+			writeMap(out, session.toMap());
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException("Error encoding session.", e);
+		}
+		return bos.toByteArray();
+	}
+
+	public static JsonObject decode(byte[] bytes) {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		try {
+			byte version = in.readByte();
+			if (version != VERSION) {
+				throw new IllegalStateException("Unsupported session format version : " + version);
+			}
+			byte type = in.readByte();
+			if (type != OBJECT) {
+				throw new IOException("Invalid session root type : " + type);
+			}
+			return new JsonObject(readMap(in));
+		} catch (IOException e) {
+			throw new IllegalStateException("Error decoding session.", e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+		} else if (value instanceof String) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		} else if (value instanceof Boolean) {
+			out.writeByte((Boolean) value ? TRUE : FALSE);
+		} else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			out.writeByte(INT);
+			out.writeInt(((Number) value).intValue());
+		} else if (value instanceof Long) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		} else if (value instanceof Number) {
+			out.writeByte(DOUBLE);
+			out.writeDouble(((Number) value).doubleValue());
+		} else if (value instanceof Map) {
+			writeMap(out, (Map<String, Object>) value);
+		} else if (value instanceof JsonObject) {
+			writeMap(out, ((JsonObject) value).toMap());
+		} else if (value instanceof List) {
+			writeList(out, (List<Object>) value);
+		} else if (value instanceof JsonArray) {
+			writeList(out, ((JsonArray) value).toList());
+		} else if (value instanceof byte[]) {
+			out.writeByte(BINARY);
+			out.writeInt(((byte[]) value).length);
+			out.write((byte[]) value);
+		} else {
+			out.writeByte(STRING);
+			writeString(out, value.toString());
+		}
+	}
+
+	private static void writeMap(DataOutputStream out, Map<String, Object> map) throws IOException {
+		out.writeByte(OBJECT);
+		out.writeInt(map.size());
+		for (Map.Entry<String, Object> e : map.entrySet()) {
+			writeString(out, e.getKey());
+			writeValue(out, e.getValue());
+		}
+	}
+
+	private static void writeList(DataOutputStream out, List<Object> list) throws IOException {
+		out.writeByte(ARRAY);
+		out.writeInt(list.size());
+		for (Object o : list) {
+			writeValue(out, o);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+			case NULL:
+				return null;
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case INT:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case DOUBLE:
+				return in.readDouble();
+			case STRING:
+				return readString(in);
+			case OBJECT:
+				return readMap(in);
+			case ARRAY:
+				return readList(in);
+			case BINARY:
+				byte[] b = new byte[readSize(in)];
+				in.readFully(b);
+				return b;
+			default:
+				throw new IOException("Invalid session value type : " + type);
+		}
+	}
+
+	private static Map<String, Object> readMap(DataInputStream in) throws IOException {
+		int size = readSize(in);
+		Map<String, Object> map = new HashMap<>(size * 4 / 3 + 1);
+		for (int i = 0; i < size; i++) {
+			String key = readString(in);
+			map.put(key, readValue(in));
+		}
+		return map;
+	}
+
+	private static List<Object> readList(DataInputStream in) throws IOException {
+		int size = readSize(in);
+		List<Object> list = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(readValue(in));
+		}
+		return list;
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] b = new byte[readSize(in)];
+		in.readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads a length or a count, which can't exceed the remaining bytes in a valid entry.
+	 */
+	private static int readSize(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		if (size < 0 || size > in.available()) {
+			throw new IOException("Invalid session size : " + size);
+		}
+		return size;
+	}
+
+}
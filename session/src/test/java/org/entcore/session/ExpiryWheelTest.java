@@ -0,0 +1,145 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.session;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ExpiryWheelTest {
+
+	private static final long TICK = 1000l;
+
+	private long clock;
+	private ExpiryWheel<String> wheel;
+
+	@Before
+	public void setUp() {
+		clock = 100 * TICK;
+		wheel = new ExpiryWheel<String>(TICK) {
+			@Override
+			long now() {
+				return clock;
+			}
+		};
+	}
+
+	@Test
+	public void expiresOnDeadlineTick() {
+		wheel.schedule("s1", "v1", 2 * TICK);
+		clock += TICK;
+		assertTrue(wheel.sweep().isEmpty());
+		assertEquals(1, wheel.size());
+		clock += TICK;
+		final List<Map.Entry<String, String>> expired = wheel.sweep();
+		assertEquals(1, expired.size());
+		assertEquals("s1", expired.get(0).getKey());
+		assertEquals("v1", expired.get(0).getValue());
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void roundsPartialTicksUp() {
+		wheel.schedule("s1", "v1", TICK / 2);
+		assertTrue(wheel.sweep().isEmpty());
+		clock += TICK;
+		assertEquals(1, wheel.sweep().size());
+	}
+
+	@Test
+	public void neverSchedulesInAlreadySweptTick() {
+		clock += 5 * TICK;
+		wheel.sweep();
+		wheel.schedule("s1", "v1", 0);
+		assertEquals(1, wheel.size());
+		assertTrue(wheel.sweep().isEmpty());
+		clock += TICK;
+		assertEquals(1, wheel.sweep().size());
+	}
+
+	@Test
+	public void touchSlidesDeadline() {
+		wheel.schedule("s1", "v1", 2 * TICK);
+		clock += TICK;
+		assertTrue(wheel.touch("s1", 2 * TICK));
+		clock += TICK;
+		assertTrue(wheel.sweep().isEmpty());
+		clock += TICK;
+		final List<Map.Entry<String, String>> expired = wheel.sweep();
+		assertEquals(1, expired.size());
+		assertEquals("v1", expired.get(0).getValue());
+	}
+
+	@Test
+	public void touchUnknownKey() {
+		assertFalse(wheel.touch("unknown", TICK));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void rescheduleReplacesEntry() {
+		wheel.schedule("s1", "v1", TICK);
+		wheel.schedule("s1", "v2", 3 * TICK);
+		assertEquals(1, wheel.size());
+		clock += 2 * TICK;
+		assertTrue(wheel.sweep().isEmpty());
+		clock += TICK;
+		assertEquals("v2", wheel.sweep().get(0).getValue());
+	}
+
+	@Test
+	public void cancel() {
+		wheel.schedule("s1", "v1", TICK);
+		assertEquals("v1", wheel.cancel("s1"));
+		assertNull(wheel.cancel("s1"));
+		assertEquals(0, wheel.size());
+		clock += 2 * TICK;
+		assertTrue(wheel.sweep().isEmpty());
+	}
+
+	@Test
+	public void sweepCatchesUpSkippedTicks() {
+		wheel.schedule("s1", "v1", TICK);
+		wheel.schedule("s2", "v2", 3 * TICK);
+		wheel.schedule("s3", "v3", 10 * TICK);
+		clock += 5 * TICK;
+		final List<Map.Entry<String, String>> expired = wheel.sweep();
+		assertEquals(2, expired.size());
+		assertEquals("s1", expired.get(0).getKey());
+		assertEquals("s2", expired.get(1).getKey());
+		assertEquals(1, wheel.size());
+		assertTrue(wheel.sweep().isEmpty());
+	}
+
+	@Test
+	public void sweepsBucketInSchedulingOrder() {
+		wheel.schedule("s2", "v2", TICK);
+		wheel.schedule("s1", "v1", TICK);
+		clock += TICK;
+		final List<Map.Entry<String, String>> expired = wheel.sweep();
+		assertEquals("s2", expired.get(0).getKey());
+		assertEquals("s1", expired.get(1).getKey());
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.session;
+
+import org.junit.Test;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SessionCodecTest {
+
+	private static JsonObject session() {
+		return new JsonObject()
+				.putString("userId", "a1b2c3")
+				.putString("login", "jean.dupont")
+				.putString("accents", "Élève à l'école")
+				.putNumber("level", 3)
+				.putNumber("lastActivity", 1476806400000l)
+				.putNumber("ratio", 0.5)
+				.putBoolean("forceChangePassword", false)
+				.putBoolean("federated", true)
+				.putValue("nothing", null)
+				.putArray("groupsIds", new JsonArray().add("g1").add("g2"))
+				.putArray("authorizedActions", new JsonArray()
+						.addObject(new JsonObject().putString("name", "a").putString("displayName", "b")))
+				.putObject("cache", new JsonObject()
+						.putObject("nested", new JsonObject().putArray("empty", new JsonArray())));
+	}
+
+	@Test
+	public void roundTrip() {
+		final JsonObject session = session();
+		final JsonObject decoded = SessionCodec.decode(SessionCodec.encode(session));
+		assertEquals(session, decoded);
+		assertEquals(Integer.valueOf(3), decoded.getInteger("level"));
+		assertEquals(Long.valueOf(1476806400000l), decoded.getLong("lastActivity"));
+		assertEquals("Élève à l'école", decoded.getString("accents"));
+		assertEquals("b", decoded.getArray("authorizedActions").<JsonObject>get(0).getString("displayName"));
+	}
+
+	@Test
+	public void roundTripEmpty() {
+		assertEquals(new JsonObject(), SessionCodec.decode(SessionCodec.encode(new JsonObject())));
+	}
+
+	@Test
+	public void marshal() {
+		final JsonObject session = session();
+		assertTrue(SessionCodec.marshal(session, true) instanceof byte[]);
+		assertTrue(SessionCodec.marshal(session, false) instanceof String);
+		assertEquals(session, SessionCodec.unmarshal(SessionCodec.marshal(session, true)));
+		assertEquals(session, SessionCodec.unmarshal(SessionCodec.marshal(session, false)));
+		assertNull(SessionCodec.marshal(null, true));
+		assertNull(SessionCodec.unmarshal(null));
+	}
+
+	@Test
+	public void unmarshalJsonString() {
+		final JsonObject session = SessionCodec.unmarshal("{\"userId\":\"a1b2c3\",\"level\":3}");
+		assertEquals("a1b2c3", session.getString("userId"));
+		assertEquals(Integer.valueOf(3), session.getInteger("level"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void unknownVersion() {
+		final byte[] bytes = SessionCodec.encode(session());
+		bytes[0] = 42;
+		SessionCodec.decode(bytes);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void truncated() {
+		final byte[] bytes = SessionCodec.encode(session());
+		SessionCodec.decode(Arrays.copyOf(bytes, bytes.length / 2));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void empty() {
+		SessionCodec.decode(new byte[0]);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void invalidRoot() {
+		SessionCodec.decode(new byte[] { 1, 6, 0, 0, 0, 0 });
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void invalidSize() throws IOException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bos);
+		out.writeByte(1);
+		out.writeByte(7);
+		out.writeInt(1);
+		out.writeInt(Integer.MAX_VALUE);
+		out.flush();
+		SessionCodec.decode(bos.toByteArray());
+	}
+
+}
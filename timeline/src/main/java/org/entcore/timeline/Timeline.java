@@ -36,13 +36,16 @@ import org.entcore.timeline.services.impl.FlashMsgRepositoryEventsSql;
 
 public class Timeline extends BaseServer {
 
+	private TimelineController timelineController;
+
 	@Override
 	public void start() {
 		clearFilters();
 		setOauthClientGrant(true);
 		addFilter(new UserAuthFilter(new DefaultOAuthResourceProvider(getEventBus(vertx))));
 		super.start();
-		addController(new TimelineController());
+		timelineController = new TimelineController();
+		addController(timelineController);
 		addController(new FlashMsgController());
 		setRepositoryEvents(new FlashMsgRepositoryEventsSql());
 
@@ -60,4 +63,12 @@ public class Timeline extends BaseServer {
 		}
 	}
 
+	@Override
+	public void stop() {
+		if (timelineController != null) {
+			timelineController.close();
+		}
+		super.stop();
+	}
+
 }
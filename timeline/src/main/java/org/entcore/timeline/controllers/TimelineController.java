@@ -21,11 +21,14 @@ package org.entcore.timeline.controllers;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -54,6 +57,7 @@ import org.vertx.java.core.spi.cluster.ClusterManager;
 import org.vertx.java.platform.Container;
 
 import com.samskivert.mustache.Mustache;
+import com.samskivert.mustache.MustacheException;
 import com.samskivert.mustache.Template;
 import com.samskivert.mustache.Template.Fragment;
 
@@ -61,12 +65,15 @@ import org.entcore.common.user.UserUtils;
 import org.entcore.common.http.filter.ResourceFilter;
 import org.entcore.common.http.filter.SuperAdminFilter;
 import org.entcore.common.http.request.JsonHttpServerRequest;
+import org.entcore.common.neo4j.Neo4j;
+import org.entcore.common.neo4j.Neo4jResult;
 import org.entcore.common.notification.TimelineHelper;
 import org.entcore.common.notification.TimelineMailer;
 import org.entcore.common.notification.TimelineNotificationsLoader;
 import org.entcore.common.user.UserInfos;
 import fr.wseduc.security.SecuredAction;
 import org.entcore.timeline.events.DefaultTimelineEventStore;
+import org.entcore.timeline.events.FanOutOnReadTimelineEventStore;
 import org.entcore.timeline.events.TimelineEventStore;
 import org.entcore.timeline.services.TimelineConfigService;
 import org.entcore.timeline.services.impl.DefaultTimelineConfigService;
@@ -82,6 +89,26 @@ public class TimelineController extends BaseController {
 	private Map<String, String> registeredNotifications;
 	private Set<String> antiFlood;
 
+	//Decoded notification descriptors and compiled templates, versioned by the raw descriptor of the shared map
+	private final ConcurrentMap<String, RegisteredNotification> decodedNotifications = new ConcurrentHashMap<>();
+	//Compiled translations and nested templates, by contents
+	private final ConcurrentMap<String, Template> compiledFragments = new ConcurrentHashMap<>();
+	private static final int MAX_COMPILED_FRAGMENTS = 5000;
+	//Render notifications messages once per recipients domain and language when they are published
+	private boolean renderOnWrite;
+
+	private static final class RegisteredNotification {
+		private final String raw;
+		private final JsonObject descriptor;
+		private final Template template;
+
+		private RegisteredNotification(String raw, JsonObject descriptor, Template template) {
+			this.raw = raw;
+			this.descriptor = descriptor;
+			this.template = template;
+		}
+	}
+
 	//Declaring a TimelineHelper ensures the loading of the i18n/timeline folder.
 	@SuppressWarnings("unused")
 	private TimelineHelper timelineHelper;
@@ -93,7 +120,13 @@ public class TimelineController extends BaseController {
 	public void init(Vertx vertx, Container container, RouteMatcher rm,
 			Map<String, fr.wseduc.webutils.security.SecuredAction> securedActions) {
 		super.init(vertx, container, rm, securedActions);
-		store = new DefaultTimelineEventStore();
+		// Switching an existing platform requires converting the stored notifications, with the timeline stopped :
+		// scripts/timeline/fan-out-on-read.js to enable the flag, scripts/timeline/fan-out-on-write.js to disable it.
+		if (container.config().getBoolean("fan-out-on-read", false)) {
+			store = new FanOutOnReadTimelineEventStore(vertx, container.config());
+		} else {
+			store = new DefaultTimelineEventStore(vertx, container.config());
+		}
 		configService = new DefaultTimelineConfigService(
 				TIMELINE_CONFIG_COLLECTION);
 		eventsI18n = vertx.sharedData().getMap("timelineEventsI18n");
@@ -109,10 +142,21 @@ public class TimelineController extends BaseController {
 		}
 		mailer = new TimelineMailer(vertx, eb, container);
 
+		renderOnWrite = container.config().getBoolean("render-on-write", false);
+
 		antiFlood = new TTLSet<>(container.config().getLong("antiFloodDelay", 3000l),
 				vertx, container.config().getLong("antiFloodClear", 3600 * 1000l));
 	}
 
+	/**
+	 * Writes the timeline read marks still pending.
+	 */
+	public void close() {
+		if (store instanceof DefaultTimelineEventStore) {
+			((DefaultTimelineEventStore) store).close();
+		}
+	}
+
 	/* Override i18n to use additional timeline translations and nested templates */
 	@Override
 	protected void setLambdaTemplateRequest(final HttpServerRequest request, final Map<String, Object> ctx) {
@@ -138,7 +182,7 @@ public class TimelineController extends BaseController {
 				if (translatedContents.equals(key)) {
 					translatedContents = timelineI18n.getString(key, key);
 				}
-				Mustache.compiler().compile(translatedContents).execute(ctx, out);
+				compileFragment(translatedContents).execute(ctx, out);
 			}
 		});
 
@@ -160,7 +204,7 @@ public class TimelineController extends BaseController {
 				String nestedTemplateName = frag.execute();
 				String nestedTemplate = (String) ctx.get(nestedTemplateName);
 				if(nestedTemplate != null)
-					Mustache.compiler().compile(nestedTemplate).execute(ctx, out);
+					compileFragment(nestedTemplate).execute(ctx, out);
 			}
 		});
 
@@ -171,9 +215,7 @@ public class TimelineController extends BaseController {
 				try {
 					JsonObject nestedTemplate = (JsonObject) nestedArray.get(Integer.parseInt(nestedTemplatePos) - 1);
 					ctx.putAll(nestedTemplate.getObject("params", new JsonObject()).toMap());
-					Mustache.compiler()
-						.compile(nestedTemplate.getString("template", ""))
-						.execute(ctx, out);
+					compileFragment(nestedTemplate.getString("template", "")).execute(ctx, out);
 				} catch(NumberFormatException e) {
 					log.error("Mustache compiler error while parsing a nested template array lambda.");
 				}
@@ -181,6 +223,213 @@ public class TimelineController extends BaseController {
 		});
 	}
 
+	private Template compileFragment(String contents) {
+		Template template = compiledFragments.get(contents);
+		if (template == null) {
+			template = Mustache.compiler().compile(contents);
+			if (compiledFragments.size() >= MAX_COMPILED_FRAGMENTS) {
+				compiledFragments.clear();
+			}
+			compiledFragments.put(contents, template);
+		}
+		return template;
+	}
+
+	/**
+	 * Returns the decoded notification descriptor and its compiled template,
+	 * decoded again only when the registered descriptor changes.
+	 */
+	private RegisteredNotification getRegisteredNotification(String key) {
+		final String raw = registeredNotifications.get(key);
+		if (raw == null) {
+			decodedNotifications.remove(key);
+			return null;
+		}
+		RegisteredNotification notification = decodedNotifications.get(key);
+		if (notification == null || (notification.raw != raw && !notification.raw.equals(raw))) {
+			final JsonObject descriptor = new JsonObject(raw);
+			Template template = null;
+			try {
+				template = Mustache.compiler().defaultValue("").compile(descriptor.getString("template", ""));
+			} catch (MustacheException e) {
+				log.error("Unable to compile the template of notification " + key, e);
+			}
+			notification = new RegisteredNotification(raw, descriptor, template);
+			decodedNotifications.put(key, notification);
+		}
+		return notification;
+	}
+
+	private void renderNotification(final HttpServerRequest request, RegisteredNotification notification,
+			JsonObject params, String key, final Handler<String> handler) {
+		if (notification.template != null) {
+			try {
+				final Map<String, Object> ctx = params.toMap();
+				setLambdaTemplateRequest(request, ctx);
+				final StringWriter writer = new StringWriter();
+				notification.template.execute(ctx, writer);
+				handler.handle(writer.toString());
+				return;
+			} catch (MustacheException e) {
+				log.debug("Compiled notification template failed, processing it again : " + key, e);
+			}
+		}
+		StringReader reader = new StringReader(notification.descriptor.getString("template", ""));
+		processTemplate(request, params, key, reader, new Handler<Writer>() {
+			public void handle(Writer writer) {
+				handler.handle(writer.toString());
+			}
+		});
+	}
+
+	private static String shortLanguage(String language) {
+		return language.split(",")[0].split("-")[0];
+	}
+
+	/**
+	 * Renders the notification message for the given domain and language, outside of any
+	 * http request. Links produced by the host lambda are left relative.
+	 * Returns null when the message can only be rendered at read time.
+	 */
+	private String renderMessage(RegisteredNotification notification, JsonObject params, String domain,
+			String language) {
+		if (notification.template == null) {
+			return null;
+		}
+		final HttpServerRequest request = new JsonHttpServerRequest(new JsonObject()
+				.putObject("headers", new JsonObject()
+						.putString("Host", domain)
+						.putString("Accept-Language", language)));
+		try {
+			final Map<String, Object> ctx = params.toMap();
+			setLambdaTemplateRequest(request, ctx);
+			ctx.put("host", new Mustache.Lambda() {
+				@Override
+				public void execute(Template.Fragment frag, Writer out) throws IOException {
+					out.write(frag.execute());
+				}
+			});
+			final StringWriter writer = new StringWriter();
+			notification.template.execute(ctx, writer);
+			return writer.toString();
+		} catch (MustacheException e) {
+			log.debug("Unable to render notification message on write.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Adds the messages rendered for each domain and language of the recipients to the event,
+	 * when render-on-write is enabled. Recipients of group addressed events are resolved from
+	 * their groups and structures. Missing domains and languages are rendered at read time.
+	 */
+	private void renderMessages(final JsonObject event, final Handler<JsonObject> handler) {
+		final JsonArray recipients = event.getArray("recipients", new JsonArray());
+		final JsonArray groupIds = event.getArray("groups", new JsonArray());
+		if (!renderOnWrite || event.containsField("message") || (recipients.size() == 0 && groupIds.size() == 0)) {
+			handler.handle(event);
+			return;
+		}
+		final String key = event.getString("type", "").toLowerCase() + "." +
+				event.getString("event-type", "").toLowerCase();
+		final RegisteredNotification notification = getRegisteredNotification(key);
+		if (notification == null || notification.template == null) {
+			handler.handle(event);
+			return;
+		}
+		final JsonArray userIds = new JsonArray();
+		for (Object o : recipients) {
+			if (!(o instanceof JsonObject)) continue;
+			userIds.addString(((JsonObject) o).getString("userId"));
+		}
+		final String returnLanguages =
+				"OPTIONAL MATCH u-[:PREFERS]->(uac:UserAppConf) " +
+				"RETURN DISTINCT u.lastDomain as domain, uac.language as language ";
+		final StringBuilder query = new StringBuilder();
+		if (userIds.size() > 0) {
+			query.append("MATCH (u:User) WHERE u.id IN {userIds} ").append(returnLanguages);
+		}
+		if (groupIds.size() > 0) {
+			if (query.length() > 0) {
+				query.append("UNION ");
+			}
+			query.append("MATCH (g:Group)<-[:IN]-(u:User) WHERE g.id IN {groupIds} ").append(returnLanguages)
+					.append("UNION ")
+					.append("MATCH (s:Structure)<-[:DEPENDS]-(:ProfileGroup)<-[:IN]-(u:User) WHERE s.id IN {groupIds} ")
+					.append(returnLanguages);
+		}
+		final JsonObject queryParams = new JsonObject().putArray("userIds", userIds).putArray("groupIds", groupIds);
+		Neo4j.getInstance().execute(query.toString(), queryParams,
+				Neo4jResult.validResultHandler(new Handler<Either<String, JsonArray>>() {
+			@Override
+			public void handle(Either<String, JsonArray> r) {
+				if (r.isLeft()) {
+					log.error("Unable to retrieve recipients languages : " + r.left().getValue());
+					handler.handle(event);
+					return;
+				}
+				final Set<String> rendered = new HashSet<>();
+				final JsonObject params = event.getObject("params", new JsonObject());
+				final JsonArray messages = new JsonArray();
+				for (Object o : r.right().getValue()) {
+					if (!(o instanceof JsonObject)) continue;
+					final String domain = ((JsonObject) o).getString("domain");
+					if (domain == null || domain.isEmpty()) {
+						continue;
+					}
+					String language = "fr";
+					try {
+						language = new JsonObject(((JsonObject) o).getString("language", "{}"))
+								.getString("default-domain", "fr");
+					} catch (RuntimeException e) {
+						log.debug("Bad language preferences format.", e);
+					}
+					language = shortLanguage(language);
+					if (!rendered.add(domain + "|" + language)) {
+						continue;
+					}
+					final String message = renderMessage(notification, params.copy(), domain, language);
+					if (message != null) {
+						messages.addObject(new JsonObject()
+								.putString("domain", domain)
+								.putString("language", language)
+								.putString("message", message));
+					}
+				}
+				if (messages.size() > 0) {
+					event.putArray("messages", messages);
+				}
+				handler.handle(event);
+			}
+		}));
+	}
+
+	/**
+	 * Returns the message rendered on write for the given domain and language, or null.
+	 */
+	private static String renderedMessage(JsonArray messages, String domain, String language) {
+		if (messages == null) {
+			return null;
+		}
+		for (Object o : messages) {
+			if (!(o instanceof JsonObject)) continue;
+			final JsonObject m = (JsonObject) o;
+			if (domain.equals(m.getString("domain")) && language.equals(m.getString("language"))) {
+				return m.getString("message");
+			}
+		}
+		return null;
+	}
+
+	private void addEvent(JsonObject event, final Handler<JsonObject> handler) {
+		renderMessages(event, new Handler<JsonObject>() {
+			@Override
+			public void handle(JsonObject e) {
+				store.add(e, handler);
+			}
+		});
+	}
+
 	@Get("/timeline")
 	@SecuredAction(value = "timeline.view", type = ActionType.AUTHENTICATED)
 	public void view(HttpServerRequest request) {
@@ -211,7 +460,11 @@ public class TimelineController extends BaseController {
 	public void registeredNotifications(HttpServerRequest request) {
 		JsonArray reply = new JsonArray();
 		for (String key : registeredNotifications.keySet()) {
-			JsonObject notif = new JsonObject(registeredNotifications.get(key))
+			RegisteredNotification registered = getRegisteredNotification(key);
+			if (registered == null) {
+				continue;
+			}
+			JsonObject notif = registered.descriptor.copy()
 					.putString("key", key);
 			notif.removeField("template");
 			reply.add(notif);
@@ -265,8 +518,16 @@ public class TimelineController extends BaseController {
 										if (results.size() == 0)
 											endHandler.handle(null);
 
+										final String domain = getHost(request);
+										final String language = shortLanguage(
+												Utils.getOrElse(I18n.acceptLanguage(request), "fr", false));
 										for (Object notifObj : results) {
 											final JsonObject notif = (JsonObject) notifObj;
+											final String rendered = renderedMessage(notif.getArray("messages"), domain, language);
+											notif.removeField("messages");
+											if (rendered != null) {
+												notif.putString("message", rendered);
+											}
 											if (!notif.getString("message", "").isEmpty()) {
 												compiledResults.add(notif);
 												endHandler.handle(null);
@@ -277,18 +538,16 @@ public class TimelineController extends BaseController {
 												+ "."
 												+ notif.getString("event-type", "").toLowerCase();
 
-											String stringifiedRegisteredNotif = registeredNotifications.get(key);
-											if (stringifiedRegisteredNotif == null) {
+											RegisteredNotification registeredNotif = getRegisteredNotification(key);
+											if (registeredNotif == null) {
 												log.error("Failed to retrieve registered from the shared map notification with key : " + key);
 												endHandler.handle(null);
 												continue;
 											}
-											JsonObject registeredNotif = new JsonObject(stringifiedRegisteredNotif);
 
-											StringReader reader = new StringReader(registeredNotif.getString("template", ""));
-											processTemplate(request,notif.getObject("params",new JsonObject()),key, reader, new Handler<Writer>() {
-												public void handle(Writer writer) {
-													notif.putString("message", writer.toString());
+											renderNotification(request, registeredNotif, notif.getObject("params",new JsonObject()), key, new Handler<String>() {
+												public void handle(String message) {
+													notif.putString("message", message);
 													compiledResults.add(notif);
 													endHandler.handle(null);
 												}
@@ -328,7 +587,7 @@ public class TimelineController extends BaseController {
 				new Handler<JsonObject>() {
 					@Override
 					public void handle(JsonObject json) {
-						store.add(json, new Handler<JsonObject>() {
+						addEvent(json, new Handler<JsonObject>() {
 							@Override
 							public void handle(JsonObject res) {
 								if ("ok".equals(res.getString("status"))) {
@@ -380,7 +639,11 @@ public class TimelineController extends BaseController {
 				JsonArray reply = new JsonArray();
 
 				for (String key : registeredNotifications.keySet()) {
-					JsonObject notif = new JsonObject(registeredNotifications.get(key)).putString("key", key);
+					RegisteredNotification registered = getRegisteredNotification(key);
+					if (registered == null) {
+						continue;
+					}
+					JsonObject notif = registered.descriptor.copy().putString("key", key);
 					notif.removeField("template");
 					for(Object admcDefaultObj : admcDefaults){
 						JsonObject admcDefault = (JsonObject) admcDefaultObj;
@@ -449,7 +712,7 @@ public class TimelineController extends BaseController {
 		case "add":
 			final String sender = json.getString("sender");
 			if (sender == null || sender.startsWith("no-reply") || antiFlood.add(sender)) {
-				store.add(json, new Handler<JsonObject>() {
+				addEvent(json, new Handler<JsonObject>() {
 					public void handle(JsonObject result) {
 						handler.handle(result);
 					}
@@ -511,7 +774,11 @@ public class TimelineController extends BaseController {
 
 						JsonArray notificationsList = new JsonArray();
 						for (String key : registeredNotifications.keySet()) {
-							JsonObject notif = new JsonObject(registeredNotifications.get(key));
+							RegisteredNotification registered = getRegisteredNotification(key);
+							if (registered == null) {
+								continue;
+							}
+							JsonObject notif = registered.descriptor.copy();
 							notif.putString("key", key);
 							for(Object notifConfigObj: config){
 								JsonObject notifConfig = (JsonObject) notifConfigObj;
@@ -593,7 +860,11 @@ public class TimelineController extends BaseController {
 				}
 				final JsonObject restricted = new JsonObject();
 				for (String key : registeredNotifications.keySet()) {
-					JsonObject notif = new JsonObject(registeredNotifications.get(key));
+					RegisteredNotification registered = getRegisteredNotification(key);
+					if (registered == null) {
+						continue;
+					}
+					JsonObject notif = registered.descriptor;
 					String restriction = notif.getString("restriction",TimelineNotificationsLoader.Restrictions.NONE.name());
 					for (Object notifConfigObj : event.right().getValue()) {
 						JsonObject notifConfig = (JsonObject) notifConfigObj;
@@ -625,14 +896,13 @@ public class TimelineController extends BaseController {
 							event.left().getValue()));
 					return;
 				}
-				final String notificationStr = registeredNotifications
-						.get(notificationKey.toLowerCase());
-				if (notificationStr == null) {
+				final RegisteredNotification registered = getRegisteredNotification(notificationKey.toLowerCase());
+				if (registered == null) {
 					handler.handle(new Either.Left<String, JsonObject>(
 							"invalid.notification.key"));
 					return;
 				}
-				final JsonObject notification = new JsonObject(notificationStr);
+				final JsonObject notification = registered.descriptor.copy();
 				for (Object notifConfigObj : event.right().getValue()) {
 					JsonObject notifConfig = (JsonObject) notifConfigObj;
 					if (notifConfig.getString("key", "")
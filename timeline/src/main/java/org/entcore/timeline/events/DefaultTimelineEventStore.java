@@ -22,18 +22,51 @@ package org.entcore.timeline.events;
 import fr.wseduc.mongodb.MongoDb;
 import org.entcore.common.user.UserInfos;
 import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
 import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 public class DefaultTimelineEventStore implements TimelineEventStore {
 
-	private static final String TIMELINE_COLLECTION = "timeline";
+	protected static final String TIMELINE_COLLECTION = "timeline";
 
-	private MongoDb mongo = MongoDb.getInstance();
+	protected MongoDb mongo = MongoDb.getInstance();
+	private static final Logger log = LoggerFactory.getLogger(DefaultTimelineEventStore.class);
+	private ReadMarksBuffer readMarks;
+
+	public DefaultTimelineEventStore() {
+	}
+
+	/**
+	 * Creates a store whose read marks are buffered and written in bulk.
+	 */
+	public DefaultTimelineEventStore(Vertx vertx, JsonObject config) {
+		readMarks = new ReadMarksBuffer(vertx, config, "timeline.read-marks.metrics") {
+			@Override
+			protected void write(Map<String, Set<String>> marks, Handler<Boolean> handler) {
+				writeReadMarks(marks, handler);
+			}
+		};
+	}
+
+	/**
+	 * Writes the pending read marks.
+	 */
+	public void close() {
+		if (readMarks != null) {
+			readMarks.close();
+		}
+	}
 
 	@Override
 	public void add(JsonObject event, final Handler<JsonObject> result) {
@@ -65,60 +98,69 @@ public class DefaultTimelineEventStore implements TimelineEventStore {
 		final String recipient = user.getUserId();
 		final String externalId = user.getExternalId();
 		if (recipient != null && !recipient.trim().isEmpty()) {
-			final JsonObject query = new JsonObject()
-					.putObject("date", new JsonObject().putObject("$lt", MongoDb.now()));
+			final JsonObject query = filters(types, restrictionFilter);
 			if (externalId == null || externalId.trim().isEmpty()) {
 				query.putString("recipients.userId", recipient);
 			} else {
 				query.putObject("recipients.userId", new JsonObject()
 						.putArray("$in", new JsonArray().add(recipient).add(externalId)));
 			}
-			if (types != null && !types.isEmpty()) {
-				if (types.size() == 1) {
-					query.putString("type", types.get(0));
-				} else {
-					JsonArray typesFilter = new JsonArray();
-					for (String t: types) {
-						typesFilter.addObject(new JsonObject().putString("type", t));
-					}
-					query.putArray("$or", typesFilter);
+			JsonObject sort = new JsonObject().putNumber("date", -1);
+			JsonObject keys = keys().putNumber("recipients.$", 1);
+			mongo.find(TIMELINE_COLLECTION, query, sort, keys,
+					offset, limit, 100, new Handler<Message<JsonObject>>() {
+				@Override
+				public void handle(Message<JsonObject> message) {
+					result.handle(message.body());
+					markEventsAsRead(message, recipient);
 				}
+			});
+		} else {
+			result.handle(invalidArguments());
+		}
+	}
+
+	protected JsonObject filters(List<String> types, JsonObject restrictionFilter) {
+		final JsonObject query = new JsonObject()
+				.putObject("date", new JsonObject().putObject("$lt", MongoDb.now()));
+		if (types != null && !types.isEmpty()) {
+			if (types.size() == 1) {
+				query.putString("type", types.get(0));
+			} else {
+				JsonArray typesFilter = new JsonArray();
+				for (String t: types) {
+					typesFilter.addObject(new JsonObject().putString("type", t));
+				}
+				query.putArray("$or", typesFilter);
 			}
-			if(restrictionFilter != null && restrictionFilter.size() > 0){
-				JsonArray nor = new JsonArray();
-				for(String type : restrictionFilter.toMap().keySet()){
-					for(Object eventType : restrictionFilter.getArray(type, new JsonArray())){
-						nor.add(new JsonObject()
-							.putString("type", type)
-							.putString("event-type", eventType.toString()));
-					}
-					query.putArray("$nor", nor);
+		}
+		if(restrictionFilter != null && restrictionFilter.size() > 0){
+			JsonArray nor = new JsonArray();
+			for(String type : restrictionFilter.toMap().keySet()){
+				for(Object eventType : restrictionFilter.getArray(type, new JsonArray())){
+					nor.add(new JsonObject()
+						.putString("type", type)
+						.putString("event-type", eventType.toString()));
 				}
+				query.putArray("$nor", nor);
 			}
-			JsonObject sort = new JsonObject().putNumber("date", -1);
-			JsonObject keys = new JsonObject()
+		}
+		return query;
+	}
+
+	protected JsonObject keys() {
+		return new JsonObject()
 			.putNumber("message", 1)
+			.putNumber("messages", 1)
 			.putNumber("params", 1)
 			.putNumber("date", 1)
 			.putNumber("sender", 1)
-			.putNumber("recipients.$", 1)
 			.putNumber("comments", 1)
 			.putNumber("type", 1)
 			.putNumber("event-type", 1)
 			.putNumber("resource", 1)
 			.putNumber("sub-resource", 1)
 			.putNumber("add-comment", 1);
-			mongo.find(TIMELINE_COLLECTION, query, sort, keys,
-					offset, limit, 100, new Handler<Message<JsonObject>>() {
-				@Override
-				public void handle(Message<JsonObject> message) {
-					result.handle(message.body());
-					markEventsAsRead(message, recipient);
-				}
-			});
-		} else {
-			result.handle(invalidArguments());
-		}
 	}
 
 	@Override
@@ -146,7 +188,7 @@ public class DefaultTimelineEventStore implements TimelineEventStore {
 		});
 	}
 
-	private JsonObject validAndGet(JsonObject json) {
+	protected JsonObject validAndGet(JsonObject json) {
 		if (json != null) {
 			JsonObject e = json.copy();
 			for (String attr: json.getFieldNames()) {
@@ -161,13 +203,13 @@ public class DefaultTimelineEventStore implements TimelineEventStore {
 		return null;
 	}
 
-	private JsonObject invalidArguments() {
+	protected JsonObject invalidArguments() {
 		return new JsonObject().putString("status", "error")
 				.putString("message", "Invalid arguments.");
 	}
 
 
-	private Handler<Message<JsonObject>> resultHandler(final Handler<JsonObject> result) {
+	protected Handler<Message<JsonObject>> resultHandler(final Handler<JsonObject> result) {
 		return new Handler<Message<JsonObject>>() {
 
 			@Override
@@ -184,16 +226,68 @@ public class DefaultTimelineEventStore implements TimelineEventStore {
 			for (Object o : events) {
 				if (!(o instanceof JsonObject)) continue;
 				JsonObject json = (JsonObject) o;
+				JsonArray recipients = json.getArray("recipients");
+				if (recipients != null && recipients.size() == 1 &&
+						recipient.equals(((JsonObject) recipients.get(0)).getString("userId")) &&
+						((JsonObject) recipients.get(0)).getInteger("unread", 1) == 0) {
+					continue;
+				}
 				ids.addString(json.getString("_id"));
 			}
-			JsonObject q = new JsonObject()
-					.putObject("_id", new JsonObject().putArray("$in", ids))
-					.putObject("recipients", new JsonObject().putObject("$elemMatch",
-							new JsonObject().putString("userId", recipient).putNumber("unread", 1)
-					));
-			mongo.update(TIMELINE_COLLECTION, q, new JsonObject().putObject("$set",
-					new JsonObject().putNumber("recipients.$.unread", 0)), false, true);
+			markEventsAsRead(ids, recipient);
+		}
+	}
+
+	protected void markEventsAsRead(JsonArray ids, String recipient) {
+		if (ids.size() == 0) {
+			return;
+		}
+		if (readMarks != null) {
+			readMarks.mark(recipient, ids);
+		} else {
+			final Set<String> events = new HashSet<>();
+			for (Object id : ids) {
+				events.add((String) id);
+			}
+			writeReadMarks(Collections.singletonMap(recipient, events), null);
 		}
 	}
 
+	/**
+	 * Writes read marks with a single bulk update, one statement by user.
+	 */
+	protected void writeReadMarks(Map<String, Set<String>> marks, final Handler<Boolean> handler) {
+		final JsonArray updates = new JsonArray();
+		for (Map.Entry<String, Set<String>> e : marks.entrySet()) {
+			updates.addObject(new JsonObject()
+					.putObject("q", new JsonObject()
+							.putObject("_id", new JsonObject().putArray("$in", new JsonArray(e.getValue().toArray())))
+							.putObject("recipients", new JsonObject().putObject("$elemMatch",
+									new JsonObject().putString("userId", e.getKey()).putNumber("unread", 1))))
+					.putObject("u", new JsonObject().putObject("$set",
+							new JsonObject().putNumber("recipients.$.unread", 0)))
+					.putBoolean("multi", true));
+		}
+		final JsonObject command = new JsonObject()
+				.putString("update", TIMELINE_COLLECTION)
+				.putArray("updates", updates)
+				.putBoolean("ordered", false);
+		command(command, handler);
+	}
+
+	protected void command(JsonObject command, final Handler<Boolean> handler) {
+		mongo.command(command.encode(), new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				final boolean ok = "ok".equals(message.body().getString("status"));
+				if (!ok) {
+					log.error("Error writing timeline read marks : " + message.body().getString("message"));
+				}
+				if (handler != null) {
+					handler.handle(ok);
+				}
+			}
+		});
+	}
+
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.timeline.events;
+
+import fr.wseduc.mongodb.MongoDb;
+import org.entcore.common.user.UserInfos;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Timeline store where notifications can be addressed to groups and structures
+ * ids, resolved at read time against the groups and structures of the user,
+ * instead of embedding one recipient entry per user.
+ * Read states are kept in a separate collection of compact read markers,
+ * one document per user and read notification.
+ */
+public class FanOutOnReadTimelineEventStore extends DefaultTimelineEventStore {
+
+	protected static final String READ_MARKERS_COLLECTION = "timeline.read";
+
+	public FanOutOnReadTimelineEventStore() {
+	}
+
+	public FanOutOnReadTimelineEventStore(Vertx vertx, JsonObject config) {
+		super(vertx, config);
+	}
+
+	@Override
+	public void add(JsonObject event, final Handler<JsonObject> result) {
+		if (event != null && !event.containsField("recipients") && event.getArray("groups") != null) {
+			event.putArray("recipients", new JsonArray());
+		}
+		JsonObject doc = validAndGet(event);
+		if (doc != null) {
+			final JsonArray recipients = new JsonArray();
+			for (Object o : doc.getArray("recipients")) {
+				if (!(o instanceof JsonObject)) continue;
+				recipients.addObject(new JsonObject().putString("userId", ((JsonObject) o).getString("userId")));
+			}
+			doc.putArray("recipients", recipients);
+			if (!doc.containsField("date")) {
+				doc.putObject("date", MongoDb.now());
+			}
+			mongo.save(TIMELINE_COLLECTION, doc, resultHandler(result));
+		} else {
+			result.handle(invalidArguments());
+		}
+	}
+
+	@Override
+	public void get(final UserInfos user, List<String> types, int offset, int limit, JsonObject restrictionFilter,
+			final Handler<JsonObject> result) {
+		final String recipient = user.getUserId();
+		final String externalId = user.getExternalId();
+		if (recipient != null && !recipient.trim().isEmpty()) {
+			final JsonArray users = new JsonArray().add(recipient);
+			if (externalId != null && !externalId.trim().isEmpty()) {
+				users.add(externalId);
+			}
+			final JsonArray groups = new JsonArray();
+			if (user.getGroupsIds() != null) {
+				for (String groupId : user.getGroupsIds()) {
+					groups.add(groupId);
+				}
+			}
+			if (user.getStructures() != null) {
+				for (String structureId : user.getStructures()) {
+					groups.add(structureId);
+				}
+			}
+			final JsonArray addressees = new JsonArray().addObject(new JsonObject().putObject("recipients.userId",
+					new JsonObject().putArray("$in", users)));
+			if (groups.size() > 0) {
+				addressees.addObject(new JsonObject().putObject("groups",
+						new JsonObject().putArray("$in", groups)));
+			}
+			final JsonObject query = filters(types, restrictionFilter)
+					.putArray("$and", new JsonArray().addObject(new JsonObject().putArray("$or", addressees)));
+			JsonObject sort = new JsonObject().putNumber("date", -1);
+			mongo.find(TIMELINE_COLLECTION, query, sort, keys(),
+					offset, limit, 100, new Handler<Message<JsonObject>>() {
+				@Override
+				public void handle(Message<JsonObject> message) {
+					JsonArray events = message.body().getArray("results");
+					if ("ok".equals(message.body().getString("status")) && events != null && events.size() > 0) {
+						addReadStates(message.body(), recipient, result);
+					} else {
+						result.handle(message.body());
+					}
+				}
+			});
+		} else {
+			result.handle(invalidArguments());
+		}
+	}
+
+	private void addReadStates(final JsonObject res, final String recipient, final Handler<JsonObject> result) {
+		final JsonArray events = res.getArray("results");
+		final JsonArray markers = new JsonArray();
+		for (Object o : events) {
+			if (!(o instanceof JsonObject)) continue;
+			markers.addString(markerId(recipient, ((JsonObject) o).getString("_id")));
+		}
+		final JsonObject query = new JsonObject().putObject("_id", new JsonObject().putArray("$in", markers));
+		mongo.find(READ_MARKERS_COLLECTION, query, new JsonObject(), new JsonObject().putNumber("_id", 1),
+				new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				final Set<String> read = new HashSet<>();
+				if ("ok".equals(message.body().getString("status"))) {
+					for (Object o : message.body().getArray("results", new JsonArray())) {
+						if (!(o instanceof JsonObject)) continue;
+						read.add(((JsonObject) o).getString("_id"));
+					}
+				}
+				final JsonArray unread = new JsonArray();
+				for (Object o : events) {
+					if (!(o instanceof JsonObject)) continue;
+					final JsonObject event = (JsonObject) o;
+					final boolean isRead = read.contains(markerId(recipient, event.getString("_id")));
+					event.putArray("recipients", new JsonArray().addObject(new JsonObject()
+							.putString("userId", recipient).putNumber("unread", isRead ? 0 : 1)));
+					if (!isRead) {
+						unread.addString(event.getString("_id"));
+					}
+				}
+				result.handle(res);
+				markEventsAsRead(unread, recipient);
+			}
+		});
+	}
+
+	/**
+	 * Inserts the read markers, the markers already present are ignored.
+	 */
+	@Override
+	protected void writeReadMarks(Map<String, Set<String>> marks, Handler<Boolean> handler) {
+		final JsonArray documents = new JsonArray();
+		for (Map.Entry<String, Set<String>> e : marks.entrySet()) {
+			for (String id : e.getValue()) {
+				documents.addObject(new JsonObject()
+						.putString("_id", markerId(e.getKey(), id))
+						.putString("event", id));
+			}
+		}
+		final JsonObject command = new JsonObject()
+				.putString("insert", READ_MARKERS_COLLECTION)
+				.putArray("documents", documents)
+				.putBoolean("ordered", false);
+		command(command, handler);
+	}
+
+	@Override
+	public void delete(final String resource, final Handler<JsonObject> result) {
+		if (resource != null && !resource.trim().isEmpty()) {
+			deleteWithMarkers(new JsonObject().putString("resource", resource), result);
+		} else {
+			result.handle(invalidArguments());
+		}
+	}
+
+	@Override
+	public void deleteSubResource(final String resource, final Handler<JsonObject> result) {
+		if (resource != null && !resource.trim().isEmpty()) {
+			deleteWithMarkers(new JsonObject().putString("sub-resource", resource), result);
+		} else {
+			result.handle(invalidArguments());
+		}
+	}
+
+	private void deleteWithMarkers(final JsonObject query, final Handler<JsonObject> result) {
+		mongo.find(TIMELINE_COLLECTION, query, new JsonObject(), new JsonObject().putNumber("_id", 1),
+				new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				final JsonArray ids = new JsonArray();
+				if ("ok".equals(message.body().getString("status"))) {
+					for (Object o : message.body().getArray("results", new JsonArray())) {
+						if (!(o instanceof JsonObject)) continue;
+						ids.addString(((JsonObject) o).getString("_id"));
+					}
+				}
+				mongo.delete(TIMELINE_COLLECTION, query, new Handler<Message<JsonObject>>() {
+					@Override
+					public void handle(Message<JsonObject> message) {
+						if (ids.size() > 0 && "ok".equals(message.body().getString("status"))) {
+							mongo.delete(READ_MARKERS_COLLECTION, new JsonObject().putObject("event",
+									new JsonObject().putArray("$in", ids)));
+						}
+						result.handle(message.body());
+					}
+				});
+			}
+		});
+	}
+
+	private static String markerId(String userId, String eventId) {
+		return userId + ":" + eventId;
+	}
+
+}
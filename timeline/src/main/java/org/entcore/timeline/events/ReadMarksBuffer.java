@@ -0,0 +1,173 @@
+/*
+ * Copyright © WebServices pour l'Éducation, 2016
+ *
+ * This file is part of ENT Core. ENT Core is a versatile ENT engine based on the JVM.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation (version 3 of the License).
+ *
+ * For the sake of explanation, any module that communicate over native
+ * Web protocols, such as HTTP, with ENT Core is outside the scope of this
+ * license and could be license under its own terms. This is merely considered
+ * normal use of ENT Core, and does not fall under the heading of "covered work".
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.timeline.events;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.logging.Logger;
+import org.vertx.java.core.logging.impl.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Write-behind buffer of timeline read marks. Marks are deduplicated by user and event
+ * and written in bulk when the batch size is reached or on a timer. Pending marks are
+ * bounded : when mongo doesn't keep up, new marks are dropped, the events simply stay
+ * unread until the next fetch.
+ */
+public abstract class ReadMarksBuffer {
+
+	private static final Logger log = LoggerFactory.getLogger(ReadMarksBuffer.class);
+	private final Vertx vertx;
+	private final long timerId;
+	private final int batchSize;
+	private final int maxPending;
+	private Map<String, Set<String>> pending = new HashMap<>();
+	private int pendingCount = 0;
+	private boolean flushing = false;
+	private long marked = 0;
+	private long deduplicated = 0;
+	private long flushed = 0;
+	private long failed = 0;
+	private long dropped = 0;
+
+	public ReadMarksBuffer(Vertx vertx, JsonObject config, String metricsAddress) {
+		this.vertx = vertx;
+		this.batchSize = config.getInteger("read-marks-batch-size", 500);
+		this.maxPending = config.getInteger("read-marks-max-pending", 100000);
+		this.timerId = vertx.setPeriodic(config.getLong("read-marks-flush-interval", 3000l), new Handler<Long>() {
+			@Override
+			public void handle(Long timerId) {
+				flush();
+			}
+		});
+		if (metricsAddress != null) {
+			vertx.eventBus().registerLocalHandler(metricsAddress, new Handler<Message<JsonObject>>() {
+				@Override
+				public void handle(Message<JsonObject> message) {
+					message.reply(getMetrics());
+				}
+			});
+		}
+	}
+
+	/**
+	 * Writes the read marks, by user id.
+	 *
+	 * @param marks : Read event ids, by user id
+	 * @param handler : Handles true when the marks are written
+	 */
+	protected abstract void write(Map<String, Set<String>> marks, Handler<Boolean> handler);
+
+	public void mark(String userId, JsonArray eventIds) {
+		final boolean batchReady;
+		synchronized (this) {
+			Set<String> events = pending.get(userId);
+			for (Object id : eventIds) {
+				marked++;
+				if (pendingCount >= maxPending) {
+					dropped++;
+					continue;
+				}
+				if (events == null) {
+					events = new HashSet<>();
+					pending.put(userId, events);
+				}
+				if (events.add((String) id)) {
+					pendingCount++;
+				} else {
+					deduplicated++;
+				}
+			}
+			batchReady = !flushing && pendingCount >= batchSize;
+		}
+		if (batchReady) {
+			flush();
+		}
+	}
+
+	private void flush() {
+		final Map<String, Set<String>> marks;
+		final int count;
+		synchronized (this) {
+			if (flushing || pendingCount == 0) {
+				return;
+			}
+			flushing = true;
+			marks = pending;
+			count = pendingCount;
+			pending = new HashMap<>();
+			pendingCount = 0;
+		}
+		write(marks, new Handler<Boolean>() {
+			@Override
+			public void handle(Boolean ok) {
+				final boolean batchReady;
+				synchronized (ReadMarksBuffer.this) {
+					if (Boolean.TRUE.equals(ok)) {
+						flushed += count;
+					} else {
+						failed += count;
+					}
+					flushing = false;
+					batchReady = pendingCount >= batchSize;
+				}
+				if (batchReady) {
+					flush();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops the timer and writes the pending marks, including while a flush is in progress.
+	 */
+	public void close() {
+		vertx.cancelTimer(timerId);
+		final Map<String, Set<String>> marks;
+		synchronized (this) {
+			if (pendingCount == 0) {
+				return;
+			}
+			marks = pending;
+			pending = new HashMap<>();
+			pendingCount = 0;
+		}
+		log.info("Flushing " + marks.size() + " users timeline read marks.");
+		write(marks, null);
+	}
+
+	public synchronized JsonObject getMetrics() {
+		return new JsonObject()
+				.putNumber("marked", marked)
+				.putNumber("deduplicated", deduplicated)
+				.putNumber("flushed", flushed)
+				.putNumber("failed", failed)
+				.putNumber("dropped", dropped)
+				.putNumber("pending", pendingCount);
+	}
+
+}
@@ -30,7 +30,7 @@ import org.vertx.java.core.json.JsonObject;
 public interface TimelineEventStore {
 
 	List<String> FIELDS = Arrays.asList("resource", "sender", "message", "params", "type",
-			"recipients", "comments", "add-comment", "sub-resource", "event-type", "date");
+			"recipients", "comments", "add-comment", "sub-resource", "event-type", "date", "messages", "groups");
 
 	List<String> REQUIRED_FIELDS = Arrays.asList("params", "recipients", "type");
 